@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.agent;
+
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queries the devices known to a {@link DiscoveryAgent} on the same host.
+ *
+ * The client keeps one connection open and sends requests one at a time, so an instance can be shared
+ * between threads. If the connection breaks, the next request reconnects once.
+ *
+ * @author Simon Weis
+ */
+public class AgentClient implements AutoCloseable {
+
+    private final Path socketPath;
+
+    private SocketChannel channel;
+    private DataInputStream input;
+    private DataOutputStream output;
+
+    public AgentClient() {
+        this(DiscoveryAgent.DEFAULT_SOCKET_PATH);
+    }
+
+    public AgentClient(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    /**
+     * Returns all servers the agent knows, as a replacement for {@link de.w3is.jdial.Discovery#discover()}.
+     *
+     * @return New mutable servers
+     * @throws IOException If the agent can't be reached
+     */
+    public List<DialServer> discover() throws IOException {
+
+        List<DialServerSnapshot> snapshots = request(AgentProtocol.LIST, "");
+        List<DialServer> dialServers = new ArrayList<>(snapshots.size());
+
+        for (DialServerSnapshot snapshot : snapshots) {
+            dialServers.add(snapshot.toDialServer());
+        }
+
+        return dialServers;
+    }
+
+    public List<DialServerSnapshot> getDevices() throws IOException {
+        return request(AgentProtocol.LIST, "");
+    }
+
+    /**
+     * @param uniqueServiceName The unique service name
+     * @return The server or null if the agent doesn't know it
+     * @throws IOException If the agent can't be reached
+     */
+    public DialServerSnapshot getDevice(String uniqueServiceName) throws IOException {
+
+        List<DialServerSnapshot> dialServers = request(AgentProtocol.GET, uniqueServiceName);
+        return dialServers.isEmpty() ? null : dialServers.get(0);
+    }
+
+    public List<DialServerSnapshot> findByApplication(String applicationName) throws IOException {
+        return request(AgentProtocol.FIND_BY_APPLICATION, applicationName);
+    }
+
+    public List<DialServerSnapshot> findByFriendlyName(String friendlyName) throws IOException {
+        return request(AgentProtocol.FIND_BY_FRIENDLY_NAME, friendlyName);
+    }
+
+    public List<DialServerSnapshot> findByHost(String host) throws IOException {
+        return request(AgentProtocol.FIND_BY_HOST, host);
+    }
+
+    /**
+     * Lets the agent sweep the network now and waits for the result.
+     *
+     * @return All servers after the sweep
+     * @throws IOException If the agent can't be reached
+     */
+    public List<DialServerSnapshot> refresh() throws IOException {
+        return request(AgentProtocol.REFRESH, "");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (channel != null) {
+
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private synchronized List<DialServerSnapshot> request(byte opcode, String argument) throws IOException {
+
+        boolean reconnected = channel == null;
+
+        if (reconnected) {
+            connect();
+        }
+
+        try {
+
+            return exchange(opcode, argument);
+
+        } catch (IOException e) {
+
+            close();
+
+            if (reconnected) {
+                throw e;
+            }
+
+            // The agent may have been restarted since the last request
+            connect();
+            return exchange(opcode, argument);
+        }
+    }
+
+    private List<DialServerSnapshot> exchange(byte opcode, String argument) throws IOException {
+
+        output.writeByte(opcode);
+        output.writeUTF(argument);
+        output.flush();
+
+        return AgentProtocol.readServers(input);
+    }
+
+    private void connect() throws IOException {
+
+        channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+
+        try {
+
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+            input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            output.writeInt(AgentProtocol.MAGIC);
+            output.writeByte(AgentProtocol.VERSION);
+
+        } catch (IOException e) {
+
+            close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.agent;
+
+import de.w3is.jdial.model.DialServerSnapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The binary protocol between agent and clients.
+ *
+ * A client opens a connection with the magic number and the protocol version, then sends requests
+ * of an opcode and an argument string. Every request is answered with a status byte followed by
+ * the number of servers and the servers. Strings are modified UTF-8, absent values are marked
+ * by a leading presence byte.
+ *
+ * @author Simon Weis
+ */
+final class AgentProtocol {
+
+    static final int MAGIC = 0x4A444941;
+    static final byte VERSION = 1;
+
+    static final byte LIST = 1;
+    static final byte GET = 2;
+    static final byte FIND_BY_APPLICATION = 3;
+    static final byte FIND_BY_FRIENDLY_NAME = 4;
+    static final byte FIND_BY_HOST = 5;
+    static final byte REFRESH = 6;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_ERROR = 1;
+
+    private AgentProtocol() {
+    }
+
+    static void writeServers(DataOutput output, Collection<DialServerSnapshot> dialServers) throws IOException {
+
+        output.writeByte(STATUS_OK);
+        output.writeInt(dialServers.size());
+
+        for (DialServerSnapshot dialServer : dialServers) {
+
+            writeNullable(output, dialServer.getUniqueServiceName());
+            writeNullable(output, dialServer.getFriendlyName());
+            writeNullable(output, toString(dialServer.getApplicationResourceUrl()));
+            writeNullable(output, toString(dialServer.getDeviceDescriptorUrl()));
+            output.writeBoolean(dialServer.isWakeOnLanSupport());
+            writeNullable(output, dialServer.getWakeOnLanMAC());
+            output.writeInt(dialServer.getWakeOnLanTimeout() == null ? -1 : dialServer.getWakeOnLanTimeout());
+            writeNullable(output, dialServer.getServerDescription());
+        }
+    }
+
+    static void writeError(DataOutput output, String message) throws IOException {
+
+        output.writeByte(STATUS_ERROR);
+        output.writeUTF(message);
+    }
+
+    static List<DialServerSnapshot> readServers(DataInput input) throws IOException {
+
+        byte status = input.readByte();
+
+        if (status == STATUS_ERROR) {
+            throw new IOException("Agent error: " + input.readUTF());
+        }
+
+        if (status != STATUS_OK) {
+            throw new IOException("Unknown status: " + status);
+        }
+
+        int count = input.readInt();
+        List<DialServerSnapshot> dialServers = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            String uniqueServiceName = readNullable(input);
+            String friendlyName = readNullable(input);
+            URL applicationResourceUrl = toUrl(readNullable(input));
+            URL deviceDescriptorUrl = toUrl(readNullable(input));
+            boolean wakeOnLanSupport = input.readBoolean();
+            String wakeOnLanMAC = readNullable(input);
+            int wakeOnLanTimeout = input.readInt();
+            String serverDescription = readNullable(input);
+
+            dialServers.add(new DialServerSnapshot(friendlyName, applicationResourceUrl, uniqueServiceName,
+                    deviceDescriptorUrl, wakeOnLanSupport, wakeOnLanMAC, wakeOnLanTimeout < 0 ? null : wakeOnLanTimeout,
+                    serverDescription));
+        }
+
+        return dialServers;
+    }
+
+    private static void writeNullable(DataOutput output, String value) throws IOException {
+
+        output.writeBoolean(value != null);
+
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInput input) throws IOException {
+
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static String toString(URL url) {
+        return url == null ? null : url.toExternalForm();
+    }
+
+    private static URL toUrl(String url) throws IOException {
+        return url == null ? null : new URL(url);
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.agent;
+
+import de.w3is.jdial.ApplicationInventory;
+import de.w3is.jdial.DeviceRegistry;
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DiscoverySession;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+import de.w3is.jdial.model.DiscoveryDelta;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs discovery for all JVMs of a host and answers their queries over a unix domain socket.
+ *
+ * The agent sweeps the network periodically with a {@link DiscoverySession} and applies its changes
+ * to a {@link DeviceRegistry}. The session removes servers that missed several consecutive sweeps and
+ * ignores sweeps that failed or found no server at all. Optionally the supported applications of new
+ * servers are probed with an {@link ApplicationInventory}. Changed servers, for example after a firmware
+ * update changed their server description, are probed again.
+ * Clients connect with an {@link AgentClient}.
+ *
+ * The socket is only accessible by the user running the agent: its directory must belong to that user
+ * and must not be accessible by others, and is created with these permissions if it doesn't exist.
+ *
+ * @author Simon Weis
+ */
+public class DiscoveryAgent implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(DiscoveryAgent.class.getName());
+
+    /**
+     * The socket in the runtime directory of the user, or in a directory of the user below the temp directory.
+     */
+    public static final Path DEFAULT_SOCKET_PATH = defaultSocketPath();
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_ONLY_SOCKET = PosixFilePermissions.fromString("rw-------");
+
+    private static final int MISSED_SWEEPS_BEFORE_REMOVAL = 3;
+
+    private final Path socketPath;
+    private final DiscoverySession discoverySession;
+    private final ApplicationInventory applicationInventory;
+    private final DeviceRegistry deviceRegistry = new DeviceRegistry();
+
+    private ServerSocketChannel serverChannel;
+    private ScheduledExecutorService sweepScheduler;
+    private ExecutorService connectionExecutor;
+
+    /**
+     * @param socketPath The path of the socket file
+     * @param discoverySession Finds the servers in the network and tracks the missed sweeps
+     * @param applicationInventory Probes the applications of new and changed servers or null to skip probing
+     */
+    public DiscoveryAgent(Path socketPath, DiscoverySession discoverySession, ApplicationInventory applicationInventory) {
+
+        this.socketPath = socketPath;
+        this.discoverySession = discoverySession;
+        this.applicationInventory = applicationInventory;
+    }
+
+    /**
+     * Binds the socket and starts the sweeps.
+     *
+     * @param sweepIntervalMs The time between two discovery sweeps
+     * @return This agent
+     * @throws IOException If the socket can't be bound, for example because another agent is running
+     */
+    public DiscoveryAgent start(long sweepIntervalMs) throws IOException {
+
+        prepareSocketDirectory();
+        deleteStaleSocket();
+
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+
+        if (isPosix()) {
+            Files.setPosixFilePermissions(socketPath, OWNER_ONLY_SOCKET);
+        }
+
+        connectionExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("jdial-agent-connection"));
+        sweepScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jdial-agent-sweep"));
+        sweepScheduler.scheduleWithFixedDelay(this::sweep, 0, sweepIntervalMs, TimeUnit.MILLISECONDS);
+
+        Thread acceptThread = new DaemonThreadFactory("jdial-agent-accept").newThread(this::acceptConnections);
+        acceptThread.start();
+
+        return this;
+    }
+
+    public Path getSocketPath() {
+        return socketPath;
+    }
+
+    public DeviceRegistry getDeviceRegistry() {
+        return deviceRegistry;
+    }
+
+    /**
+     * Runs a sweep now, in addition to the periodic ones.
+     */
+    public void refresh() {
+
+        try {
+            sweepScheduler.submit(this::sweep).get();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Refresh failed", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (sweepScheduler != null) {
+            sweepScheduler.shutdownNow();
+        }
+
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdownNow();
+        }
+
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+
+        Files.deleteIfExists(socketPath);
+    }
+
+    private void sweep() {
+
+        DiscoveryDelta delta;
+
+        try {
+            delta = discoverySession.discover();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Discovery failed", e);
+            return;
+        }
+
+        deviceRegistry.apply(delta);
+
+        if (applicationInventory != null) {
+
+            for (DialServer dialServer : delta.getAdded()) {
+                probe(dialServer);
+            }
+
+            for (DialServer dialServer : delta.getChanged()) {
+
+                applicationInventory.invalidate(dialServer);
+                probe(dialServer);
+            }
+        }
+    }
+
+    private void probe(DialServer dialServer) {
+
+        applicationInventory.getSupportedApplications(dialServer).thenAccept(applications ->
+                deviceRegistry.setSupportedApplications(dialServer.getUniqueServiceName(), applications));
+    }
+
+    private void acceptConnections() {
+
+        while (serverChannel.isOpen()) {
+
+            try {
+
+                SocketChannel channel = serverChannel.accept();
+                connectionExecutor.execute(() -> serve(channel));
+
+            } catch (ClosedChannelException e) {
+
+                return;
+
+            } catch (IOException e) {
+
+                LOGGER.log(Level.WARNING, "Can't accept agent connection", e);
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+
+        try (SocketChannel ignored = channel;
+             DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+
+            if (input.readInt() != AgentProtocol.MAGIC || input.readByte() != AgentProtocol.VERSION) {
+
+                AgentProtocol.writeError(output, "Unsupported protocol");
+                output.flush();
+                return;
+            }
+
+            while (true) {
+
+                byte opcode = input.readByte();
+                String argument = input.readUTF();
+
+                answer(opcode, argument, output);
+                output.flush();
+            }
+
+        } catch (EOFException e) {
+
+            LOGGER.log(Level.FINE, "Agent client disconnected");
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Agent connection failed", e);
+        }
+    }
+
+    private void answer(byte opcode, String argument, DataOutputStream output) throws IOException {
+
+        DeviceRegistry.Snapshot snapshot = deviceRegistry.snapshot();
+
+        switch (opcode) {
+            case AgentProtocol.LIST:
+                AgentProtocol.writeServers(output, snapshot.getDevices());
+                break;
+            case AgentProtocol.GET:
+                DialServerSnapshot dialServer = snapshot.getDevice(argument);
+                AgentProtocol.writeServers(output, dialServer == null ? List.of() : List.of(dialServer));
+                break;
+            case AgentProtocol.FIND_BY_APPLICATION:
+                AgentProtocol.writeServers(output, snapshot.findByApplication(argument));
+                break;
+            case AgentProtocol.FIND_BY_FRIENDLY_NAME:
+                AgentProtocol.writeServers(output, snapshot.findByFriendlyName(argument));
+                break;
+            case AgentProtocol.FIND_BY_HOST:
+                AgentProtocol.writeServers(output, snapshot.findByHost(argument));
+                break;
+            case AgentProtocol.REFRESH:
+                refresh();
+                AgentProtocol.writeServers(output, deviceRegistry.snapshot().getDevices());
+                break;
+            default:
+                AgentProtocol.writeError(output, "Unknown opcode " + opcode);
+        }
+    }
+
+    /*
+     * Other users must not be able to query the agent or trigger sweeps, so the directory
+     * of the socket has to be private. Existing directories are checked, not changed.
+     */
+    private void prepareSocketDirectory() throws IOException {
+
+        Path directory = socketPath.toAbsolutePath().getParent();
+
+        if (!isPosix()) {
+            Files.createDirectories(directory);
+            return;
+        }
+
+        if (Files.notExists(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+            Files.setPosixFilePermissions(directory, OWNER_ONLY_DIRECTORY);
+        }
+
+        String user = System.getProperty("user.name");
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory);
+
+        if (!Files.getOwner(directory).getName().equals(user) || !OWNER_ONLY_DIRECTORY.containsAll(permissions)) {
+            throw new IOException("The socket directory " + directory + " must belong to " + user
+                    + " and must not be accessible by others");
+        }
+    }
+
+    /*
+     * A socket file without a listening agent is left over from a crash and can be removed.
+     */
+    private void deleteStaleSocket() throws IOException {
+
+        if (!Files.exists(socketPath)) {
+            return;
+        }
+
+        boolean listening;
+
+        try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            listening = true;
+        } catch (IOException e) {
+            listening = false;
+        }
+
+        if (listening) {
+            throw new IOException("Another agent is listening on " + socketPath);
+        }
+
+        Files.delete(socketPath);
+    }
+
+    private static boolean isPosix() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static Path defaultSocketPath() {
+
+        String runtimeDirectory = System.getenv("XDG_RUNTIME_DIR");
+
+        if (runtimeDirectory != null && !runtimeDirectory.isEmpty()) {
+            return Paths.get(runtimeDirectory, "jdial", "agent.sock");
+        }
+
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jdial-" + System.getProperty("user.name"), "agent.sock");
+    }
+
+    /**
+     * Runs an agent until the process is stopped.
+     * Arguments: [socket path] [sweep interval seconds]
+     *
+     * @param args The command line arguments
+     * @throws Exception If the agent can't be started
+     */
+    public static void main(String[] args) throws Exception {
+
+        Path socketPath = args.length > 0 ? Paths.get(args[0]) : DEFAULT_SOCKET_PATH;
+        long sweepIntervalSeconds = args.length > 1 ? Long.parseLong(args[1]) : 30;
+
+        DiscoverySession discoverySession = new DiscoverySession();
+        discoverySession.setMissedSweepsUntilRemoved(MISSED_SWEEPS_BEFORE_REMOVAL);
+
+        try (DiscoveryAgent agent = new DiscoveryAgent(socketPath, discoverySession,
+                new ApplicationInventory(new DialClient()))) {
+
+            agent.start(TimeUnit.SECONDS.toMillis(sweepIntervalSeconds));
+            System.out.println("Discovery agent listening on " + socketPath);
+
+            new CountDownLatch(1).await();
+        }
+    }
+}
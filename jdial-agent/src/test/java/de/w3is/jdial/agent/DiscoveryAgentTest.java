@@ -0,0 +1,274 @@
+package de.w3is.jdial.agent;
+
+import de.w3is.jdial.ApplicationInventory;
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DiscoverySession;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+import de.w3is.jdial.protocol.ApplicationResource;
+import de.w3is.jdial.protocol.DeviceDescriptorResource;
+import de.w3is.jdial.protocol.MSearch;
+import de.w3is.jdial.protocol.ProtocolFactory;
+import de.w3is.jdial.protocol.model.DeviceDescriptor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DiscoveryAgentTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final Map<URL, String> friendlyNames = new ConcurrentHashMap<>();
+
+    @Test
+    void testClientReceivesTheDevicesOfTheAgent() throws Exception {
+
+        List<DialServer> network = new CopyOnWriteArrayList<>();
+        network.add(dialServer("uuid:1", "Living Room", 8001));
+        network.add(dialServer("uuid:2", "Kitchen", 8002));
+
+        Path socketPath = tempDir.resolve("agent.sock");
+
+        try (DiscoveryAgent agent = new DiscoveryAgent(socketPath, session(network), null).start(60_000);
+             AgentClient client = new AgentClient(socketPath)) {
+
+            agent.refresh();
+            agent.getDeviceRegistry().setSupportedApplications("uuid:2", Set.of("YouTube"));
+
+            List<DialServer> dialServers = client.discover();
+
+            assertThat(dialServers).extracting(DialServer::getFriendlyName).containsExactlyInAnyOrder("Living Room", "Kitchen");
+            assertThat(dialServers).filteredOn(server -> server.getUniqueServiceName().equals("uuid:1"))
+                    .singleElement()
+                    .satisfies(server -> {
+                        assertThat(server.getApplicationResourceUrl()).isEqualTo(new URL("http://localhost:8001/apps"));
+                        assertThat(server.getWakeOnLanTimeout()).isEqualTo(10);
+                        assertThat(server.getServerDescription()).isNull();
+                    });
+
+            assertThat(client.findByApplication("YouTube")).extracting(DialServerSnapshot::getUniqueServiceName).containsExactly("uuid:2");
+            assertThat(client.getDevice("uuid:unknown")).isNull();
+
+            network.add(dialServer("uuid:3", "Bedroom", 8003));
+
+            assertThat(client.refresh()).hasSize(3);
+        }
+
+        assertThat(Files.exists(socketPath)).isFalse();
+    }
+
+    @Test
+    void testOnlyOneAgentPerSocket() throws Exception {
+
+        Path socketPath = tempDir.resolve("agent.sock");
+
+        try (DiscoveryAgent ignored = new DiscoveryAgent(socketPath, session(List.of()), null).start(60_000)) {
+
+            assertThatThrownBy(() -> new DiscoveryAgent(socketPath, session(List.of()), null).start(60_000))
+                    .hasMessageContaining("Another agent");
+        }
+    }
+
+    @Test
+    void testClientReconnectsAfterAgentRestart() throws Exception {
+
+        Path socketPath = tempDir.resolve("agent.sock");
+        List<DialServer> network = List.of(dialServer("uuid:1", "Living Room", 8001));
+
+        try (AgentClient client = new AgentClient(socketPath)) {
+
+            try (DiscoveryAgent agent = new DiscoveryAgent(socketPath, session(network), null).start(60_000)) {
+                agent.refresh();
+                assertThat(client.getDevices()).hasSize(1);
+            }
+
+            try (DiscoveryAgent agent = new DiscoveryAgent(socketPath, session(network), null).start(60_000)) {
+                agent.refresh();
+                assertThat(client.getDevices()).hasSize(1);
+            }
+        }
+    }
+
+    @Test
+    void testFailedOrEmptySweepsDontRemoveServers() throws Exception {
+
+        List<DialServer> network = new CopyOnWriteArrayList<>();
+        network.add(dialServer("uuid:1", "Living Room", 8001));
+        network.add(dialServer("uuid:2", "Kitchen", 8002));
+        AtomicBoolean failing = new AtomicBoolean();
+
+        MSearch mSearch = () -> {
+
+            if (failing.get()) {
+                throw new IOException("Network unreachable");
+            }
+
+            return copies(network);
+        };
+
+        DiscoverySession discoverySession = new DiscoverySession(protocolFactory(mSearch));
+        discoverySession.setMissedSweepsUntilRemoved(3);
+
+        try (DiscoveryAgent agent = new DiscoveryAgent(tempDir.resolve("agent.sock"), discoverySession, null)
+                .start(60_000)) {
+
+            agent.refresh();
+            network.clear();
+
+            for (int i = 0; i < 5; i++) {
+                agent.refresh();
+            }
+
+            failing.set(true);
+            agent.refresh();
+
+            assertThat(agent.getDeviceRegistry().snapshot().getDevices()).hasSize(2);
+
+            failing.set(false);
+            network.add(dialServer("uuid:1", "Living Room", 8001));
+
+            for (int i = 0; i < 3; i++) {
+                agent.refresh();
+            }
+
+            assertThat(agent.getDeviceRegistry().snapshot().getDevices())
+                    .extracting(DialServerSnapshot::getUniqueServiceName).containsExactly("uuid:1");
+        }
+    }
+
+    @Test
+    void testChangedServersAreProbedAgain() throws Exception {
+
+        DialServer dialServer = dialServer("uuid:1", "Living Room", 8001);
+        dialServer.setServerDescription("Linux UPnP/1.0 TV/1.2");
+
+        List<DialServer> network = new CopyOnWriteArrayList<>(List.of(dialServer));
+        List<String> probed = new CopyOnWriteArrayList<>();
+        List<String> invalidated = new CopyOnWriteArrayList<>();
+
+        ApplicationInventory applicationInventory = new ApplicationInventory(new DialClient()) {
+            @Override
+            public CompletableFuture<Set<String>> getSupportedApplications(DialServer server) {
+
+                probed.add(server.getServerDescription());
+                return CompletableFuture.completedFuture(Set.of("YouTube"));
+            }
+
+            @Override
+            public void invalidate(DialServer server) {
+                invalidated.add(server.getServerDescription());
+            }
+        };
+
+        try (DiscoveryAgent agent = new DiscoveryAgent(tempDir.resolve("agent.sock"), session(network), applicationInventory)
+                .start(60_000)) {
+
+            agent.refresh();
+
+            // A firmware update changes the SERVER header
+            dialServer.setServerDescription("Linux UPnP/1.0 TV/1.3");
+            agent.refresh();
+            agent.refresh();
+
+            assertThat(agent.getDeviceRegistry().snapshot().findByApplication("YouTube")).hasSize(1);
+        }
+
+        assertThat(probed).containsExactly("Linux UPnP/1.0 TV/1.2", "Linux UPnP/1.0 TV/1.3");
+        assertThat(invalidated).containsExactly("Linux UPnP/1.0 TV/1.3");
+    }
+
+    @Test
+    void testSocketIsOnlyAccessibleByItsOwner() throws Exception {
+
+        Path socketPath = tempDir.resolve("private").resolve("agent.sock");
+
+        try (DiscoveryAgent ignored = new DiscoveryAgent(socketPath, session(List.of()), null).start(60_000)) {
+
+            assertThat(Files.getPosixFilePermissions(socketPath.getParent()))
+                    .isEqualTo(PosixFilePermissions.fromString("rwx------"));
+            assertThat(Files.getPosixFilePermissions(socketPath)).isEqualTo(PosixFilePermissions.fromString("rw-------"));
+        }
+
+        Path sharedDirectory = Files.createDirectory(tempDir.resolve("shared"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxrwxrwx")));
+        Files.setPosixFilePermissions(sharedDirectory, PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        assertThatThrownBy(() -> new DiscoveryAgent(sharedDirectory.resolve("agent.sock"), session(List.of()), null).start(60_000))
+                .hasMessageContaining("must not be accessible by others");
+    }
+
+    /*
+     * Every sweep receives new instances, like from the network.
+     */
+    private DiscoverySession session(Iterable<DialServer> network) {
+        return new DiscoverySession(protocolFactory(() -> copies(network)));
+    }
+
+    private static List<DialServer> copies(Iterable<DialServer> network) {
+
+        List<DialServer> copies = new ArrayList<>();
+
+        for (DialServer dialServer : network) {
+            copies.add(dialServer.snapshot().toDialServer());
+        }
+
+        return copies;
+    }
+
+    private ProtocolFactory protocolFactory(MSearch mSearch) {
+
+        DeviceDescriptorResource deviceDescriptorResource = location -> {
+
+            DeviceDescriptor descriptor = new DeviceDescriptor();
+            descriptor.setFriendlyName(friendlyNames.get(location));
+            descriptor.setApplicationResourceUrl(new URL("http://" + location.getAuthority() + "/apps"));
+
+            return descriptor;
+        };
+
+        return new ProtocolFactory() {
+            @Override
+            public MSearch createMSearch() {
+                return mSearch;
+            }
+
+            @Override
+            public DeviceDescriptorResource createDeviceDescriptorResource() {
+                return deviceDescriptorResource;
+            }
+
+            @Override
+            public ApplicationResource createApplicationResource(String clientFriendlyName, URL applicationResourceUrl) {
+                return null;
+            }
+        };
+    }
+
+    private DialServer dialServer(String uniqueServiceName, String friendlyName, int port) throws Exception {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName(uniqueServiceName);
+        dialServer.setDeviceDescriptorUrl(new URL("http://localhost:" + port + "/dd.xml"));
+        dialServer.setWakeOnLanTimeout(10);
+        friendlyNames.put(dialServer.getDeviceDescriptorUrl(), friendlyName);
+
+        return dialServer;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.w3is.jdial.model.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures complete requests of the application resource against an http server on the loopback interface.
+ *
+ * @author Simon Weis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApplicationResourceBenchmark {
+
+    private static final String APPLICATION_NAME = "YouTube";
+
+    private HttpServer httpServer;
+    private ExecutorService executor;
+    private ApplicationResource applicationResource;
+    private URL instanceUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        byte[] applicationXml = XMLUtilBenchmark.readResource("/application.xml");
+
+        // Without TCP_NODELAY the separately written body waits for the delayed ack of the client
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newFixedThreadPool(4);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/apps/", exchange -> handle(exchange, applicationXml));
+        httpServer.start();
+
+        String rootUrl = "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/apps";
+
+        applicationResource = new ProtocolFactoryImpl(false).createApplicationResource("jdial-benchmark", new URL(rootUrl));
+        instanceUrl = new URL(rootUrl + "/" + APPLICATION_NAME + "/run");
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        httpServer.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Application getApplication() throws IOException {
+
+        return applicationResource.getApplication(APPLICATION_NAME);
+    }
+
+    @Benchmark
+    public URL startApplication() throws Exception {
+
+        return applicationResource.startApplication(APPLICATION_NAME);
+    }
+
+    @Benchmark
+    public void stopApplication() throws Exception {
+
+        applicationResource.stopApplication(instanceUrl);
+    }
+
+    @Benchmark
+    public void hideApplication() throws Exception {
+
+        applicationResource.hideApplication(instanceUrl);
+    }
+
+    private void handle(HttpExchange exchange, byte[] applicationXml) throws IOException {
+
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            requestBody.readAllBytes();
+        }
+
+        String path = exchange.getRequestURI().getPath();
+
+        switch (exchange.getRequestMethod()) {
+            case "GET":
+                exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=\"utf-8\"");
+                exchange.sendResponseHeaders(200, applicationXml.length);
+
+                try (OutputStream responseBody = exchange.getResponseBody()) {
+                    responseBody.write(applicationXml);
+                }
+                return;
+            case "POST":
+                if (path.endsWith("/hide")) {
+                    exchange.sendResponseHeaders(200, -1);
+                } else {
+                    exchange.getResponseHeaders().set("LOCATION", instanceUrl.toExternalForm());
+                    exchange.sendResponseHeaders(201, -1);
+                }
+                break;
+            case "DELETE":
+                exchange.sendResponseHeaders(200, -1);
+                break;
+            default:
+                exchange.sendResponseHeaders(405, -1);
+        }
+
+        exchange.close();
+    }
+}
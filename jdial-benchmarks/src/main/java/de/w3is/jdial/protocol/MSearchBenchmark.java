@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.w3is.jdial.model.DialServer;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the filtering and parsing of M-SEARCH response datagrams.
+ *
+ * @author Simon Weis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MSearchBenchmark {
+
+    private static final String DIAL_RESPONSE = "HTTP/1.1 200 OK\r\n" +
+            "CACHE-CONTROL: max-age=1800\r\n" +
+            "DATE: Mon, 19 Oct 2026 10:15:03 GMT\r\n" +
+            "EXT:\r\n" +
+            "LOCATION: http://192.168.1.23:56789/dd.xml\r\n" +
+            "SERVER: Linux/4.9 UPnP/1.0 TV-55X900/1.4.2\r\n" +
+            "ST: urn:dial-multiscreen-org:service:dial:1\r\n" +
+            "USN: uuid:0d6a1f6c-6d9e-4b2b-9f64-3b0a4c6e2f11::urn:dial-multiscreen-org:service:dial:1\r\n" +
+            "WAKEUP: MAC=10:dd:b1:c9:00:e4;Timeout=10\r\n" +
+            "BOOTID.UPNP.ORG: 1\r\n\r\n";
+
+    private static final String UNRELATED_RESPONSE = "HTTP/1.1 200 OK\r\n" +
+            "CACHE-CONTROL: max-age=1800\r\n" +
+            "EXT:\r\n" +
+            "LOCATION: http://192.168.1.40:1400/xml/device_description.xml\r\n" +
+            "SERVER: Linux UPnP/1.0 Speaker/63.2\r\n" +
+            "ST: urn:schemas-upnp-org:device:ZonePlayer:1\r\n" +
+            "USN: uuid:RINCON_000E58A1B2C301400::urn:schemas-upnp-org:device:ZonePlayer:1\r\n\r\n";
+
+    private MSearchImpl mSearch;
+    private DatagramPacket dialPacket;
+    private DatagramPacket unrelatedPacket;
+
+    @Setup
+    public void setUp() throws Exception {
+
+        mSearch = new MSearchImpl(1, 1500, ProtocolListener.NONE);
+        dialPacket = toPacket(DIAL_RESPONSE);
+        unrelatedPacket = toPacket(UNRELATED_RESPONSE);
+    }
+
+    @Benchmark
+    public DialServer parseDialResponse() {
+
+        return mSearch.toServer(dialPacket);
+    }
+
+    @Benchmark
+    public DialServer parseUnrelatedResponse() {
+
+        return mSearch.toServer(unrelatedPacket);
+    }
+
+    @Benchmark
+    public boolean filterUnrelatedResponse() {
+
+        return MSearchImpl.containsSearchTarget(unrelatedPacket.getData(), 0, unrelatedPacket.getLength());
+    }
+
+    private static DatagramPacket toPacket(String response) throws Exception {
+
+        // The receive buffer of MSearchImpl has a fixed size of 1024 bytes
+        byte[] buffer = new byte[1024];
+        byte[] data = response.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(data, 0, buffer, 0, data.length);
+
+        return new DatagramPacket(buffer, data.length, InetAddress.getLoopbackAddress(), 1900);
+    }
+}
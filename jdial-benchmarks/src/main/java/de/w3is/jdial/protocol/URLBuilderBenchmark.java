@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the urls of application resources.
+ *
+ * @author Simon Weis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class URLBuilderBenchmark {
+
+    private URL applicationResourceUrl;
+    private URL instanceUrl;
+
+    @Setup
+    public void setUp() throws MalformedURLException {
+
+        applicationResourceUrl = new URL("http://192.168.1.23:56789/apps");
+        instanceUrl = new URL("http://192.168.1.23:56789/apps/YouTube/run");
+    }
+
+    @Benchmark
+    public URL applicationUrl() throws MalformedURLException {
+
+        return URLBuilder.of(applicationResourceUrl).path("YouTube").build();
+    }
+
+    @Benchmark
+    public URL applicationUrlWithQuery() throws MalformedURLException {
+
+        URLBuilder urlBuilder = URLBuilder.of(applicationResourceUrl).path("YouTube");
+        urlBuilder.query("clientDialVersion=2.1");
+
+        return urlBuilder.build();
+    }
+
+    @Benchmark
+    public URL hideUrl() throws MalformedURLException {
+
+        return URLBuilder.of(instanceUrl).path("hide").build();
+    }
+}
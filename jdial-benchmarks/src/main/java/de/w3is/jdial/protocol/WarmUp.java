@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DialClientConnection;
+import de.w3is.jdial.model.DialClientException;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.protocol.model.DeviceDescriptor;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the client code paths against a dial server on the loopback interface, so class loading,
+ * the http client internals and the xml parser are warmed up before the first real request.
+ *
+ * The main method prints how long the first and the last iteration took, which shows the cost
+ * of the first requests of a cold client. The warm-up doesn't touch the network, the protocol
+ * listeners or the caches of other clients.
+ *
+ * @author Simon Weis
+ */
+public final class WarmUp {
+
+    public static final int DEFAULT_ITERATIONS = 200;
+
+    private static final String APPLICATION_NAME = "WarmUp";
+
+    private static final byte[] DEVICE_DESCRIPTOR = ("<?xml version=\"1.0\"?>" +
+            "<root xmlns=\"urn:schemas-upnp-org:device-1-0\"><device>" +
+            "<deviceType>urn:dial-multiscreen-org:device:dial:1</deviceType>" +
+            "<friendlyName>Warm-up</friendlyName>" +
+            "</device></root>").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] APPLICATION = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<service xmlns=\"urn:dial-multiscreen-org:schemas:dial\" dialVer=\"2.1\">" +
+            "<name>" + APPLICATION_NAME + "</name>" +
+            "<options allowStop=\"true\"/>" +
+            "<state>running</state>" +
+            "<link rel=\"run\" href=\"run\"/>" +
+            "<additionalData><warmUp>true</warmUp></additionalData>" +
+            "</service>").getBytes(StandardCharsets.UTF_8);
+
+    private static final String XML_CONTENT_TYPE = "text/xml; charset=\"utf-8\"";
+
+    private final LoopbackHttpServer server;
+
+    private WarmUp() throws IOException {
+        this.server = new LoopbackHttpServer("jdial-warm-up", this::respond);
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        long first = timeMicros(1);
+        run(iterations);
+        long last = timeMicros(1);
+
+        System.out.printf("First iteration %d us, after %d iterations %d us%n", first, iterations, last);
+    }
+
+    /**
+     * @param iterations How often the descriptor, status, start and stop requests are sent
+     * @return The number of requests that were answered
+     * @throws IOException If the loopback server can't be started or a request failed
+     */
+    public static int run(int iterations) throws IOException {
+
+        WarmUp warmUp = new WarmUp();
+
+        try (LoopbackHttpServer server = warmUp.server) {
+
+            ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(false);
+            DialClient dialClient = new DialClient(protocolFactory);
+            URL descriptorUrl = new URL(server.getBaseUrl() + "/dd.xml");
+
+            for (int i = 0; i < iterations; i++) {
+
+                DeviceDescriptor descriptor = protocolFactory.createDeviceDescriptorResource().getDescriptor(descriptorUrl);
+
+                DialServer dialServer = new DialServer();
+                dialServer.setUniqueServiceName("uuid:warm-up");
+                dialServer.setFriendlyName(descriptor.getFriendlyName());
+                dialServer.setApplicationResourceUrl(descriptor.getApplicationResourceUrl());
+
+                DialClientConnection connection = dialClient.connectTo(dialServer);
+
+                if (connection.getApplication(APPLICATION_NAME) == null) {
+                    throw new IOException("Warm-up application couldn't be read");
+                }
+
+                connection.stopApplication(connection.startApplication(APPLICATION_NAME));
+            }
+
+            return server.getRequests();
+
+        } catch (DialClientException e) {
+
+            throw new IOException("Warm-up request failed", e);
+        }
+    }
+
+    private static long timeMicros(int iterations) throws IOException {
+
+        long start = System.nanoTime();
+        run(iterations);
+
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    private LoopbackHttpServer.Response respond(String method, String target) {
+
+        String baseUrl = server.getBaseUrl();
+
+        if (target.startsWith("/dd.xml")) {
+            return new LoopbackHttpServer.Response(200, Map.of("Application-URL", baseUrl + "/apps/",
+                    "Content-Type", XML_CONTENT_TYPE), DEVICE_DESCRIPTOR);
+        }
+
+        switch (method) {
+            case "POST":
+                return new LoopbackHttpServer.Response(201, Map.of("Location", baseUrl + "/apps/" + APPLICATION_NAME + "/run"),
+                        new byte[0]);
+            case "DELETE":
+                return new LoopbackHttpServer.Response(200);
+            default:
+                return new LoopbackHttpServer.Response(200, Map.of("Content-Type", XML_CONTENT_TYPE), APPLICATION);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the parsing of application and device descriptor documents.
+ *
+ * @author Simon Weis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLUtilBenchmark {
+
+    private byte[] applicationXml;
+    private byte[] deviceDescriptorXml;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        applicationXml = readResource("/application.xml");
+        deviceDescriptorXml = readResource("/device-descriptor.xml");
+    }
+
+    @Benchmark
+    public Document parseApplication() throws Exception {
+
+        return XMLUtil.getDocumentFromStream(new ByteArrayInputStream(applicationXml));
+    }
+
+    @Benchmark
+    public Document parseDeviceDescriptor() throws Exception {
+
+        return XMLUtil.getDocumentFromStream(new ByteArrayInputStream(deviceDescriptorXml));
+    }
+
+    static byte[] readResource(String name) throws IOException {
+
+        try (InputStream inputStream = XMLUtilBenchmark.class.getResourceAsStream(name)) {
+
+            if (inputStream == null) {
+                throw new IOException("Missing resource " + name);
+            }
+
+            return inputStream.readAllBytes();
+        }
+    }
+}
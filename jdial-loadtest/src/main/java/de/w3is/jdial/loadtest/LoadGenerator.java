@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.loadtest;
+
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DialClientConnection;
+import de.w3is.jdial.Discovery;
+import de.w3is.jdial.model.DialClientException;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+import de.w3is.jdial.protocol.LatencyHistogram;
+import de.w3is.jdial.protocol.ProtocolFactory;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates open loop load against a set of DIAL servers.
+ *
+ * Operations are scheduled at a fixed rate, independent of how long earlier operations take.
+ * The latency of an operation is measured from its scheduled start, so a slow server can't hide
+ * its slowness by delaying the requests that would have observed it (coordinated omission).
+ *
+ * @author Simon Weis
+ */
+public class LoadGenerator {
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private final LoadProfile profile;
+    private final ProtocolFactory protocolFactory;
+    private final List<Target> targets = new ArrayList<>();
+    private final Map<LoadOperation, Recorder> recorders = new EnumMap<>(LoadOperation.class);
+
+    /**
+     * @param profile The load to generate
+     * @param protocolFactory The protocol factory used for discovery and for the connections to the servers
+     * @param dialServers The servers to send application requests to
+     */
+    public LoadGenerator(LoadProfile profile, ProtocolFactory protocolFactory, List<DialServer> dialServers) {
+
+        if (dialServers.isEmpty() && profile.getMix().keySet().stream().anyMatch(op -> op != LoadOperation.DISCOVER)) {
+            throw new IllegalArgumentException("Application operations require at least one server");
+        }
+
+        this.profile = profile;
+        this.protocolFactory = protocolFactory;
+
+        DialClient dialClient = new DialClient(protocolFactory);
+
+        for (DialServer dialServer : dialServers) {
+            targets.add(new Target(dialClient.connectTo(dialServer)));
+        }
+
+        for (LoadOperation operation : profile.getMix().keySet()) {
+            recorders.put(operation, new Recorder());
+        }
+    }
+
+    /**
+     * Runs the warmup and the measurement and waits for all scheduled operations to finish.
+     *
+     * @return The measured results
+     * @throws InterruptedException If the calling thread is interrupted
+     */
+    public LoadReport run() throws InterruptedException {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(profile.getWorkerThreads(), profile.getWorkerThreads(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new DaemonThreadFactory("jdial-load"));
+        executor.prestartAllCoreThreads();
+
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / profile.getRatePerSecond();
+        long start = System.nanoTime();
+        long measurementStart = start + TimeUnit.SECONDS.toNanos(profile.getWarmupSeconds());
+        long end = measurementStart + TimeUnit.SECONDS.toNanos(profile.getDurationSeconds());
+
+        try {
+
+            for (long i = 0; ; i++) {
+
+                long scheduled = start + (long) (i * intervalNanos);
+
+                if (scheduled - end >= 0) {
+                    break;
+                }
+
+                parkUntil(scheduled);
+
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                LoadOperation operation = profile.operationFor(random.nextDouble());
+                Target target = targets.isEmpty() ? null : targets.get(random.nextInt(targets.size()));
+                boolean measured = scheduled - measurementStart >= 0;
+
+                executor.execute(() -> execute(operation, target, scheduled, measured));
+            }
+
+            executor.shutdown();
+
+            if (!executor.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Operations didn't finish within " + DRAIN_TIMEOUT_SECONDS + " seconds");
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        Map<LoadOperation, LoadReport.OperationResult> results = new EnumMap<>(LoadOperation.class);
+
+        for (Map.Entry<LoadOperation, Recorder> entry : recorders.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().toResult());
+        }
+
+        return new LoadReport(profile.getDurationSeconds(), results);
+    }
+
+    private void execute(LoadOperation operation, Target target, long scheduled, boolean measured) {
+
+        Recorder recorder = recorders.get(operation);
+        boolean success;
+
+        try {
+
+            switch (operation) {
+                case DISCOVER:
+                    success = !new Discovery(protocolFactory).discover().isEmpty();
+                    break;
+                case GET_APPLICATION:
+                    success = target.connection.getApplication(profile.getApplicationName()) != null;
+                    break;
+                case START_APPLICATION:
+                    target.instanceUrl.set(target.connection.startApplication(profile.getApplicationName()));
+                    success = true;
+                    break;
+                case STOP_APPLICATION:
+                    URL instanceUrl = target.instanceUrl.getAndSet(null);
+
+                    if (instanceUrl == null) {
+
+                        if (measured) {
+                            recorder.skipped.increment();
+                        }
+
+                        return;
+                    }
+
+                    target.connection.stopApplication(instanceUrl);
+                    success = true;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation: " + operation);
+            }
+
+        } catch (DialClientException e) {
+
+            success = false;
+        }
+
+        if (measured) {
+            recorder.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled), success);
+        }
+    }
+
+    private static void parkUntil(long deadline) throws InterruptedException {
+
+        long remaining;
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+
+            LockSupport.parkNanos(remaining);
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static final class Target {
+
+        private final DialClientConnection connection;
+        private final AtomicReference<URL> instanceUrl = new AtomicReference<>();
+
+        private Target(DialClientConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static final class Recorder {
+
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+
+        private void record(long latencyMicros, boolean success) {
+
+            latencies.record(latencyMicros);
+
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        private LoadReport.OperationResult toResult() {
+
+            LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+            return new LoadReport.OperationResult(snapshot.getCount(), errors.sum(), skipped.sum(), snapshot);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.loadtest;
+
+/**
+ * The client operations a load test can issue.
+ *
+ * @author Simon Weis
+ */
+public enum LoadOperation {
+
+    DISCOVER("discover"),
+    GET_APPLICATION("get"),
+    START_APPLICATION("start"),
+    STOP_APPLICATION("stop");
+
+    private final String shortName;
+
+    LoadOperation(String shortName) {
+        this.shortName = shortName;
+    }
+
+    /**
+     * @return The name used in the operation mix and in reports
+     */
+    public String getShortName() {
+        return shortName;
+    }
+
+    /**
+     * @param shortName The short name of an operation
+     * @return The matching operation
+     * @throws IllegalArgumentException If there is no operation with this name
+     */
+    public static LoadOperation fromShortName(String shortName) {
+
+        for (LoadOperation operation : values()) {
+
+            if (operation.shortName.equalsIgnoreCase(shortName)) {
+                return operation;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown operation: " + shortName);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.loadtest;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Describes the load a test generates: the arrival rate, how long it runs and the mix of operations.
+ * Instances are immutable.
+ *
+ * @author Simon Weis
+ */
+public final class LoadProfile {
+
+    private final double ratePerSecond;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int workerThreads;
+    private final int discoveryTimeoutMs;
+    private final String applicationName;
+    private final Map<LoadOperation, Integer> mix;
+    private final int totalWeight;
+
+    private LoadProfile(Builder builder) {
+
+        this.ratePerSecond = builder.ratePerSecond;
+        this.durationSeconds = builder.durationSeconds;
+        this.warmupSeconds = builder.warmupSeconds;
+        this.workerThreads = builder.workerThreads;
+        this.discoveryTimeoutMs = builder.discoveryTimeoutMs;
+        this.applicationName = builder.applicationName;
+        this.mix = Collections.unmodifiableMap(new EnumMap<>(builder.mix));
+        this.totalWeight = builder.mix.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getDiscoveryTimeoutMs() {
+        return discoveryTimeoutMs;
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public Map<LoadOperation, Integer> getMix() {
+        return mix;
+    }
+
+    /**
+     * Picks an operation according to the weights of the mix.
+     *
+     * @param random A uniformly distributed value in [0, 1)
+     * @return The operation to issue
+     */
+    LoadOperation operationFor(double random) {
+
+        int target = (int) (random * totalWeight);
+
+        for (Map.Entry<LoadOperation, Integer> entry : mix.entrySet()) {
+
+            target -= entry.getValue();
+
+            if (target < 0) {
+                return entry.getKey();
+            }
+        }
+
+        throw new IllegalStateException("Empty operation mix");
+    }
+
+    public static final class Builder {
+
+        private double ratePerSecond = 100;
+        private int durationSeconds = 30;
+        private int warmupSeconds = 5;
+        private int workerThreads = 500;
+        private int discoveryTimeoutMs = 500;
+        private String applicationName = "YouTube";
+        private final Map<LoadOperation, Integer> mix = new EnumMap<>(LoadOperation.class);
+
+        private Builder() {
+
+            mix.put(LoadOperation.DISCOVER, 1);
+            mix.put(LoadOperation.GET_APPLICATION, 60);
+            mix.put(LoadOperation.START_APPLICATION, 20);
+            mix.put(LoadOperation.STOP_APPLICATION, 19);
+        }
+
+        /**
+         * @param ratePerSecond The number of operations started per second, independent of their response times
+         * @return This builder
+         */
+        public Builder ratePerSecond(double ratePerSecond) {
+
+            if (ratePerSecond <= 0) {
+                throw new IllegalArgumentException("The rate must be positive");
+            }
+
+            this.ratePerSecond = ratePerSecond;
+            return this;
+        }
+
+        public Builder durationSeconds(int durationSeconds) {
+
+            if (durationSeconds <= 0) {
+                throw new IllegalArgumentException("The duration must be positive");
+            }
+
+            this.durationSeconds = durationSeconds;
+            return this;
+        }
+
+        /**
+         * @param warmupSeconds The time before the measurement during which results are discarded
+         * @return This builder
+         */
+        public Builder warmupSeconds(int warmupSeconds) {
+
+            if (warmupSeconds < 0) {
+                throw new IllegalArgumentException("The warmup must not be negative");
+            }
+
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        /**
+         * @param workerThreads The maximum number of operations in flight
+         * @return This builder
+         */
+        public Builder workerThreads(int workerThreads) {
+
+            if (workerThreads <= 0) {
+                throw new IllegalArgumentException("At least one worker thread is required");
+            }
+
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        /**
+         * @param discoveryTimeoutMs How long a discovery waits for M-SEARCH responses
+         * @return This builder
+         */
+        public Builder discoveryTimeoutMs(int discoveryTimeoutMs) {
+
+            this.discoveryTimeoutMs = discoveryTimeoutMs;
+            return this;
+        }
+
+        public Builder applicationName(String applicationName) {
+
+            this.applicationName = applicationName;
+            return this;
+        }
+
+        /**
+         * Sets the relative weight of an operation. A weight of zero removes the operation from the mix.
+         *
+         * @param operation The operation
+         * @param weight The relative weight
+         * @return This builder
+         */
+        public Builder weight(LoadOperation operation, int weight) {
+
+            if (weight < 0) {
+                throw new IllegalArgumentException("The weight must not be negative");
+            }
+
+            if (weight == 0) {
+                mix.remove(operation);
+            } else {
+                mix.put(operation, weight);
+            }
+
+            return this;
+        }
+
+        /**
+         * Replaces the operation mix with a definition like {@code discover:1,get:60,start:20,stop:19}.
+         *
+         * @param definition The mix definition
+         * @return This builder
+         */
+        public Builder mix(String definition) {
+
+            mix.clear();
+
+            for (String part : definition.split(",")) {
+
+                String[] weight = part.trim().split(":");
+
+                if (weight.length != 2) {
+                    throw new IllegalArgumentException("Malformed operation weight: " + part);
+                }
+
+                weight(LoadOperation.fromShortName(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+            }
+
+            return this;
+        }
+
+        public LoadProfile build() {
+
+            if (mix.isEmpty()) {
+                throw new IllegalArgumentException("The operation mix is empty");
+            }
+
+            return new LoadProfile(this);
+        }
+    }
+}
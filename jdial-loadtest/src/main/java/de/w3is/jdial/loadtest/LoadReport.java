@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.loadtest;
+
+import de.w3is.jdial.protocol.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The result of a load test: throughput and latency percentiles per operation.
+ * Failed operations are part of the latencies, but not of the throughput.
+ *
+ * Latencies are measured from the time an operation was scheduled to start, not from the time it
+ * actually started, so time spent waiting for a free worker is part of the reported latency.
+ *
+ * @author Simon Weis
+ */
+public final class LoadReport {
+
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+    private static final String THROUGHPUT = "throughput";
+
+    private final double measuredSeconds;
+    private final Map<LoadOperation, OperationResult> results;
+
+    LoadReport(double measuredSeconds, Map<LoadOperation, OperationResult> results) {
+
+        this.measuredSeconds = measuredSeconds;
+        this.results = Collections.unmodifiableMap(new EnumMap<>(results));
+    }
+
+    public double getMeasuredSeconds() {
+        return measuredSeconds;
+    }
+
+    public Map<LoadOperation, OperationResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @param operation The operation
+     * @return The number of successful operations per second
+     */
+    public double getThroughput(LoadOperation operation) {
+
+        OperationResult result = results.get(operation);
+        return result == null || measuredSeconds <= 0 ? 0 : (result.getCount() - result.getErrors()) / measuredSeconds;
+    }
+
+    /**
+     * @return A human readable table with one row per operation, latencies in milliseconds
+     */
+    public String format() {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%-10s %10s %8s %8s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "skipped", "ops/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+        for (Map.Entry<LoadOperation, OperationResult> entry : results.entrySet()) {
+
+            OperationResult result = entry.getValue();
+            LatencyHistogram.Snapshot latencies = result.getLatencies();
+
+            builder.append(String.format(Locale.ROOT, "%-10s %10d %8d %8d %10.1f %10.3f %10.3f %10.3f %10.3f%n",
+                    entry.getKey().getShortName(), result.getCount(), result.getErrors(), result.getSkipped(),
+                    getThroughput(entry.getKey()),
+                    millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMax())));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Exports the throughput and the latency percentiles in microseconds, for example {@code get.p99}.
+     *
+     * @return The report as baseline for later runs
+     */
+    public Properties toBaseline() {
+
+        Properties baseline = new Properties();
+
+        for (Map.Entry<LoadOperation, OperationResult> entry : results.entrySet()) {
+
+            String prefix = entry.getKey().getShortName() + ".";
+            LatencyHistogram.Snapshot latencies = entry.getValue().getLatencies();
+
+            if (latencies.getCount() == 0) {
+                continue;
+            }
+
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                baseline.setProperty(prefix + PERCENTILE_NAMES[i], Long.toString(latencies.getValueAtPercentile(PERCENTILES[i])));
+            }
+
+            baseline.setProperty(prefix + THROUGHPUT, String.format(Locale.ROOT, "%.3f", getThroughput(entry.getKey())));
+        }
+
+        return baseline;
+    }
+
+    /**
+     * Compares this report against a baseline. A percentile regresses if it is more than the
+     * tolerance above the baseline, the throughput if it is more than the tolerance below.
+     * Operations missing from either side are not compared.
+     *
+     * @param baseline A baseline created by {@link #toBaseline()}
+     * @param tolerance The accepted relative deviation, e.g. 0.2 for 20%
+     * @return A description of every regression, empty if there is none
+     */
+    public List<String> findRegressions(Properties baseline, double tolerance) {
+
+        List<String> regressions = new ArrayList<>();
+
+        for (Map.Entry<LoadOperation, OperationResult> entry : results.entrySet()) {
+
+            String prefix = entry.getKey().getShortName() + ".";
+            LatencyHistogram.Snapshot latencies = entry.getValue().getLatencies();
+
+            if (latencies.getCount() == 0) {
+                continue;
+            }
+
+            for (int i = 0; i < PERCENTILES.length; i++) {
+
+                String key = prefix + PERCENTILE_NAMES[i];
+                String expected = baseline.getProperty(key);
+
+                if (expected == null) {
+                    continue;
+                }
+
+                long limit = (long) (Long.parseLong(expected) * (1 + tolerance));
+                long actual = latencies.getValueAtPercentile(PERCENTILES[i]);
+
+                if (actual > limit) {
+                    regressions.add(String.format(Locale.ROOT, "%s is %.3f ms, baseline %.3f ms",
+                            key, millis(actual), millis(Long.parseLong(expected))));
+                }
+            }
+
+            String expectedThroughput = baseline.getProperty(prefix + THROUGHPUT);
+
+            if (expectedThroughput != null) {
+
+                double actual = getThroughput(entry.getKey());
+                double expected = Double.parseDouble(expectedThroughput);
+
+                if (actual < expected * (1 - tolerance)) {
+                    regressions.add(String.format(Locale.ROOT, "%s%s is %.1f ops/s, baseline %.1f ops/s",
+                            prefix, THROUGHPUT, actual, expected));
+                }
+            }
+        }
+
+        return regressions;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * The outcome of all measured executions of one operation. Latencies are in microseconds.
+     */
+    public static final class OperationResult {
+
+        private final long count;
+        private final long errors;
+        private final long skipped;
+        private final LatencyHistogram.Snapshot latencies;
+
+        OperationResult(long count, long errors, long skipped, LatencyHistogram.Snapshot latencies) {
+
+            this.count = count;
+            this.errors = errors;
+            this.skipped = skipped;
+            this.latencies = latencies;
+        }
+
+        /**
+         * @return The number of measured executions, including failed ones
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return The number of stop operations that had no running instance to stop
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public LatencyHistogram.Snapshot getLatencies() {
+            return latencies;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.loadtest;
+
+import de.w3is.jdial.Discovery;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.protocol.ProtocolConfiguration;
+import de.w3is.jdial.protocol.ProtocolFactoryImpl;
+import de.w3is.jdial.simulator.DialSimulator;
+import de.w3is.jdial.simulator.SimulationProfile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs a load test against simulated devices and prints the report.
+ *
+ * Options are passed as {@code --name=value}:
+ * <ul>
+ *     <li>devices, rate, duration, warmup, threads, mix, application and discovery-timeout configure the load</li>
+ *     <li>latency, jitter, loss and failure configure the simulated devices</li>
+ *     <li>write-baseline stores the result as baseline file</li>
+ *     <li>baseline compares the result with a baseline file and exits with status 1 if a value
+ *     deviates by more than the tolerance (default 0.2)</li>
+ * </ul>
+ *
+ * @author Simon Weis
+ */
+public class LoadTestRunner {
+
+    // Keep a reference, otherwise the level is lost when the logger is collected
+    private static final Logger JDIAL_LOGGER = Logger.getLogger("de.w3is.jdial");
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = parseOptions(args);
+
+        // Failures are expected under load and are part of the report
+        JDIAL_LOGGER.setLevel(Level.SEVERE);
+
+        LoadProfile.Builder loadProfile = LoadProfile.builder();
+
+        if (options.containsKey("rate")) {
+            loadProfile.ratePerSecond(Double.parseDouble(options.get("rate")));
+        }
+
+        if (options.containsKey("duration")) {
+            loadProfile.durationSeconds(Integer.parseInt(options.get("duration")));
+        }
+
+        if (options.containsKey("warmup")) {
+            loadProfile.warmupSeconds(Integer.parseInt(options.get("warmup")));
+        }
+
+        if (options.containsKey("threads")) {
+            loadProfile.workerThreads(Integer.parseInt(options.get("threads")));
+        }
+
+        if (options.containsKey("mix")) {
+            loadProfile.mix(options.get("mix"));
+        }
+
+        if (options.containsKey("application")) {
+            loadProfile.applicationName(options.get("application"));
+        }
+
+        if (options.containsKey("discovery-timeout")) {
+            loadProfile.discoveryTimeoutMs(Integer.parseInt(options.get("discovery-timeout")));
+        }
+
+        SimulationProfile.Builder simulationProfile = SimulationProfile.builder();
+
+        if (options.containsKey("latency")) {
+            simulationProfile.latencyMs(Integer.parseInt(options.get("latency")));
+        }
+
+        if (options.containsKey("jitter")) {
+            simulationProfile.jitterMs(Integer.parseInt(options.get("jitter")));
+        }
+
+        if (options.containsKey("loss")) {
+            simulationProfile.lossRate(Double.parseDouble(options.get("loss")));
+        }
+
+        if (options.containsKey("failure")) {
+            simulationProfile.failureRate(Double.parseDouble(options.get("failure")));
+        }
+
+        LoadProfile profile = loadProfile.build();
+        int deviceCount = Integer.parseInt(options.getOrDefault("devices", "100"));
+
+        LoadReport report;
+
+        try (DialSimulator simulator = DialSimulator.builder()
+                .deviceCount(deviceCount)
+                .profile(simulationProfile.build())
+                .applications(profile.getApplicationName())
+                .build().start()) {
+
+            ProtocolFactoryImpl protocolFactory = protocolFactoryFor(simulator, profile);
+            List<DialServer> dialServers = new Discovery(protocolFactory).discover();
+
+            System.out.println("Discovered " + dialServers.size() + " of " + deviceCount + " devices, running "
+                    + profile.getRatePerSecond() + " ops/s for " + profile.getDurationSeconds() + " s");
+
+            report = new LoadGenerator(profile, protocolFactory, dialServers).run();
+        }
+
+        System.out.print(report.format());
+
+        if (options.containsKey("write-baseline")) {
+            writeBaseline(report, Paths.get(options.get("write-baseline")));
+        }
+
+        if (options.containsKey("baseline")) {
+
+            double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "0.2"));
+            List<String> regressions = report.findRegressions(readBaseline(Paths.get(options.get("baseline"))), tolerance);
+
+            if (!regressions.isEmpty()) {
+
+                System.out.println("Regressions:");
+                regressions.forEach(regression -> System.out.println("  " + regression));
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Creates a protocol factory that discovers the devices of the simulator.
+     *
+     * @param simulator A started simulator
+     * @param profile The load profile
+     * @return The protocol factory
+     */
+    public static ProtocolFactoryImpl protocolFactoryFor(DialSimulator simulator, LoadProfile profile) {
+
+        return new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .mSearchAddress(simulator.getSearchAddress().getHostString())
+                .mSearchPort(simulator.getSearchAddress().getPort())
+                .socketTimeoutMs(profile.getDiscoveryTimeoutMs())
+                .build());
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+
+        Map<String, String> options = new HashMap<>();
+
+        for (String arg : args) {
+
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        return options;
+    }
+
+    private static Properties readBaseline(Path path) throws IOException {
+
+        Properties baseline = new Properties();
+
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            baseline.load(inputStream);
+        }
+
+        return baseline;
+    }
+
+    private static void writeBaseline(LoadReport report, Path path) throws IOException {
+
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            report.toBaseline().store(outputStream, "jdial load test baseline, latencies in microseconds");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.w3is.jdial.loadtest;
+
+import de.w3is.jdial.Discovery;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.protocol.LatencyHistogram;
+import de.w3is.jdial.protocol.ProtocolFactoryImpl;
+import de.w3is.jdial.simulator.DialSimulator;
+import de.w3is.jdial.simulator.SimulationProfile;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadGeneratorTest {
+
+    @Test
+    void testMixedLoadAgainstSimulator() throws Exception {
+
+        LoadProfile profile = LoadProfile.builder()
+                .ratePerSecond(200)
+                .durationSeconds(2)
+                .warmupSeconds(0)
+                .workerThreads(20)
+                .discoveryTimeoutMs(200)
+                .mix("discover:1,get:50,start:25,stop:24")
+                .build();
+
+        try (DialSimulator simulator = DialSimulator.builder().deviceCount(10).build().start()) {
+
+            ProtocolFactoryImpl protocolFactory = LoadTestRunner.protocolFactoryFor(simulator, profile);
+            List<DialServer> dialServers = new Discovery(protocolFactory).discover();
+
+            LoadReport report = new LoadGenerator(profile, protocolFactory, dialServers).run();
+
+            long total = report.getResults().values().stream()
+                    .mapToLong(result -> result.getCount() + result.getSkipped()).sum();
+
+            assertThat(total).isEqualTo(400);
+            assertThat(report.getResults().values()).allMatch(result -> result.getErrors() == 0);
+            assertThat(report.getThroughput(LoadOperation.GET_APPLICATION)).isGreaterThan(50);
+            assertThat(report.format()).contains("discover", "get", "start", "stop");
+        }
+    }
+
+    @Test
+    void testLatencyIncludesTimeWaitingForAWorker() throws Exception {
+
+        LoadProfile profile = LoadProfile.builder()
+                .ratePerSecond(20)
+                .durationSeconds(1)
+                .warmupSeconds(0)
+                .workerThreads(1)
+                .mix("get:1")
+                .build();
+
+        try (DialSimulator simulator = DialSimulator.builder()
+                .profile(SimulationProfile.builder().latencyMs(100).build())
+                .build().start()) {
+
+            ProtocolFactoryImpl protocolFactory = LoadTestRunner.protocolFactoryFor(simulator, profile);
+            List<DialServer> dialServers = new Discovery(protocolFactory).discover();
+
+            LoadReport report = new LoadGenerator(profile, protocolFactory, dialServers).run();
+            LatencyHistogram.Snapshot latencies = report.getResults().get(LoadOperation.GET_APPLICATION).getLatencies();
+
+            // A closed loop would report about 100 ms for every request, the queue adds up to one second
+            assertThat(latencies.getCount()).isEqualTo(20);
+            assertThat(latencies.getMax()).isGreaterThan(900_000);
+        }
+    }
+
+    @Test
+    void testFindRegressions() {
+
+        LoadReport baseline = reportWithLatency(1000);
+        Properties properties = baseline.toBaseline();
+
+        assertThat(properties.getProperty("get.p99")).isNotNull();
+        assertThat(reportWithLatency(1100).findRegressions(properties, 0.2)).isEmpty();
+        assertThat(reportWithLatency(2000).findRegressions(properties, 0.2))
+                .hasSize(3)
+                .allMatch(regression -> regression.startsWith("get.p"));
+    }
+
+    private static LoadReport reportWithLatency(long latencyMicros) {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 0; i < 100; i++) {
+            histogram.record(latencyMicros);
+        }
+
+        Map<LoadOperation, LoadReport.OperationResult> results = new EnumMap<>(LoadOperation.class);
+        results.put(LoadOperation.GET_APPLICATION, new LoadReport.OperationResult(100, 0, 0, histogram.snapshot()));
+
+        return new LoadReport(1, results);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.server;
+
+import de.w3is.jdial.model.State;
+
+/**
+ * Implements one application of a {@link NioDialServer}.
+ *
+ * The methods are called on the worker threads of the server, concurrently for different clients,
+ * so implementations must be thread safe. A runtime exception is answered with 503.
+ *
+ * @author Simon Weis
+ */
+public interface ApplicationHandler {
+
+    /**
+     * @return The state reported in the application status
+     */
+    State getState();
+
+    /**
+     * Starts the application or passes the payload to the running application.
+     *
+     * @param payload The body of the launch request, empty if the client sent none
+     * @param clientFriendlyName The friendly name the client sent or null
+     * @return True if the application was started, false if it was already running
+     */
+    boolean launch(String payload, String clientFriendlyName);
+
+    /**
+     * @return False if the application wasn't running
+     */
+    boolean stop();
+
+    /**
+     * Moves the running application to the background. Only called if {@link #supportsHide()} is true.
+     *
+     * @return False if the application wasn't running
+     */
+    default boolean hide() {
+        return false;
+    }
+
+    /**
+     * @return True if the application can be hidden, otherwise hide requests are answered with 501
+     */
+    default boolean supportsHide() {
+        return false;
+    }
+
+    /**
+     * @return True if clients may stop the application
+     */
+    default boolean isAllowStop() {
+        return true;
+    }
+}
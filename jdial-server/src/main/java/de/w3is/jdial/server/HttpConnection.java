@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The state of one client connection, which is only touched by the selector thread.
+ *
+ * The input buffer starts small and grows up to the header limit plus the payload limit,
+ * so idle connections cost about one kilobyte. Requests are handled one after another,
+ * pipelined requests wait in the buffer until the previous response was written.
+ *
+ * @author Simon Weis
+ */
+final class HttpConnection {
+
+    static final int MAX_HEADER_BYTES = 8192;
+    private static final int INITIAL_BUFFER_BYTES = 1024;
+    private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+
+    private final SocketChannel channel;
+    private final int maxPayloadBytes;
+
+    private SelectionKey key;
+    private ByteBuffer input = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private ByteBuffer output;
+    private boolean busy;
+    private boolean closeAfterResponse;
+    private long lastActivityNanos = System.nanoTime();
+
+    HttpConnection(SocketChannel channel, int maxPayloadBytes) {
+
+        this.channel = channel;
+        this.maxPayloadBytes = maxPayloadBytes;
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return The number of bytes read or -1 at the end of the stream
+     */
+    int read() throws IOException {
+
+        if (!input.hasRemaining()) {
+
+            if (input.capacity() >= MAX_HEADER_BYTES + maxPayloadBytes) {
+                // The parser rejects the request before the buffer is full
+                return 0;
+            }
+
+            input = grow(input, Math.min(input.capacity() * 2, MAX_HEADER_BYTES + maxPayloadBytes));
+        }
+
+        int read = channel.read(input);
+        lastActivityNanos = System.nanoTime();
+
+        return read;
+    }
+
+    /**
+     * @return The next complete request or null if more bytes are needed
+     * @throws HttpException If the request is malformed or exceeds a limit
+     */
+    HttpRequest nextRequest() throws HttpException {
+
+        byte[] bytes = input.array();
+        int headerEnd = indexOf(bytes, input.position(), HEADER_END);
+
+        if (headerEnd == -1) {
+
+            if (input.position() >= MAX_HEADER_BYTES) {
+                throw new HttpException(431, "Request Header Fields Too Large");
+            }
+
+            return null;
+        }
+
+        // A single read may deliver a header larger than the limit together with its end
+        if (headerEnd > MAX_HEADER_BYTES) {
+            throw new HttpException(431, "Request Header Fields Too Large");
+        }
+
+        String[] lines = new String(bytes, 0, headerEnd, StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new HttpException(400, "Bad Request");
+        }
+
+        Map<String, String> headers = new HashMap<>();
+
+        for (int i = 1; i < lines.length; i++) {
+
+            int separator = lines[i].indexOf(':');
+
+            if (separator <= 0) {
+                throw new HttpException(400, "Bad Request");
+            }
+
+            headers.put(lines[i].substring(0, separator).trim().toLowerCase(Locale.ROOT),
+                    lines[i].substring(separator + 1).trim());
+        }
+
+        if (headers.containsKey("transfer-encoding")) {
+            throw new HttpException(501, "Not Implemented");
+        }
+
+        int contentLength = contentLength(headers.get("content-length"));
+        int bodyStart = headerEnd + HEADER_END.length;
+        int requestEnd = bodyStart + contentLength;
+
+        if (input.position() < requestEnd) {
+
+            if (input.capacity() < requestEnd) {
+                input = grow(input, requestEnd);
+            }
+
+            return null;
+        }
+
+        byte[] body = Arrays.copyOfRange(bytes, bodyStart, requestEnd);
+        consume(requestEnd);
+
+        return new HttpRequest(requestLine[0], requestLine[1], requestLine[2], headers, body);
+    }
+
+    private int contentLength(String value) throws HttpException {
+
+        if (value == null) {
+            return 0;
+        }
+
+        long contentLength;
+
+        try {
+            contentLength = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new HttpException(400, "Bad Request");
+        }
+
+        if (contentLength < 0) {
+            throw new HttpException(400, "Bad Request");
+        }
+
+        if (contentLength > maxPayloadBytes) {
+            throw new HttpException(413, "Payload Too Large");
+        }
+
+        return (int) contentLength;
+    }
+
+    private void consume(int bytes) {
+
+        input.flip();
+        input.position(bytes);
+
+        if (!input.hasRemaining() && input.capacity() > INITIAL_BUFFER_BYTES) {
+
+            // Give the memory of a large request back while the connection is idle
+            input = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+            return;
+        }
+
+        input.compact();
+    }
+
+    /**
+     * Starts writing a response. Reading pauses until the response was written.
+     *
+     * @return True if the response was written completely
+     */
+    boolean send(byte[] response, boolean closeAfterResponse) throws IOException {
+
+        this.output = ByteBuffer.wrap(response);
+        this.closeAfterResponse = closeAfterResponse;
+        this.busy = true;
+
+        return write();
+    }
+
+    /**
+     * @return True if the pending response was written completely
+     */
+    boolean write() throws IOException {
+
+        channel.write(output);
+        lastActivityNanos = System.nanoTime();
+
+        if (output.hasRemaining()) {
+            key.interestOps(SelectionKey.OP_WRITE);
+            return false;
+        }
+
+        output = null;
+        return true;
+    }
+
+    /**
+     * Marks the connection busy while a worker handles the request.
+     */
+    void suspend() {
+
+        busy = true;
+        key.interestOps(0);
+    }
+
+    void resume() {
+
+        busy = false;
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    boolean isBusy() {
+        return busy;
+    }
+
+    boolean isCloseAfterResponse() {
+        return closeAfterResponse;
+    }
+
+    /*
+     * A connection waiting for a worker isn't idle, but one whose client stopped reading a
+     * response is, so stalled writes are closed after the idle timeout as well.
+     */
+    boolean isIdleSince(long nanos) {
+        return (!busy || output != null) && lastActivityNanos < nanos;
+    }
+
+    void close() {
+
+        if (key != null) {
+            key.cancel();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The connection is gone anyway
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+
+        return grown;
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte[] pattern) {
+
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+
+            for (int j = 0; j < pattern.length; j++) {
+
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    static final class HttpException extends Exception {
+
+        private final int status;
+
+        HttpException(int status, String reason) {
+
+            super(reason);
+            this.status = status;
+        }
+
+        int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.server;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A parsed http request. Header names are lower case.
+ *
+ * @author Simon Weis
+ */
+final class HttpRequest {
+
+    private final String method;
+    private final String path;
+    private final String query;
+    private final String version;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    HttpRequest(String method, String target, String version, Map<String, String> headers, byte[] body) {
+
+        int queryStart = target.indexOf('?');
+
+        this.method = method;
+        this.path = queryStart == -1 ? target : target.substring(0, queryStart);
+        this.query = queryStart == -1 ? null : target.substring(queryStart + 1);
+        this.version = version;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    String getBodyText() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The decoded segments of the path without empty segments
+     */
+    List<String> getPathSegments() {
+
+        List<String> segments = new ArrayList<>();
+
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(decode(segment));
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * @return The decoded value of the first query parameter with the name or null
+     */
+    String getQueryParameter(String name) {
+
+        if (query == null) {
+            return null;
+        }
+
+        for (String parameter : query.split("&")) {
+
+            int separator = parameter.indexOf('=');
+
+            if (separator != -1 && decode(parameter.substring(0, separator)).equals(name)) {
+                return decode(parameter.substring(separator + 1));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * HTTP/1.1 keeps the connection by default, HTTP/1.0 only on request.
+     */
+    boolean isKeepAlive() {
+
+        String connection = getHeader("Connection");
+
+        if (connection != null && connection.equalsIgnoreCase("close")) {
+            return false;
+        }
+
+        return version.equals("HTTP/1.1") || (connection != null && connection.equalsIgnoreCase("keep-alive"));
+    }
+
+    private static String decode(String value) {
+
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
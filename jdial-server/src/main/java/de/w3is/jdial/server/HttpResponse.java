@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An http response, serialized at once so it can be written without blocking.
+ *
+ * @author Simon Weis
+ */
+final class HttpResponse {
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final int status;
+    private final byte[] body;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+
+    private HttpResponse(int status, byte[] body) {
+
+        this.status = status;
+        this.body = body;
+    }
+
+    static HttpResponse status(int status) {
+        return new HttpResponse(status, NO_BODY);
+    }
+
+    static HttpResponse xml(int status, String xml) {
+
+        return new HttpResponse(status, xml.getBytes(StandardCharsets.UTF_8))
+                .header("Content-Type", "text/xml; charset=\"utf-8\"");
+    }
+
+    HttpResponse header(String name, String value) {
+
+        headers.put(name, value);
+        return this;
+    }
+
+    byte[] toBytes(boolean close) {
+
+        StringBuilder head = new StringBuilder(128)
+                .append("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+
+        headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+
+        if (close) {
+            head.append("Connection: close\r\n");
+        }
+
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        byte[] bytes = new byte[headBytes.length + body.length];
+
+        System.arraycopy(headBytes, 0, bytes, 0, headBytes.length);
+        System.arraycopy(body, 0, bytes, headBytes.length, body.length);
+
+        return bytes;
+    }
+
+    private static String reason(int status) {
+
+        switch (status) {
+            case 200:
+                return "OK";
+            case 201:
+                return "Created";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 413:
+                return "Payload Too Large";
+            case 431:
+                return "Request Header Fields Too Large";
+            case 501:
+                return "Not Implemented";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Unknown";
+        }
+    }
+}
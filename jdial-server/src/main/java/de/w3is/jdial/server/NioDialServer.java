@@ -0,0 +1,689 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.server;
+
+import de.w3is.jdial.model.State;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A DIAL server for first-screen devices, which serves the device descriptor at /dd.xml and the
+ * application resource at /apps from {@link ApplicationHandler}s.
+ *
+ * One selector thread accepts the connections and reads and writes all of them without blocking.
+ * Requests to an application run on a small pool of worker threads, so a slow handler never stalls
+ * other clients. An idle keep-alive connection costs a socket and about one kilobyte of buffer,
+ * which lets a single server hold thousands of phones.
+ *
+ * With an SSDP address the server also answers M-SEARCH requests for the dial service.
+ *
+ * @author Simon Weis
+ */
+public class NioDialServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(NioDialServer.class.getName());
+
+    public static final InetSocketAddress SSDP_MULTICAST_ADDRESS = new InetSocketAddress("239.255.255.250", 1900);
+
+    static final String DEVICE_DESCRIPTOR_PATH = "dd.xml";
+    static final String APPLICATION_PATH = "apps";
+    private static final String RUN_PATH = "run";
+    private static final String HIDE_PATH = "hide";
+    private static final long IDLE_CHECK_INTERVAL_MS = 1000;
+
+    private final String friendlyName;
+    private final String uniqueServiceName;
+    private final String serverDescription;
+    private final InetSocketAddress httpAddress;
+    private final InetSocketAddress ssdpAddress;
+    private final Map<String, ApplicationHandler> applications;
+    private final int workerThreads;
+    private final int maxConnections;
+    private final long idleTimeoutMs;
+    private final int maxPayloadBytes;
+
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile int connectionCount;
+    private volatile boolean closing;
+
+    private Selector selector;
+    private Thread selectorThread;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workers;
+    private SsdpResponder ssdpResponder;
+
+    private NioDialServer(Builder builder) {
+
+        this.friendlyName = builder.friendlyName;
+        this.uniqueServiceName = builder.uniqueServiceName;
+        this.serverDescription = builder.serverDescription;
+        this.httpAddress = builder.httpAddress;
+        this.ssdpAddress = builder.ssdpAddress;
+        this.applications = Collections.unmodifiableMap(new LinkedHashMap<>(builder.applications));
+        this.workerThreads = builder.workerThreads;
+        this.maxConnections = builder.maxConnections;
+        this.idleTimeoutMs = builder.idleTimeoutMs;
+        this.maxPayloadBytes = builder.maxPayloadBytes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Binds the http socket and, if configured, the SSDP socket.
+     *
+     * @return This server
+     * @throws IOException If a socket can't be bound
+     */
+    public NioDialServer start() throws IOException {
+
+        selector = Selector.open();
+
+        try {
+
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(httpAddress, maxConnections);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            if (ssdpAddress != null) {
+                ssdpResponder = new SsdpResponder(ssdpAddress, getHttpAddress(), uniqueServiceName, serverDescription);
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            close();
+            throw e;
+        }
+
+        workers = Executors.newFixedThreadPool(workerThreads, new DaemonThreadFactory("jdial-server-worker"));
+        selectorThread = new DaemonThreadFactory("jdial-server-selector").newThread(this::select);
+        selectorThread.start();
+
+        if (ssdpResponder != null) {
+            ssdpResponder.start();
+        }
+
+        return this;
+    }
+
+    /**
+     * @return The bound http address
+     */
+    public InetSocketAddress getHttpAddress() {
+        return (InetSocketAddress) serverChannel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * @return The bound SSDP address or null without SSDP
+     */
+    public InetSocketAddress getSsdpAddress() {
+        return ssdpResponder == null ? null : ssdpResponder.getAddress();
+    }
+
+    public String getUniqueServiceName() {
+        return uniqueServiceName;
+    }
+
+    /**
+     * @return The number of open client connections
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return The number of http requests handled since the start
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Closes all connections on the selector thread and waits until it stopped.
+     */
+    @Override
+    public void close() {
+
+        if (ssdpResponder != null) {
+            ssdpResponder.close();
+        }
+
+        closing = true;
+
+        if (selectorThread != null) {
+
+            selector.wakeup();
+
+            if (Thread.currentThread() != selectorThread) {
+                joinSelectorThread();
+            }
+
+        } else if (selector != null) {
+
+            closeSelector();
+        }
+
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void joinSelectorThread() {
+
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeSelector() {
+
+        try {
+
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+
+            selector.close();
+
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.log(Level.FINE, "Exception while closing the server", e);
+        }
+    }
+
+    private void select() {
+
+        long nextIdleCheck = System.nanoTime();
+
+        try {
+            while (!closing) {
+
+                selector.select(IDLE_CHECK_INTERVAL_MS);
+
+                Runnable completion;
+                while ((completion = completions.poll()) != null) {
+                    completion.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read((HttpConnection) key.attachment());
+                    } else if (key.isWritable()) {
+                        write((HttpConnection) key.attachment());
+                    }
+                }
+
+                if (System.nanoTime() - nextIdleCheck >= 0) {
+
+                    closeIdleConnections();
+                    nextIdleCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_CHECK_INTERVAL_MS);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+
+            LOGGER.log(Level.FINE, "Server closed");
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.SEVERE, "Selector failed, the server stopped", e);
+
+        } finally {
+
+            closeSelector();
+        }
+    }
+
+    private void accept() throws IOException {
+
+        SocketChannel channel;
+
+        while ((channel = serverChannel.accept()) != null) {
+
+            if (connectionCount >= maxConnections) {
+
+                LOGGER.log(Level.FINE, "Connection limit reached, closing " + channel.getRemoteAddress());
+                channel.close();
+                continue;
+            }
+
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            HttpConnection connection = new HttpConnection(channel, maxPayloadBytes);
+            connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+            connectionCount++;
+        }
+    }
+
+    private void read(HttpConnection connection) {
+
+        try {
+
+            if (connection.read() == -1) {
+                close(connection);
+                return;
+            }
+
+            handleNextRequest(connection);
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Connection failed", e);
+            close(connection);
+        }
+    }
+
+    private void write(HttpConnection connection) {
+
+        try {
+
+            if (connection.write()) {
+                responseWritten(connection);
+            }
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Connection failed", e);
+            close(connection);
+        }
+    }
+
+    private void handleNextRequest(HttpConnection connection) throws IOException {
+
+        if (connection.isBusy()) {
+            return;
+        }
+
+        HttpRequest request;
+
+        try {
+
+            request = connection.nextRequest();
+
+        } catch (HttpConnection.HttpException e) {
+
+            send(connection, HttpResponse.status(e.getStatus()), false);
+            return;
+        }
+
+        if (request == null) {
+            return;
+        }
+
+        requestCount.incrementAndGet();
+        route(connection, request);
+    }
+
+    private void route(HttpConnection connection, HttpRequest request) throws IOException {
+
+        List<String> path = request.getPathSegments();
+        String method = request.getMethod();
+
+        if (path.size() == 1 && path.get(0).equals(DEVICE_DESCRIPTOR_PATH)) {
+
+            HttpResponse response = method.equals("GET")
+                    ? HttpResponse.xml(200, deviceDescriptor()).header("Application-URL", baseUrl(connection) + "/" + APPLICATION_PATH)
+                    : HttpResponse.status(405);
+
+            send(connection, response, request.isKeepAlive());
+            return;
+        }
+
+        ApplicationHandler handler = path.size() >= 2 && path.get(0).equals(APPLICATION_PATH)
+                ? applications.get(path.get(1))
+                : null;
+
+        if (handler == null) {
+            send(connection, HttpResponse.status(404), request.isKeepAlive());
+            return;
+        }
+
+        String applicationName = path.get(1);
+        String instanceUrl = baseUrl(connection) + "/" + APPLICATION_PATH + "/" + applicationName + "/" + RUN_PATH;
+
+        if (path.size() == 2 && method.equals("GET")) {
+
+            dispatch(connection, request, () -> HttpResponse.xml(200, applicationStatus(applicationName, handler)));
+
+        } else if (path.size() == 2 && method.equals("POST")) {
+
+            dispatch(connection, request, () -> HttpResponse.status(
+                    handler.launch(request.getBodyText(), request.getQueryParameter("friendlyName")) ? 201 : 200)
+                    .header("LOCATION", instanceUrl));
+
+        } else if (path.size() == 3 && path.get(2).equals(RUN_PATH) && method.equals("DELETE")) {
+
+            dispatch(connection, request, () -> !handler.isAllowStop()
+                    ? HttpResponse.status(405)
+                    : HttpResponse.status(handler.stop() ? 200 : 404));
+
+        } else if (path.size() == 4 && path.get(2).equals(RUN_PATH) && path.get(3).equals(HIDE_PATH)
+                && method.equals("POST")) {
+
+            dispatch(connection, request, () -> !handler.supportsHide()
+                    ? HttpResponse.status(501)
+                    : HttpResponse.status(handler.hide() ? 200 : 404));
+
+        } else if (path.size() <= 4) {
+
+            send(connection, HttpResponse.status(405), request.isKeepAlive());
+
+        } else {
+
+            send(connection, HttpResponse.status(404), request.isKeepAlive());
+        }
+    }
+
+    /*
+     * Runs the handler on a worker and writes the response on the selector thread.
+     */
+    private void dispatch(HttpConnection connection, HttpRequest request, Supplier<HttpResponse> handler) {
+
+        connection.suspend();
+
+        try {
+
+            workers.execute(() -> {
+
+                HttpResponse response;
+
+                try {
+
+                    response = handler.get();
+
+                } catch (RuntimeException e) {
+
+                    LOGGER.log(Level.WARNING, "Application handler failed", e);
+                    response = HttpResponse.status(503);
+                }
+
+                HttpResponse result = response;
+                completions.add(() -> sendSafely(connection, result, request.isKeepAlive()));
+                selector.wakeup();
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            // The server is closing
+            close(connection);
+        }
+    }
+
+    private void sendSafely(HttpConnection connection, HttpResponse response, boolean keepAlive) {
+
+        if (!connection.getChannel().isOpen()) {
+            return;
+        }
+
+        try {
+
+            send(connection, response, keepAlive);
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Connection failed", e);
+            close(connection);
+        }
+    }
+
+    private void send(HttpConnection connection, HttpResponse response, boolean keepAlive) throws IOException {
+
+        if (connection.send(response.toBytes(!keepAlive), !keepAlive)) {
+            responseWritten(connection);
+        }
+    }
+
+    private void responseWritten(HttpConnection connection) throws IOException {
+
+        if (connection.isCloseAfterResponse()) {
+            close(connection);
+            return;
+        }
+
+        connection.resume();
+
+        // A pipelined request may already wait in the buffer
+        handleNextRequest(connection);
+    }
+
+    private void closeIdleConnections() {
+
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+
+        for (SelectionKey key : selector.keys()) {
+
+            if (key.attachment() instanceof HttpConnection && ((HttpConnection) key.attachment()).isIdleSince(idleSince)) {
+                close((HttpConnection) key.attachment());
+            }
+        }
+    }
+
+    private void close(HttpConnection connection) {
+
+        if (connection.getChannel().isOpen()) {
+            connectionCount--;
+        }
+
+        connection.close();
+    }
+
+    private String baseUrl(HttpConnection connection) throws IOException {
+
+        InetSocketAddress localAddress = (InetSocketAddress) connection.getChannel().getLocalAddress();
+        InetAddress address = localAddress.getAddress();
+
+        String host = address instanceof Inet6Address
+                ? "[" + address.getHostAddress().replaceFirst("%.*", "") + "]"
+                : address.getHostAddress();
+
+        return "http://" + host + ":" + localAddress.getPort();
+    }
+
+    private String deviceDescriptor() {
+
+        return "<?xml version=\"1.0\"?>\n" +
+                "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n" +
+                "  <specVersion><major>1</major><minor>0</minor></specVersion>\n" +
+                "  <device>\n" +
+                "    <deviceType>urn:dial-multiscreen-org:device:dial:1</deviceType>\n" +
+                "    <friendlyName>" + escape(friendlyName) + "</friendlyName>\n" +
+                "    <manufacturer>jdial</manufacturer>\n" +
+                "    <modelName>jdial-server</modelName>\n" +
+                "    <UDN>" + escape(uniqueServiceName) + "</UDN>\n" +
+                "  </device>\n" +
+                "</root>\n";
+    }
+
+    private static String applicationStatus(String applicationName, ApplicationHandler handler) {
+
+        State state = handler.getState();
+
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<service xmlns=\"urn:dial-multiscreen-org:schemas:dial\" dialVer=\"2.1\">\n" +
+                "  <name>" + escape(applicationName) + "</name>\n" +
+                "  <options allowStop=\"" + handler.isAllowStop() + "\"/>\n" +
+                "  <state>" + state.name().toLowerCase() + "</state>\n" +
+                "  <link rel=\"run\" href=\"" + RUN_PATH + "\"/>\n" +
+                "</service>\n";
+    }
+
+    private static String escape(String text) {
+
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * Configures a {@link NioDialServer}.
+     */
+    public static final class Builder {
+
+        private String friendlyName = "jdial";
+        private String uniqueServiceName = "uuid:" + UUID.randomUUID();
+        private String serverDescription = "Java/" + System.getProperty("java.version") + " UPnP/1.0 jdial-server/1.0";
+        private InetSocketAddress httpAddress = new InetSocketAddress(0);
+        private InetSocketAddress ssdpAddress;
+        private final Map<String, ApplicationHandler> applications = new LinkedHashMap<>();
+        private int workerThreads = 4;
+        private int maxConnections = 10_000;
+        private long idleTimeoutMs = 30_000;
+        private int maxPayloadBytes = 4096;
+
+        private Builder() {
+        }
+
+        public Builder friendlyName(String friendlyName) {
+            this.friendlyName = friendlyName;
+            return this;
+        }
+
+        public Builder uniqueServiceName(String uniqueServiceName) {
+            this.uniqueServiceName = uniqueServiceName;
+            return this;
+        }
+
+        /**
+         * @param serverDescription The SERVER header of the M-SEARCH responses
+         * @return This builder
+         */
+        public Builder serverDescription(String serverDescription) {
+            this.serverDescription = serverDescription;
+            return this;
+        }
+
+        /**
+         * @param httpAddress The address of the http socket, an ephemeral port on all interfaces by default
+         * @return This builder
+         */
+        public Builder httpAddress(InetSocketAddress httpAddress) {
+            this.httpAddress = httpAddress;
+            return this;
+        }
+
+        /**
+         * @param ssdpAddress {@link #SSDP_MULTICAST_ADDRESS} to answer searches in the network,
+         *                    a unicast address for tests, or null to skip SSDP
+         * @return This builder
+         */
+        public Builder ssdpAddress(InetSocketAddress ssdpAddress) {
+            this.ssdpAddress = ssdpAddress;
+            return this;
+        }
+
+        /**
+         * @param name The application name in the application url
+         * @param handler Implements the application
+         * @return This builder
+         */
+        public Builder application(String name, ApplicationHandler handler) {
+            this.applications.put(name, handler);
+            return this;
+        }
+
+        /**
+         * @param workerThreads The threads that call the application handlers
+         * @return This builder
+         */
+        public Builder workerThreads(int workerThreads) {
+            this.workerThreads = requirePositive(workerThreads, "number of worker threads");
+            return this;
+        }
+
+        /**
+         * @param maxConnections Further connections are closed right after they were accepted
+         * @return This builder
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = requirePositive(maxConnections, "connection limit");
+            return this;
+        }
+
+        /**
+         * @param idleTimeoutMs Keep-alive connections without requests for this time are closed
+         * @return This builder
+         */
+        public Builder idleTimeoutMs(long idleTimeoutMs) {
+            this.idleTimeoutMs = requirePositive((int) Math.min(idleTimeoutMs, Integer.MAX_VALUE), "idle timeout");
+            return this;
+        }
+
+        /**
+         * @param maxPayloadBytes Larger launch payloads are answered with 413, DIAL allows 4096 bytes
+         * @return This builder
+         */
+        public Builder maxPayloadBytes(int maxPayloadBytes) {
+            this.maxPayloadBytes = requirePositive(maxPayloadBytes, "payload limit");
+            return this;
+        }
+
+        public NioDialServer build() {
+            return new NioDialServer(this);
+        }
+
+        private static int requirePositive(int value, String name) {
+
+            if (value <= 0) {
+                throw new IllegalArgumentException("The " + name + " must be positive");
+            }
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.server;
+
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Answers M-SEARCH requests for the dial service of a {@link NioDialServer}.
+ *
+ * Multicast searches are answered after a random delay of up to MX seconds, as UPnP requires,
+ * so several devices don't answer at once. Unicast searches are answered immediately.
+ *
+ * @author Simon Weis
+ */
+final class SsdpResponder {
+
+    private static final Logger LOGGER = Logger.getLogger(SsdpResponder.class.getName());
+
+    static final String DIAL_SEARCH_TARGET = "urn:dial-multiscreen-org:service:dial:1";
+    private static final String ALL_SEARCH_TARGET = "ssdp:all";
+    private static final Pattern MX_PATTERN = Pattern.compile("(?im)^MX:\\s*(\\d+)");
+    private static final int MAX_RESPONSE_DELAY_SECONDS = 5;
+
+    private final DatagramSocket socket;
+    private final boolean multicast;
+    private final InetSocketAddress httpAddress;
+    private final String uniqueServiceName;
+    private final String serverDescription;
+    private final ScheduledExecutorService scheduler;
+
+    SsdpResponder(InetSocketAddress address, InetSocketAddress httpAddress, String uniqueServiceName,
+                  String serverDescription) throws IOException {
+
+        this.multicast = address.getAddress().isMulticastAddress();
+        this.httpAddress = httpAddress;
+        this.uniqueServiceName = uniqueServiceName;
+        this.serverDescription = serverDescription;
+
+        if (multicast) {
+
+            MulticastSocket multicastSocket = new MulticastSocket(address.getPort());
+
+            try {
+                multicastSocket.joinGroup(address.getAddress());
+            } catch (IOException e) {
+                multicastSocket.close();
+                throw e;
+            }
+
+            this.socket = multicastSocket;
+        } else {
+
+            this.socket = new DatagramSocket(address);
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jdial-server-ssdp"));
+    }
+
+    void start() {
+        new DaemonThreadFactory("jdial-server-ssdp-receiver").newThread(this::receive).start();
+    }
+
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    void close() {
+
+        socket.close();
+        scheduler.shutdownNow();
+    }
+
+    private void receive() {
+
+        byte[] buffer = new byte[2048];
+        DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+
+        while (!socket.isClosed()) {
+
+            try {
+
+                request.setLength(buffer.length);
+                socket.receive(request);
+
+            } catch (IOException e) {
+
+                if (!socket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Exception while receiving M-SEARCH", e);
+                }
+                continue;
+            }
+
+            String message = new String(buffer, 0, request.getLength(), StandardCharsets.UTF_8);
+
+            if (message.startsWith("M-SEARCH") &&
+                    (message.contains(DIAL_SEARCH_TARGET) || message.contains(ALL_SEARCH_TARGET))) {
+
+                SocketAddress searcher = request.getSocketAddress();
+                scheduler.schedule(() -> respond(searcher), responseDelayMs(message), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private long responseDelayMs(String message) {
+
+        if (!multicast) {
+            return 0;
+        }
+
+        int maxDelaySeconds = maxDelaySeconds(message);
+
+        return maxDelaySeconds > 0 ? ThreadLocalRandom.current().nextLong(maxDelaySeconds * 1000L) : 0;
+    }
+
+    /*
+     * The MX value comes from the network, a value with more digits than the maximum
+     * is treated as the maximum instead of being parsed, so it can't overflow.
+     */
+    static int maxDelaySeconds(String message) {
+
+        Matcher matcher = MX_PATTERN.matcher(message);
+
+        if (!matcher.find()) {
+            return 1;
+        }
+
+        String value = matcher.group(1);
+
+        if (value.length() > String.valueOf(MAX_RESPONSE_DELAY_SECONDS).length()) {
+            return MAX_RESPONSE_DELAY_SECONDS;
+        }
+
+        return Math.min(Integer.parseInt(value), MAX_RESPONSE_DELAY_SECONDS);
+    }
+
+    private void respond(SocketAddress searcher) {
+
+        try {
+
+            String response = "HTTP/1.1 200 OK\r\n" +
+                    "CACHE-CONTROL: max-age=1800\r\n" +
+                    "EXT:\r\n" +
+                    "LOCATION: " + deviceDescriptorUrl(searcher) + "\r\n" +
+                    "SERVER: " + serverDescription + "\r\n" +
+                    "ST: " + DIAL_SEARCH_TARGET + "\r\n" +
+                    "USN: " + uniqueServiceName + "::" + DIAL_SEARCH_TARGET + "\r\n" +
+                    "\r\n";
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(bytes, bytes.length, searcher));
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Exception while sending M-SEARCH response", e);
+        }
+    }
+
+    /*
+     * A server on all interfaces announces the address of the interface that routes to the searcher.
+     */
+    private String deviceDescriptorUrl(SocketAddress searcher) throws IOException {
+
+        InetAddress address = httpAddress.getAddress();
+
+        if (address.isAnyLocalAddress()) {
+
+            try (DatagramSocket probe = new DatagramSocket()) {
+                probe.connect(searcher);
+                address = probe.getLocalAddress();
+            }
+        }
+
+        String host = address instanceof Inet6Address
+                ? "[" + address.getHostAddress().replaceFirst("%.*", "") + "]"
+                : address.getHostAddress();
+
+        return "http://" + host + ":" + httpAddress.getPort() + "/" + NioDialServer.DEVICE_DESCRIPTOR_PATH;
+    }
+}
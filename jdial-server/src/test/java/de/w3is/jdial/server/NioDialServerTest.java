@@ -0,0 +1,295 @@
+package de.w3is.jdial.server;
+
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DialClientConnection;
+import de.w3is.jdial.Discovery;
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.State;
+import de.w3is.jdial.protocol.ProtocolConfiguration;
+import de.w3is.jdial.protocol.ProtocolFactoryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NioDialServerTest {
+
+    private static final int CONNECTIONS = 2000;
+
+    @Test
+    void testJdialClientDiscoversAndControlsApplication() throws Exception {
+
+        TestApplication youtube = new TestApplication();
+
+        try (NioDialServer server = NioDialServer.builder()
+                .friendlyName("Living room")
+                .httpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .ssdpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .application(Application.YOUTUBE, youtube)
+                .build().start()) {
+
+            ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                    .mSearchAddress(server.getSsdpAddress().getHostString())
+                    .mSearchPort(server.getSsdpAddress().getPort())
+                    .build());
+
+            List<DialServer> dialServers = new Discovery(protocolFactory).discover();
+
+            assertThat(dialServers).hasSize(1);
+            assertThat(dialServers.get(0).getFriendlyName()).isEqualTo("Living room");
+            assertThat(dialServers.get(0).getUniqueServiceName()).startsWith(server.getUniqueServiceName());
+
+            DialClient dialClient = new DialClient(protocolFactory);
+            dialClient.setClientFriendlyName("Phone");
+            DialClientConnection connection = dialClient.connectTo(dialServers.get(0));
+
+            assertThat(connection.getApplication(Application.YOUTUBE).getState()).isEqualTo(State.STOPPED);
+            assertThat(connection.supportsApplication(Application.NETFLIX)).isFalse();
+
+            URL instanceUrl = connection.startApplication(Application.YOUTUBE);
+
+            assertThat(instanceUrl.getPath()).isEqualTo("/apps/YouTube/run");
+            assertThat(youtube.clientFriendlyName.get()).isEqualTo("Phone");
+            assertThat(connection.getApplication(Application.YOUTUBE).getState()).isEqualTo(State.RUNNING);
+
+            connection.stopApplication(instanceUrl);
+
+            assertThat(youtube.getState()).isEqualTo(State.STOPPED);
+        }
+    }
+
+    @Test
+    void testThousandsOfConcurrentConnections() throws Exception {
+
+        try (NioDialServer server = NioDialServer.builder()
+                .httpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .application(Application.YOUTUBE, new TestApplication())
+                .build().start()) {
+
+            List<SocketChannel> clients = new ArrayList<>();
+
+            try {
+
+                // All connections are open before the first response is read
+                for (int i = 0; i < CONNECTIONS; i++) {
+
+                    SocketChannel client = SocketChannel.open(server.getHttpAddress());
+                    client.write(StandardCharsets.US_ASCII.encode("GET /apps/YouTube HTTP/1.1\r\nHost: tv\r\n\r\n"));
+                    clients.add(client);
+                }
+
+                for (SocketChannel client : clients) {
+                    assertThat(readResponse(client)).startsWith("HTTP/1.1 200 OK").contains("<state>stopped</state>");
+                }
+
+                assertThat(server.getConnectionCount()).isEqualTo(CONNECTIONS);
+                assertThat(server.getRequestCount()).isEqualTo(CONNECTIONS);
+
+            } finally {
+
+                for (SocketChannel client : clients) {
+                    client.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPipelinedRequestsAndErrors() throws Exception {
+
+        try (NioDialServer server = NioDialServer.builder()
+                .httpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .application(Application.YOUTUBE, new TestApplication())
+                .application("Hideable", new TestApplication(true))
+                .maxPayloadBytes(16)
+                .build().start();
+             SocketChannel client = SocketChannel.open(server.getHttpAddress())) {
+
+            client.write(StandardCharsets.US_ASCII.encode(
+                    "POST /apps/YouTube/run/hide HTTP/1.1\r\nContent-Length: 0\r\n\r\n" +
+                    "POST /apps/Hideable HTTP/1.1\r\nContent-Length: 0\r\n\r\n" +
+                    "POST /apps/Hideable/run/hide HTTP/1.1\r\nContent-Length: 0\r\n\r\n" +
+                    "GET /apps/Unknown HTTP/1.1\r\n\r\n" +
+                    "PUT /apps/YouTube HTTP/1.1\r\n\r\n" +
+                    "POST /apps/YouTube HTTP/1.1\r\nContent-Length: 17\r\n\r\n"));
+
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 501");
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 201");
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 200");
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 404");
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 405");
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 413").contains("Connection: close");
+        }
+    }
+
+    @Test
+    void testOversizedHeaderIsRejected() throws Exception {
+
+        try (NioDialServer server = NioDialServer.builder()
+                .httpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .maxPayloadBytes(64 * 1024)
+                .build().start();
+             SocketChannel client = SocketChannel.open(server.getHttpAddress())) {
+
+            String header = "X-Padding: " + "a".repeat(HttpConnection.MAX_HEADER_BYTES) + "\r\n";
+            client.write(StandardCharsets.US_ASCII.encode("GET /dd.xml HTTP/1.1\r\n" + header + "\r\n"));
+
+            assertThat(readResponse(client)).startsWith("HTTP/1.1 431");
+        }
+    }
+
+    @Test
+    void testOverlongMxIsTheMaximumDelay() {
+
+        assertThat(SsdpResponder.maxDelaySeconds("M-SEARCH * HTTP/1.1\r\nMX: 3\r\n\r\n")).isEqualTo(3);
+        assertThat(SsdpResponder.maxDelaySeconds("M-SEARCH * HTTP/1.1\r\nMX: 120\r\n\r\n")).isEqualTo(5);
+        assertThat(SsdpResponder.maxDelaySeconds("M-SEARCH * HTTP/1.1\r\nMX: 99999999999999999999\r\n\r\n"))
+                .isEqualTo(5);
+        assertThat(SsdpResponder.maxDelaySeconds("M-SEARCH * HTTP/1.1\r\n\r\n")).isEqualTo(1);
+    }
+
+    @Test
+    void testCloseStopsTheSelectorAndClosesConnections() throws Exception {
+
+        NioDialServer server = NioDialServer.builder()
+                .httpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .build().start();
+
+        try (SocketChannel client = SocketChannel.open(server.getHttpAddress())) {
+
+            long deadline = System.currentTimeMillis() + 2000;
+
+            while (server.getConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            server.close();
+
+            assertThat(Thread.getAllStackTraces().keySet())
+                    .noneMatch(thread -> thread.getName().startsWith("jdial-server-selector"));
+            assertThat(client.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void testStalledWriteIsClosedAfterIdleTimeout() throws Exception {
+
+        try (NioDialServer server = NioDialServer.builder()
+                .httpAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .idleTimeoutMs(200)
+                .build().start();
+             SocketChannel client = SocketChannel.open()) {
+
+            client.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+            client.connect(server.getHttpAddress());
+            client.configureBlocking(false);
+
+            // The client never reads, so the responses fill the socket buffers until a write stalls
+            ByteBuffer request = StandardCharsets.US_ASCII.encode("GET /dd.xml HTTP/1.1\r\n\r\n");
+            long deadline = System.currentTimeMillis() + 2000;
+
+            while (System.currentTimeMillis() < deadline) {
+
+                if (client.write(request.duplicate()) == 0) {
+                    break;
+                }
+            }
+
+            deadline = System.currentTimeMillis() + 5000;
+
+            while (server.getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+
+            assertThat(server.getConnectionCount()).isZero();
+        }
+    }
+
+    /*
+     * Reads one response with a Content-Length header byte by byte, so pipelined responses stay in the socket.
+     */
+    private static String readResponse(SocketChannel client) throws IOException {
+
+        StringBuilder response = new StringBuilder();
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        int contentLength = -1;
+
+        while (contentLength == -1 || contentLength > 0) {
+
+            buffer.clear();
+
+            if (client.read(buffer) == -1) {
+                break;
+            }
+
+            response.append((char) buffer.get(0));
+
+            if (contentLength == -1 && response.toString().endsWith("\r\n\r\n")) {
+
+                String head = response.toString();
+                int start = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+                contentLength = Integer.parseInt(head.substring(start, head.indexOf("\r\n", start)));
+
+            } else if (contentLength > 0) {
+
+                contentLength--;
+            }
+        }
+
+        return response.toString();
+    }
+
+    private static final class TestApplication implements ApplicationHandler {
+
+        private final AtomicReference<State> state = new AtomicReference<>(State.STOPPED);
+        private final AtomicReference<String> clientFriendlyName = new AtomicReference<>();
+        private final boolean hideable;
+
+        private TestApplication() {
+            this(false);
+        }
+
+        private TestApplication(boolean hideable) {
+            this.hideable = hideable;
+        }
+
+        @Override
+        public State getState() {
+            return state.get();
+        }
+
+        @Override
+        public boolean launch(String payload, String clientFriendlyName) {
+
+            this.clientFriendlyName.set(clientFriendlyName);
+            return state.getAndSet(State.RUNNING) != State.RUNNING;
+        }
+
+        @Override
+        public boolean stop() {
+            return state.getAndSet(State.STOPPED) != State.STOPPED;
+        }
+
+        @Override
+        public boolean hide() {
+            return state.compareAndSet(State.RUNNING, State.HIDDEN);
+        }
+
+        @Override
+        public boolean supportsHide() {
+            return hideable;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.simulator;
+
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Simulates many DIAL servers on the loopback interface.
+ *
+ * Every device has its own http port and unique service name. A single unicast SSDP socket answers
+ * M-SEARCH requests on behalf of all devices. Point a ProtocolFactoryImpl at it with
+ * {@code setMSearchAddress(simulator.getSearchAddress().getHostString())} and
+ * {@code setMSearchPort(simulator.getSearchAddress().getPort())}.
+ *
+ * @author Simon Weis
+ */
+public class DialSimulator implements AutoCloseable {
+
+    private static final String HTTP_SERVER_NO_DELAY = "sun.net.httpserver.nodelay";
+
+    private final int deviceCount;
+    private final int searchPort;
+    private final SimulationProfile profile;
+    private final Set<String> applicationNames;
+
+    private final List<SimulatedDevice> devices = new ArrayList<>();
+    private ExecutorService httpExecutor;
+    private ScheduledExecutorService ssdpScheduler;
+    private SsdpResponder ssdpResponder;
+
+    private DialSimulator(Builder builder) {
+
+        this.deviceCount = builder.deviceCount;
+        this.searchPort = builder.searchPort;
+        this.profile = builder.profile;
+        this.applicationNames = Collections.unmodifiableSet(new LinkedHashSet<>(builder.applicationNames));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts the http servers of all devices and the SSDP responder.
+     *
+     * @return This simulator
+     * @throws IOException If a socket can't be opened
+     */
+    public DialSimulator start() throws IOException {
+
+        // Otherwise the response body waits for the delayed ack of the client
+        if (System.getProperty(HTTP_SERVER_NO_DELAY) == null) {
+            System.setProperty(HTTP_SERVER_NO_DELAY, "true");
+        }
+
+        httpExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("jdial-simulator-http"));
+        ssdpScheduler = Executors.newScheduledThreadPool(2, new DaemonThreadFactory("jdial-simulator-ssdp"));
+
+        try {
+
+            for (int i = 0; i < deviceCount; i++) {
+
+                SimulatedDevice device = new SimulatedDevice(i, profile, applicationNames);
+                device.start(httpExecutor);
+                devices.add(device);
+            }
+
+            ssdpResponder = new SsdpResponder(new InetSocketAddress(InetAddress.getLoopbackAddress(), searchPort),
+                    devices, profile, ssdpScheduler);
+
+        } catch (IOException | RuntimeException e) {
+
+            close();
+            throw e;
+        }
+
+        Thread responderThread = new DaemonThreadFactory("jdial-simulator-ssdp-receiver").newThread(ssdpResponder);
+        responderThread.start();
+
+        return this;
+    }
+
+    /**
+     * @return The address to send M-SEARCH requests to
+     */
+    public InetSocketAddress getSearchAddress() {
+        return ssdpResponder.getAddress();
+    }
+
+    public List<SimulatedDevice> getDevices() {
+        return Collections.unmodifiableList(devices);
+    }
+
+    public SimulationProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The number of M-SEARCH requests that were answered
+     */
+    public long getSearchCount() {
+        return ssdpResponder == null ? 0 : ssdpResponder.getSearchCount();
+    }
+
+    /**
+     * @return The number of http requests over all devices
+     */
+    public long getRequestCount() {
+
+        long requestCount = 0;
+
+        for (SimulatedDevice device : devices) {
+            requestCount += device.getRequestCount();
+        }
+
+        return requestCount;
+    }
+
+    @Override
+    public void close() {
+
+        if (ssdpResponder != null) {
+            ssdpResponder.close();
+        }
+
+        for (SimulatedDevice device : devices) {
+            device.stop();
+        }
+
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+        }
+
+        if (ssdpScheduler != null) {
+            ssdpScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs a simulation until the process is stopped.
+     * Arguments: [device count] [ssdp port] [latency ms] [jitter ms] [loss rate] [failure rate]
+     *
+     * @param args The command line arguments
+     * @throws Exception If the simulation can't be started
+     */
+    public static void main(String[] args) throws Exception {
+
+        Builder builder = builder();
+
+        if (args.length > 0) {
+            builder.deviceCount(Integer.parseInt(args[0]));
+        }
+
+        if (args.length > 1) {
+            builder.searchPort(Integer.parseInt(args[1]));
+        }
+
+        SimulationProfile.Builder profile = SimulationProfile.builder();
+
+        if (args.length > 2) {
+            profile.latencyMs(Integer.parseInt(args[2]));
+        }
+
+        if (args.length > 3) {
+            profile.jitterMs(Integer.parseInt(args[3]));
+        }
+
+        if (args.length > 4) {
+            profile.lossRate(Double.parseDouble(args[4]));
+        }
+
+        if (args.length > 5) {
+            profile.failureRate(Double.parseDouble(args[5]));
+        }
+
+        try (DialSimulator simulator = builder.profile(profile.build()).build().start()) {
+
+            System.out.println("Simulating " + simulator.getDevices().size() + " devices, M-SEARCH address "
+                    + simulator.getSearchAddress());
+
+            new CountDownLatch(1).await();
+        }
+    }
+
+    public static final class Builder {
+
+        private int deviceCount = 1;
+        private int searchPort;
+        private SimulationProfile profile = SimulationProfile.IDEAL;
+        private final Set<String> applicationNames = new LinkedHashSet<>(
+                Arrays.asList(Application.YOUTUBE, Application.NETFLIX));
+
+        private Builder() {
+        }
+
+        public Builder deviceCount(int deviceCount) {
+
+            if (deviceCount < 1) {
+                throw new IllegalArgumentException("At least one device is required");
+            }
+
+            this.deviceCount = deviceCount;
+            return this;
+        }
+
+        /**
+         * @param searchPort The port of the SSDP socket, 0 for an ephemeral port
+         * @return This builder
+         */
+        public Builder searchPort(int searchPort) {
+            this.searchPort = searchPort;
+            return this;
+        }
+
+        public Builder profile(SimulationProfile profile) {
+            this.profile = profile;
+            return this;
+        }
+
+        /**
+         * @param applicationNames The applications every device supports, replaces the default YouTube and Netflix
+         * @return This builder
+         */
+        public Builder applications(String... applicationNames) {
+
+            this.applicationNames.clear();
+            this.applicationNames.addAll(Arrays.asList(applicationNames));
+            return this;
+        }
+
+        public DialSimulator build() {
+            return new DialSimulator(this);
+        }
+    }
+}
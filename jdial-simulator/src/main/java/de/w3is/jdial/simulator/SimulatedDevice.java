@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.simulator;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.w3is.jdial.model.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single simulated DIAL server with its own http port.
+ *
+ * It serves the UPnP device descriptor at /dd.xml and the application resource at /apps.
+ *
+ * @author Simon Weis
+ */
+public class SimulatedDevice {
+
+    private static final Logger LOGGER = Logger.getLogger(SimulatedDevice.class.getName());
+
+    static final String DEVICE_DESCRIPTOR_PATH = "dd.xml";
+    static final String APPLICATION_PATH = "apps";
+    private static final String RUN_PATH = "run";
+    private static final String HIDE_PATH = "hide";
+
+    private final int index;
+    private final String uniqueServiceName;
+    private final String friendlyName;
+    private final String serverDescription;
+    private final SimulationProfile profile;
+    private final Map<String, ApplicationInstance> applications = new ConcurrentHashMap<>();
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private HttpServer httpServer;
+
+    SimulatedDevice(int index, SimulationProfile profile, Collection<String> applicationNames) {
+
+        this.index = index;
+        this.uniqueServiceName = String.format("uuid:00000000-0000-4000-8000-%012d", index);
+        this.friendlyName = "Simulated TV " + index;
+        this.serverDescription = "Linux/5.10 UPnP/1.0 jdial-simulator/1.0";
+        this.profile = profile;
+
+        for (String applicationName : applicationNames) {
+            applications.put(applicationName, new ApplicationInstance());
+        }
+    }
+
+    void start(Executor executor) throws IOException {
+
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/", this::handle);
+        httpServer.start();
+    }
+
+    void stop() {
+
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getUniqueServiceName() {
+        return uniqueServiceName;
+    }
+
+    public String getFriendlyName() {
+        return friendlyName;
+    }
+
+    public String getServerDescription() {
+        return serverDescription;
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public String getDeviceDescriptorUrl() {
+        return getBaseUrl() + "/" + DEVICE_DESCRIPTOR_PATH;
+    }
+
+    public String getApplicationResourceUrl() {
+        return getBaseUrl() + "/" + APPLICATION_PATH;
+    }
+
+    /**
+     * @return The number of http requests this device received
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @param applicationName The name of the application
+     * @return The state the device reports for the application or null if the application isn't supported
+     */
+    public State getApplicationState(String applicationName) {
+
+        ApplicationInstance application = applications.get(applicationName);
+        return application == null ? null : application.getState(profile);
+    }
+
+    private String getBaseUrl() {
+        return "http://" + httpServer.getAddress().getAddress().getHostAddress() + ":" + getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+
+        requestCount.incrementAndGet();
+
+        try (InputStream requestBody = exchange.getRequestBody()) {
+
+            requestBody.readAllBytes();
+
+            if (profile.nextIsLost()) {
+                return;
+            }
+
+            sleep(profile.nextDelayMs());
+
+            if (profile.nextIsFailure()) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            route(exchange, pathSegments(exchange.getRequestURI().getPath()));
+
+        } catch (RuntimeException e) {
+
+            LOGGER.log(Level.WARNING, "Exception while handling request", e);
+            exchange.sendResponseHeaders(500, -1);
+
+        } finally {
+
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, List<String> path) throws IOException {
+
+        String method = exchange.getRequestMethod();
+
+        if (path.size() == 1 && path.get(0).equals(DEVICE_DESCRIPTOR_PATH) && method.equals("GET")) {
+
+            exchange.getResponseHeaders().set("Application-URL", getApplicationResourceUrl());
+            sendXml(exchange, deviceDescriptor());
+            return;
+        }
+
+        if (path.size() < 2 || !path.get(0).equals(APPLICATION_PATH)) {
+
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        String applicationName = path.get(1);
+        ApplicationInstance application = applications.get(applicationName);
+
+        if (application == null) {
+
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        if (path.size() == 2 && method.equals("GET")) {
+
+            sendXml(exchange, applicationStatus(applicationName, application.getState(profile)));
+
+        } else if (path.size() == 2 && method.equals("POST")) {
+
+            boolean wasRunning = application.launch();
+            exchange.getResponseHeaders().set("LOCATION", getApplicationResourceUrl() + "/" + applicationName + "/" + RUN_PATH);
+            exchange.sendResponseHeaders(wasRunning ? 200 : 201, -1);
+
+        } else if (path.size() == 3 && path.get(2).equals(RUN_PATH) && method.equals("DELETE")) {
+
+            exchange.sendResponseHeaders(application.stop() ? 200 : 404, -1);
+
+        } else if (path.size() == 4 && path.get(2).equals(RUN_PATH) && path.get(3).equals(HIDE_PATH) && method.equals("POST")) {
+
+            exchange.sendResponseHeaders(application.hide() ? 200 : 404, -1);
+
+        } else {
+
+            exchange.sendResponseHeaders(405, -1);
+        }
+    }
+
+    private String deviceDescriptor() {
+
+        return "<?xml version=\"1.0\"?>\n" +
+                "<root xmlns=\"urn:schemas-upnp-org:device-1-0\">\n" +
+                "  <specVersion><major>1</major><minor>0</minor></specVersion>\n" +
+                "  <device>\n" +
+                "    <deviceType>urn:dial-multiscreen-org:device:dial:1</deviceType>\n" +
+                "    <friendlyName>" + friendlyName + "</friendlyName>\n" +
+                "    <manufacturer>jdial</manufacturer>\n" +
+                "    <modelName>Simulator</modelName>\n" +
+                "    <UDN>" + uniqueServiceName + "</UDN>\n" +
+                "  </device>\n" +
+                "</root>\n";
+    }
+
+    private static String applicationStatus(String applicationName, State state) {
+
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<service xmlns=\"urn:dial-multiscreen-org:schemas:dial\" dialVer=\"2.1\">\n" +
+                "  <name>" + applicationName + "</name>\n" +
+                "  <options allowStop=\"true\"/>\n" +
+                "  <state>" + state.name().toLowerCase() + "</state>\n" +
+                "  <link rel=\"run\" href=\"" + RUN_PATH + "\"/>\n" +
+                "</service>\n";
+    }
+
+    private static void sendXml(HttpExchange exchange, String xml) throws IOException {
+
+        byte[] body = xml.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=\"utf-8\"");
+        exchange.sendResponseHeaders(200, body.length);
+
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private static List<String> pathSegments(String path) {
+
+        List<String> segments = new ArrayList<>();
+
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+
+        return segments;
+    }
+
+    private static void sleep(long delayMs) {
+
+        if (delayMs <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ApplicationInstance {
+
+        private State state = State.STOPPED;
+        private long launchedAtMs;
+
+        synchronized State getState(SimulationProfile profile) {
+
+            if (state == State.RUNNING && System.currentTimeMillis() - launchedAtMs < profile.getLaunchDelayMs()) {
+                return State.STOPPED;
+            }
+
+            return state;
+        }
+
+        synchronized boolean launch() {
+
+            boolean wasRunning = state == State.RUNNING;
+
+            if (!wasRunning) {
+                launchedAtMs = System.currentTimeMillis();
+            }
+
+            state = State.RUNNING;
+            return wasRunning;
+        }
+
+        synchronized boolean stop() {
+
+            if (state == State.STOPPED) {
+                return false;
+            }
+
+            state = State.STOPPED;
+            return true;
+        }
+
+        synchronized boolean hide() {
+
+            if (state == State.STOPPED) {
+                return false;
+            }
+
+            state = State.HIDDEN;
+            return true;
+        }
+    }
+}
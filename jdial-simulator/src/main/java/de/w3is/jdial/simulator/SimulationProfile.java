@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.simulator;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Describes how simulated devices behave on the network.
+ * Instances are immutable and can be shared by all devices of a simulation.
+ *
+ * @author Simon Weis
+ */
+public final class SimulationProfile {
+
+    public static final SimulationProfile IDEAL = builder().build();
+
+    private final int latencyMs;
+    private final int jitterMs;
+    private final double lossRate;
+    private final double failureRate;
+    private final int launchDelayMs;
+
+    private SimulationProfile(Builder builder) {
+
+        this.latencyMs = builder.latencyMs;
+        this.jitterMs = builder.jitterMs;
+        this.lossRate = builder.lossRate;
+        this.failureRate = builder.failureRate;
+        this.launchDelayMs = builder.launchDelayMs;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getLatencyMs() {
+        return latencyMs;
+    }
+
+    public int getJitterMs() {
+        return jitterMs;
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    public int getLaunchDelayMs() {
+        return launchDelayMs;
+    }
+
+    /**
+     * @return The latency plus a uniformly distributed jitter
+     */
+    long nextDelayMs() {
+
+        return latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextInt(jitterMs + 1) : 0);
+    }
+
+    boolean nextIsLost() {
+
+        return lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate;
+    }
+
+    boolean nextIsFailure() {
+
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+
+    public static final class Builder {
+
+        private int latencyMs;
+        private int jitterMs;
+        private double lossRate;
+        private double failureRate;
+        private int launchDelayMs;
+
+        private Builder() {
+        }
+
+        /**
+         * @param latencyMs The fixed delay before every response
+         * @return This builder
+         */
+        public Builder latencyMs(int latencyMs) {
+            this.latencyMs = requireNonNegative(latencyMs, "latency");
+            return this;
+        }
+
+        /**
+         * @param jitterMs The maximum of the random delay that is added to the latency
+         * @return This builder
+         */
+        public Builder jitterMs(int jitterMs) {
+            this.jitterMs = requireNonNegative(jitterMs, "jitter");
+            return this;
+        }
+
+        /**
+         * @param lossRate The probability that a M-SEARCH response isn't sent
+         *                 or an http connection is closed without response
+         * @return This builder
+         */
+        public Builder lossRate(double lossRate) {
+            this.lossRate = requireProbability(lossRate, "loss rate");
+            return this;
+        }
+
+        /**
+         * @param failureRate The probability that an http request is answered with 503
+         * @return This builder
+         */
+        public Builder failureRate(double failureRate) {
+            this.failureRate = requireProbability(failureRate, "failure rate");
+            return this;
+        }
+
+        /**
+         * @param launchDelayMs The time a launched application reports stopped before it is running
+         * @return This builder
+         */
+        public Builder launchDelayMs(int launchDelayMs) {
+            this.launchDelayMs = requireNonNegative(launchDelayMs, "launch delay");
+            return this;
+        }
+
+        public SimulationProfile build() {
+            return new SimulationProfile(this);
+        }
+
+        private static int requireNonNegative(int value, String name) {
+
+            if (value < 0) {
+                throw new IllegalArgumentException("The " + name + " must not be negative");
+            }
+
+            return value;
+        }
+
+        private static double requireProbability(double value, String name) {
+
+            if (value < 0 || value > 1) {
+                throw new IllegalArgumentException("The " + name + " must be between 0 and 1");
+            }
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.simulator;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Answers M-SEARCH requests on a unicast socket with one response per simulated device.
+ *
+ * @author Simon Weis
+ */
+class SsdpResponder implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(SsdpResponder.class.getName());
+
+    static final String DIAL_SEARCH_TARGET = "urn:dial-multiscreen-org:service:dial:1";
+    private static final String ALL_SEARCH_TARGET = "ssdp:all";
+
+    private final DatagramSocket socket;
+    private final SimulationProfile profile;
+    private final ScheduledExecutorService scheduler;
+    private final List<byte[]> responses = new ArrayList<>();
+    private final AtomicLong searchCount = new AtomicLong();
+
+    SsdpResponder(InetSocketAddress bindAddress, List<SimulatedDevice> devices, SimulationProfile profile,
+                  ScheduledExecutorService scheduler) throws SocketException {
+
+        this.socket = new DatagramSocket(bindAddress);
+        this.profile = profile;
+        this.scheduler = scheduler;
+
+        for (SimulatedDevice device : devices) {
+            responses.add(toResponse(device));
+        }
+    }
+
+    InetSocketAddress getAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    long getSearchCount() {
+        return searchCount.get();
+    }
+
+    void close() {
+        socket.close();
+    }
+
+    @Override
+    public void run() {
+
+        byte[] buffer = new byte[2048];
+
+        while (!socket.isClosed()) {
+
+            DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+
+            try {
+
+                socket.receive(request);
+
+            } catch (IOException e) {
+
+                if (!socket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Exception while receiving M-SEARCH", e);
+                }
+                continue;
+            }
+
+            String message = new String(request.getData(), 0, request.getLength(), StandardCharsets.UTF_8);
+
+            if (message.startsWith("M-SEARCH") &&
+                    (message.contains(DIAL_SEARCH_TARGET) || message.contains(ALL_SEARCH_TARGET))) {
+
+                searchCount.incrementAndGet();
+                respond(request.getSocketAddress());
+            }
+        }
+    }
+
+    private void respond(SocketAddress searcher) {
+
+        for (byte[] response : responses) {
+
+            if (profile.nextIsLost()) {
+                continue;
+            }
+
+            scheduler.schedule(() -> send(response, searcher), profile.nextDelayMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(byte[] response, SocketAddress searcher) {
+
+        try {
+
+            socket.send(new DatagramPacket(response, response.length, searcher));
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Exception while sending M-SEARCH response", e);
+        }
+    }
+
+    private static byte[] toResponse(SimulatedDevice device) {
+
+        String response = "HTTP/1.1 200 OK\r\n" +
+                "CACHE-CONTROL: max-age=1800\r\n" +
+                "EXT:\r\n" +
+                "LOCATION: " + device.getDeviceDescriptorUrl() + "\r\n" +
+                "SERVER: " + device.getServerDescription() + "\r\n" +
+                "ST: " + DIAL_SEARCH_TARGET + "\r\n" +
+                "USN: " + device.getUniqueServiceName() + "::" + DIAL_SEARCH_TARGET + "\r\n" +
+                "WAKEUP: MAC=02:00:00:" + String.format("%02x:%02x:%02x", (device.getIndex() >> 16) & 0xff,
+                (device.getIndex() >> 8) & 0xff, device.getIndex() & 0xff) + ";Timeout=10\r\n" +
+                "\r\n";
+
+        return response.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package de.w3is.jdial.simulator;
+
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DialClientConnection;
+import de.w3is.jdial.Discovery;
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.State;
+import de.w3is.jdial.protocol.ProtocolConfiguration;
+import de.w3is.jdial.protocol.ProtocolFactoryImpl;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DialSimulatorTest {
+
+    @Test
+    void testDiscoveryFindsAllDevices() throws Exception {
+
+        try (DialSimulator simulator = DialSimulator.builder().deviceCount(50)
+                .profile(SimulationProfile.builder().jitterMs(200).build())
+                .build().start()) {
+
+            List<DialServer> dialServers = new Discovery(protocolFactoryFor(simulator)).discover();
+
+            assertThat(dialServers).hasSize(50);
+            assertThat(dialServers.stream().map(DialServer::getApplicationResourceUrl).map(URL::getPort).distinct().count())
+                    .isEqualTo(50);
+            assertThat(dialServers.stream().map(DialServer::getFriendlyName).collect(Collectors.toList()))
+                    .allMatch(name -> name.startsWith("Simulated TV "));
+        }
+    }
+
+    @Test
+    void testApplicationLifecycle() throws Exception {
+
+        try (DialSimulator simulator = DialSimulator.builder()
+                .profile(SimulationProfile.builder().launchDelayMs(300).build())
+                .build().start()) {
+
+            SimulatedDevice device = simulator.getDevices().get(0);
+
+            DialServer dialServer = new DialServer();
+            dialServer.setUniqueServiceName(device.getUniqueServiceName());
+            dialServer.setApplicationResourceUrl(new URL(device.getApplicationResourceUrl()));
+
+            DialClientConnection connection = new DialClient(protocolFactoryFor(simulator)).connectTo(dialServer);
+
+            assertThat(connection.supportsApplication(Application.YOUTUBE)).isTrue();
+            assertThat(connection.supportsApplication("Unknown")).isFalse();
+
+            Application youtube = connection.launchApplication(Application.YOUTUBE, 5000).get(5, TimeUnit.SECONDS);
+
+            assertThat(youtube.getState()).isEqualTo(State.RUNNING);
+            assertThat(device.getApplicationState(Application.YOUTUBE)).isEqualTo(State.RUNNING);
+
+            connection.hideApplication(youtube);
+            assertThat(device.getApplicationState(Application.YOUTUBE)).isEqualTo(State.HIDDEN);
+
+            connection.stopApplication(youtube.getInstanceUrl());
+            assertThat(device.getApplicationState(Application.YOUTUBE)).isEqualTo(State.STOPPED);
+        }
+    }
+
+    private static ProtocolFactoryImpl protocolFactoryFor(DialSimulator simulator) {
+
+        return new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .mSearchAddress(simulator.getSearchAddress().getHostString())
+                .mSearchPort(simulator.getSearchAddress().getPort())
+                .build());
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds out which applications a dial server supports.
+ *
+ * DIAL has no request to list the installed applications, so the inventory probes every name of a catalog.
+ * The probes for one server run in parallel, limited to a maximum number of concurrent requests.
+ * Results are cached per unique service name and per server description, which contains the
+ * firmware version, so devices of the same model and firmware are probed only once.
+ * Extending the catalog clears the cache. Only a 404 marks an application as not supported. A probe that fails
+ * with a network error, another error status or an invalid response is not cached.
+ *
+ * @author Simon Weis
+ */
+public class ApplicationInventory {
+
+    /**
+     * The applications probed unless the catalog is changed.
+     */
+    public static final List<String> DEFAULT_CATALOG = Collections.unmodifiableList(Arrays.asList(
+            Application.NETFLIX, Application.YOUTUBE, Application.AMAZON_INSTANT_VIDEO));
+
+    private final DialClient dialClient;
+    private final int maxConcurrentProbes;
+    private final Set<String> catalog = new CopyOnWriteArraySet<>(DEFAULT_CATALOG);
+    private final ConcurrentMap<String, CompletableFuture<Set<String>>> devices = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Set<String>>> models = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an inventory with up to four probe requests in flight per server.
+     *
+     * @param dialClient The client used to connect to the servers
+     */
+    public ApplicationInventory(DialClient dialClient) {
+        this(dialClient, 4);
+    }
+
+    /**
+     * @param dialClient The client used to connect to the servers
+     * @param maxConcurrentProbes The maximum number of probe requests in flight per server
+     */
+    public ApplicationInventory(DialClient dialClient, int maxConcurrentProbes) {
+
+        if (maxConcurrentProbes < 1) {
+            throw new IllegalArgumentException("At least one concurrent probe is required");
+        }
+
+        this.dialClient = dialClient;
+        this.maxConcurrentProbes = maxConcurrentProbes;
+    }
+
+    /**
+     * Adds application names to the catalog, for example from the DIAL registry.
+     *
+     * @param applicationNames The names to probe in addition
+     */
+    public void addApplications(Collection<String> applicationNames) {
+
+        if (catalog.addAll(applicationNames)) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * @return The application names that are probed
+     */
+    public Set<String> getCatalog() {
+        return Collections.unmodifiableSet(catalog);
+    }
+
+    /**
+     * Returns the supported applications of a server, probing it if no cached result is available.
+     *
+     * @param dialServer The server
+     * @return A future of the supported application names in catalog order.
+     * It completes exceptionally with an IOException if a probe request failed or was answered with
+     * an error other than 404.
+     */
+    public CompletableFuture<Set<String>> getSupportedApplications(DialServer dialServer) {
+
+        String deviceKey = dialServer.getUniqueServiceName() != null
+                ? dialServer.getUniqueServiceName()
+                : String.valueOf(dialServer.getApplicationResourceUrl());
+
+        CompletableFuture<Set<String>> inventory = devices.get(deviceKey);
+
+        if (inventory != null) {
+            return inventory;
+        }
+
+        String modelKey = dialServer.getServerDescription();
+
+        CompletableFuture<Set<String>> probe = modelKey != null
+                ? models.computeIfAbsent(modelKey, key -> probe(dialServer))
+                : probe(dialServer);
+
+        inventory = devices.putIfAbsent(deviceKey, probe);
+
+        if (inventory != null) {
+            return inventory;
+        }
+
+        probe.whenComplete((supported, e) -> {
+
+            if (e != null) {
+
+                devices.remove(deviceKey, probe);
+
+                if (modelKey != null) {
+                    models.remove(modelKey, probe);
+                }
+            }
+        });
+
+        return probe;
+    }
+
+    /**
+     * Drops the cached result of a server and its model.
+     *
+     * @param dialServer The server to probe again on the next request
+     */
+    public void invalidate(DialServer dialServer) {
+
+        if (dialServer.getUniqueServiceName() != null) {
+            devices.remove(dialServer.getUniqueServiceName());
+        }
+
+        devices.remove(String.valueOf(dialServer.getApplicationResourceUrl()));
+
+        if (dialServer.getServerDescription() != null) {
+            models.remove(dialServer.getServerDescription());
+        }
+    }
+
+    /**
+     * Forgets the probed applications of all servers and models.
+     */
+    public void invalidateAll() {
+
+        devices.clear();
+        models.clear();
+    }
+
+    /**
+     * Reads application names, one per line. Empty lines and lines starting with # are ignored.
+     * The reader is read to its end but not closed.
+     *
+     * @param reader The source of the names
+     * @return The names in the order of the source
+     * @throws IOException If the source can't be read
+     */
+    public static List<String> readCatalog(Reader reader) throws IOException {
+
+        List<String> applicationNames = new ArrayList<>();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+
+        while ((line = bufferedReader.readLine()) != null) {
+
+            line = line.trim();
+
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                applicationNames.add(line);
+            }
+        }
+
+        return applicationNames;
+    }
+
+    private CompletableFuture<Set<String>> probe(DialServer dialServer) {
+
+        DialClientConnection connection = dialClient.connectTo(dialServer);
+        List<String> applicationNames = new ArrayList<>(catalog);
+        ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>(applicationNames);
+        Set<String> supported = ConcurrentHashMap.newKeySet();
+
+        int workers = Math.min(maxConcurrentProbes, applicationNames.size());
+        AtomicInteger runningWorkers = new AtomicInteger(workers);
+        CompletableFuture<Set<String>> result = new CompletableFuture<>();
+
+        if (workers == 0) {
+
+            result.complete(Collections.emptySet());
+            return result;
+        }
+
+        Runnable worker = () -> {
+
+            try {
+
+                String applicationName;
+
+                while (!result.isDone() && (applicationName = pending.poll()) != null) {
+
+                    if (connection.fetchApplication(applicationName) != null) {
+                        supported.add(applicationName);
+                    }
+                }
+
+            } catch (IOException | RuntimeException e) {
+
+                result.completeExceptionally(e);
+            }
+
+            if (runningWorkers.decrementAndGet() == 0) {
+                result.complete(inCatalogOrder(applicationNames, supported));
+            }
+        };
+
+        for (int i = 0; i < workers; i++) {
+            ExecutorHolder.EXECUTOR.execute(worker);
+        }
+
+        return result;
+    }
+
+    private static Set<String> inCatalogOrder(List<String> applicationNames, Set<String> supported) {
+
+        Set<String> ordered = new LinkedHashSet<>();
+
+        for (String applicationName : applicationNames) {
+
+            if (supported.contains(applicationName)) {
+                ordered.add(applicationName);
+            }
+        }
+
+        return Collections.unmodifiableSet(ordered);
+    }
+
+    private static final class ExecutorHolder {
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("jdial-inventory"));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.State;
+import de.w3is.jdial.protocol.ApplicationResource;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Polls the state of applications until they are running.
+ *
+ * All callers waiting for the same application share one poll, so the server
+ * receives a single status request per poll interval regardless of the number of waiters.
+ * The interval starts small and grows exponentially up to a fixed cap.
+ *
+ * @author Simon Weis
+ */
+class ApplicationStateWatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ApplicationStateWatcher.class.getName());
+
+    static final long INITIAL_POLL_DELAY_MS = 100;
+    static final long MAX_POLL_DELAY_MS = 2000;
+    private static final int POLL_DELAY_FACTOR = 2;
+
+    private final ApplicationResource applicationResource;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, Poll> polls = new HashMap<>();
+
+    ApplicationStateWatcher(ApplicationResource applicationResource) {
+        this(applicationResource, SchedulerHolder.SCHEDULER);
+    }
+
+    ApplicationStateWatcher(ApplicationResource applicationResource, ScheduledExecutorService scheduler) {
+
+        this.applicationResource = applicationResource;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns a future that completes when the application reports the running state.
+     *
+     * @param applicationName The name of the application
+     * @param timeoutMs The time to wait before the future completes with a TimeoutException
+     * @return A future of the running application
+     */
+    CompletableFuture<Application> awaitRunning(String applicationName, long timeoutMs) {
+
+        CompletableFuture<Application> future = new CompletableFuture<>();
+
+        synchronized (polls) {
+
+            Poll poll = polls.get(applicationName);
+
+            if (poll == null) {
+
+                poll = new Poll(applicationName);
+                polls.put(applicationName, poll);
+                scheduler.schedule(poll, poll.delayMs, TimeUnit.MILLISECONDS);
+            }
+
+            poll.waiters.add(future);
+        }
+
+        return future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private final class Poll implements Runnable {
+
+        private final String applicationName;
+        private final List<CompletableFuture<Application>> waiters = new ArrayList<>();
+        private long delayMs = INITIAL_POLL_DELAY_MS;
+
+        private Poll(String applicationName) {
+            this.applicationName = applicationName;
+        }
+
+        @Override
+        public void run() {
+
+            Application application = fetchApplication();
+            boolean running = application != null && application.getState() == State.RUNNING;
+
+            List<CompletableFuture<Application>> finishedWaiters = Collections.emptyList();
+
+            synchronized (polls) {
+
+                waiters.removeIf(CompletableFuture::isDone);
+
+                if (running) {
+                    finishedWaiters = new ArrayList<>(waiters);
+                    waiters.clear();
+                }
+
+                if (waiters.isEmpty()) {
+
+                    polls.remove(applicationName);
+                } else {
+
+                    delayMs = Math.min(delayMs * POLL_DELAY_FACTOR, MAX_POLL_DELAY_MS);
+                    scheduler.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+
+            for (CompletableFuture<Application> waiter : finishedWaiters) {
+                waiter.complete(application);
+            }
+        }
+
+        private Application fetchApplication() {
+
+            try {
+
+                return applicationResource.getApplication(applicationName);
+            } catch (IOException | RuntimeException e) {
+
+                LOGGER.log(Level.FINE, "Exception while polling application state", e);
+                return null;
+            }
+        }
+    }
+
+    private static final class SchedulerHolder {
+
+        private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), new DaemonThreadFactory("jdial-state-poll"));
+    }
+}
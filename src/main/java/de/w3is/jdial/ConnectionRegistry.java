@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one connection per dial server, so all threads share the state of a connection.
+ *
+ * Connections are keyed by the unique service name of the server together with its application resource url,
+ * so the IPv4 and IPv6 urls of one device get separate connections. A connection is replaced when the client
+ * friendly name or the protocol configuration it was created with changed, and evicted when it wasn't requested
+ * for the idle timeout. Lookups of existing connections don't lock.
+ *
+ * @author Simon Weis
+ */
+class ConnectionRegistry {
+
+    private final ConcurrentMap<String, Entry> connections = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction = new AtomicLong(System.nanoTime());
+    private final BiFunction<URL, String, DialClientConnection> connectionFactory;
+    private final Supplier<String> clientFriendlyName;
+    private final Supplier<Object> configuration;
+    private volatile long idleTimeoutNanos;
+
+    /**
+     * @param connectionFactory Creates the connection for an application resource url and client friendly name
+     * @param clientFriendlyName The current client friendly name
+     * @param configuration The current configuration of the protocol factory, compared by identity
+     * @param idleTimeoutMs The time after which an unused connection is dropped
+     */
+    ConnectionRegistry(BiFunction<URL, String, DialClientConnection> connectionFactory,
+                       Supplier<String> clientFriendlyName, Supplier<Object> configuration, long idleTimeoutMs) {
+
+        this.connectionFactory = connectionFactory;
+        this.clientFriendlyName = clientFriendlyName;
+        this.configuration = configuration;
+        setIdleTimeoutMs(idleTimeoutMs);
+    }
+
+    DialClientConnection connectionFor(DialServer dialServer) {
+
+        URL applicationResourceUrl = dialServer.getApplicationResourceUrl();
+
+        if (applicationResourceUrl == null) {
+            throw new IllegalArgumentException("The dial server has no application resource url");
+        }
+
+        String url = applicationResourceUrl.toExternalForm();
+        String key = dialServer.getUniqueServiceName() != null ? dialServer.getUniqueServiceName() + " " + url : url;
+        String name = clientFriendlyName.get();
+        Object settings = configuration.get();
+        long now = System.nanoTime();
+
+        evictIdleConnections(now);
+
+        Entry entry = connections.get(key);
+
+        if (entry == null || !entry.isCreatedWith(name, settings)) {
+
+            entry = connections.compute(key, (ignored, existing) -> existing != null && existing.isCreatedWith(name, settings)
+                    ? existing
+                    : new Entry(name, settings, connectionFactory.apply(applicationResourceUrl, name), now));
+        }
+
+        entry.lastUsed = now;
+
+        return entry.connection;
+    }
+
+    void setIdleTimeoutMs(long idleTimeoutMs) {
+
+        if (idleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("The idle timeout must be positive");
+        }
+
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    }
+
+    int size() {
+        return connections.size();
+    }
+
+    /**
+     * Removes idle connections, at most once per half idle timeout. Only the thread that
+     * claims the next eviction run iterates the connections, all others return immediately.
+     */
+    private void evictIdleConnections(long now) {
+
+        long scheduled = nextEviction.get();
+
+        if (now - scheduled < 0 || !nextEviction.compareAndSet(scheduled, now + idleTimeoutNanos / 2)) {
+            return;
+        }
+
+        for (Map.Entry<String, Entry> mapEntry : connections.entrySet()) {
+
+            Entry entry = mapEntry.getValue();
+
+            if (now - entry.lastUsed > idleTimeoutNanos) {
+                connections.remove(mapEntry.getKey(), entry);
+            }
+        }
+    }
+
+    private static final class Entry {
+
+        private final String clientFriendlyName;
+        private final Object configuration;
+        private final DialClientConnection connection;
+        private volatile long lastUsed;
+
+        private Entry(String clientFriendlyName, Object configuration, DialClientConnection connection, long lastUsed) {
+
+            this.clientFriendlyName = clientFriendlyName;
+            this.configuration = configuration;
+            this.connection = connection;
+            this.lastUsed = lastUsed;
+        }
+
+        private boolean isCreatedWith(String clientFriendlyName, Object configuration) {
+            return this.configuration == configuration && Objects.equals(this.clientFriendlyName, clientFriendlyName);
+        }
+    }
+}
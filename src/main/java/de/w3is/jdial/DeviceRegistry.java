@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+import de.w3is.jdial.model.DiscoveryDelta;
+
+import java.net.URL;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in memory registry of dial servers, keyed by unique service name, with indexes on
+ * host, friendly name, server description and supported applications.
+ *
+ * Changes are synchronized and publish a new immutable {@link Snapshot}. Readers work on a snapshot
+ * without locks and see a consistent state of all indexes. Each change copies the top level of the
+ * indexes, so changes cost O(n) while all lookups are O(1).
+ *
+ * @author Simon Weis
+ */
+public class DeviceRegistry {
+
+    private volatile Snapshot snapshot = new Snapshot();
+
+    /**
+     * @return The current state of the registry, which never changes
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Adds a server or replaces the server with the same unique service name.
+     * The supported applications of a replaced server are kept.
+     *
+     * @param dialServer A server with a unique service name
+     */
+    public void register(DialServer dialServer) {
+        registerAll(Collections.singletonList(dialServer));
+    }
+
+    /**
+     * Adds or replaces several servers in one change.
+     *
+     * @param dialServers Servers with a unique service name
+     */
+    public synchronized void registerAll(Collection<DialServer> dialServers) {
+
+        Mutation mutation = new Mutation(snapshot);
+
+        for (DialServer dialServer : dialServers) {
+            put(mutation, dialServer);
+        }
+
+        snapshot = mutation.toSnapshot();
+    }
+
+    /**
+     * Applies the changes of a {@link DiscoverySession} sweep in one change. Added and changed
+     * servers are registered, removed servers are dropped with their applications.
+     *
+     * @param delta The changes of a sweep
+     */
+    public synchronized void apply(DiscoveryDelta delta) {
+
+        Mutation mutation = new Mutation(snapshot);
+
+        for (DialServer dialServer : delta.getRemoved()) {
+            mutation.remove(dialServer.getUniqueServiceName());
+        }
+
+        for (DialServer dialServer : delta.getAdded()) {
+            put(mutation, dialServer);
+        }
+
+        for (DialServer dialServer : delta.getChanged()) {
+            put(mutation, dialServer);
+        }
+
+        snapshot = mutation.toSnapshot();
+    }
+
+    /**
+     * Sets the applications a server supports, e.g. from an {@link ApplicationInventory}.
+     *
+     * @param uniqueServiceName The unique service name of a registered server
+     * @param applicationNames The supported application names
+     * @return False if no server with the name is registered
+     */
+    public synchronized boolean setSupportedApplications(String uniqueServiceName, Set<String> applicationNames) {
+
+        Mutation mutation = new Mutation(snapshot);
+        Entry existing = mutation.remove(uniqueServiceName);
+
+        if (existing == null) {
+            return false;
+        }
+
+        mutation.add(new Entry(existing.dialServer, Collections.unmodifiableSet(new HashSet<>(applicationNames))));
+        snapshot = mutation.toSnapshot();
+
+        return true;
+    }
+
+    /**
+     * @param uniqueServiceName The unique service name of the server to remove
+     * @return False if no server with the name was registered
+     */
+    public synchronized boolean remove(String uniqueServiceName) {
+
+        Mutation mutation = new Mutation(snapshot);
+
+        if (mutation.remove(uniqueServiceName) == null) {
+            return false;
+        }
+
+        snapshot = mutation.toSnapshot();
+
+        return true;
+    }
+
+    /**
+     * Removes all servers. Snapshots taken before keep their state.
+     */
+    public synchronized void clear() {
+        snapshot = new Snapshot();
+    }
+
+    private static void put(Mutation mutation, DialServer dialServer) {
+
+        if (dialServer.getUniqueServiceName() == null) {
+            throw new IllegalArgumentException("The dial server has no unique service name");
+        }
+
+        Entry existing = mutation.remove(dialServer.getUniqueServiceName());
+        Set<String> applications = existing == null ? Collections.emptySet() : existing.applications;
+
+        mutation.add(new Entry(dialServer.snapshot(), applications));
+    }
+
+    private static String hostOf(DialServerSnapshot dialServer) {
+
+        URL url = dialServer.getApplicationResourceUrl() != null
+                ? dialServer.getApplicationResourceUrl()
+                : dialServer.getDeviceDescriptorUrl();
+
+        return url == null ? null : url.getHost();
+    }
+
+    /**
+     * An immutable state of the registry. All returned collections are unmodifiable.
+     */
+    public static final class Snapshot {
+
+        private final Map<String, Entry> devices;
+        private final Map<String, Set<DialServerSnapshot>> byHost;
+        private final Map<String, Set<DialServerSnapshot>> byFriendlyName;
+        private final Map<String, Set<DialServerSnapshot>> byServerDescription;
+        private final Map<String, Set<DialServerSnapshot>> byApplication;
+
+        private Snapshot() {
+            this(new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        private Snapshot(Map<String, Entry> devices, Map<String, Set<DialServerSnapshot>> byHost,
+                         Map<String, Set<DialServerSnapshot>> byFriendlyName,
+                         Map<String, Set<DialServerSnapshot>> byServerDescription,
+                         Map<String, Set<DialServerSnapshot>> byApplication) {
+
+            this.devices = devices;
+            this.byHost = byHost;
+            this.byFriendlyName = byFriendlyName;
+            this.byServerDescription = byServerDescription;
+            this.byApplication = byApplication;
+        }
+
+        /**
+         * @return The number of registered servers
+         */
+        public int size() {
+            return devices.size();
+        }
+
+        /**
+         * @param uniqueServiceName The unique service name
+         * @return The server or null if it isn't registered
+         */
+        public DialServerSnapshot getDevice(String uniqueServiceName) {
+
+            Entry entry = devices.get(uniqueServiceName);
+            return entry == null ? null : entry.dialServer;
+        }
+
+        /**
+         * @return All registered servers
+         */
+        public Set<DialServerSnapshot> getDevices() {
+
+            Set<DialServerSnapshot> dialServers = new HashSet<>();
+
+            for (Entry entry : devices.values()) {
+                dialServers.add(entry.dialServer);
+            }
+
+            return Collections.unmodifiableSet(dialServers);
+        }
+
+        /**
+         * @param uniqueServiceName The unique service name
+         * @return The supported applications, empty if unknown
+         */
+        public Set<String> getSupportedApplications(String uniqueServiceName) {
+
+            Entry entry = devices.get(uniqueServiceName);
+            return entry == null ? Collections.emptySet() : entry.applications;
+        }
+
+        /**
+         * @param host The host name or address of the application resource url
+         * @return The servers on the host
+         */
+        public Set<DialServerSnapshot> findByHost(String host) {
+            return lookup(byHost, host);
+        }
+
+        /**
+         * @param friendlyName The exact friendly name of the device descriptor
+         * @return The servers with the name
+         */
+        public Set<DialServerSnapshot> findByFriendlyName(String friendlyName) {
+            return lookup(byFriendlyName, friendlyName);
+        }
+
+        /**
+         * @param serverDescription The exact SERVER header of the discovery response, which names the model and firmware
+         * @return The servers with the description
+         */
+        public Set<DialServerSnapshot> findByServerDescription(String serverDescription) {
+            return lookup(byServerDescription, serverDescription);
+        }
+
+        /**
+         * @param applicationName The name of the application
+         * @return The servers that were set to support the application
+         */
+        public Set<DialServerSnapshot> findByApplication(String applicationName) {
+            return lookup(byApplication, applicationName);
+        }
+
+        private static Set<DialServerSnapshot> lookup(Map<String, Set<DialServerSnapshot>> index, String key) {
+
+            Set<DialServerSnapshot> dialServers = index.get(key);
+            return dialServers == null ? Collections.emptySet() : Collections.unmodifiableSet(dialServers);
+        }
+    }
+
+    private static final class Entry {
+
+        private final DialServerSnapshot dialServer;
+        private final Set<String> applications;
+
+        private Entry(DialServerSnapshot dialServer, Set<String> applications) {
+
+            this.dialServer = dialServer;
+            this.applications = applications;
+        }
+    }
+
+    /*
+     * Builds the next snapshot. The maps of the previous snapshot are copied once, index sets
+     * only when they change, so the previous snapshot stays untouched.
+     */
+    private static final class Mutation {
+
+        private final Map<String, Entry> devices;
+        private final Map<String, Set<DialServerSnapshot>> byHost;
+        private final Map<String, Set<DialServerSnapshot>> byFriendlyName;
+        private final Map<String, Set<DialServerSnapshot>> byServerDescription;
+        private final Map<String, Set<DialServerSnapshot>> byApplication;
+        private final Set<Set<DialServerSnapshot>> copiedSets = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private Mutation(Snapshot snapshot) {
+
+            this.devices = new HashMap<>(snapshot.devices);
+            this.byHost = new HashMap<>(snapshot.byHost);
+            this.byFriendlyName = new HashMap<>(snapshot.byFriendlyName);
+            this.byServerDescription = new HashMap<>(snapshot.byServerDescription);
+            this.byApplication = new HashMap<>(snapshot.byApplication);
+        }
+
+        private void add(Entry entry) {
+
+            DialServerSnapshot dialServer = entry.dialServer;
+            devices.put(dialServer.getUniqueServiceName(), entry);
+
+            index(byHost, hostOf(dialServer), dialServer);
+            index(byFriendlyName, dialServer.getFriendlyName(), dialServer);
+            index(byServerDescription, dialServer.getServerDescription(), dialServer);
+
+            for (String application : entry.applications) {
+                index(byApplication, application, dialServer);
+            }
+        }
+
+        private Entry remove(String uniqueServiceName) {
+
+            Entry entry = devices.remove(uniqueServiceName);
+
+            if (entry == null) {
+                return null;
+            }
+
+            DialServerSnapshot dialServer = entry.dialServer;
+
+            unindex(byHost, hostOf(dialServer), dialServer);
+            unindex(byFriendlyName, dialServer.getFriendlyName(), dialServer);
+            unindex(byServerDescription, dialServer.getServerDescription(), dialServer);
+
+            for (String application : entry.applications) {
+                unindex(byApplication, application, dialServer);
+            }
+
+            return entry;
+        }
+
+        private void index(Map<String, Set<DialServerSnapshot>> index, String key, DialServerSnapshot dialServer) {
+
+            if (key == null) {
+                return;
+            }
+
+            Set<DialServerSnapshot> dialServers = writableSet(index.get(key));
+            dialServers.add(dialServer);
+            index.put(key, dialServers);
+        }
+
+        private void unindex(Map<String, Set<DialServerSnapshot>> index, String key, DialServerSnapshot dialServer) {
+
+            Set<DialServerSnapshot> dialServers = key == null ? null : index.get(key);
+
+            if (dialServers == null) {
+                return;
+            }
+
+            dialServers = writableSet(dialServers);
+            dialServers.remove(dialServer);
+
+            if (dialServers.isEmpty()) {
+                index.remove(key);
+            } else {
+                index.put(key, dialServers);
+            }
+        }
+
+        private Set<DialServerSnapshot> writableSet(Set<DialServerSnapshot> dialServers) {
+
+            if (dialServers != null && copiedSets.contains(dialServers)) {
+                return dialServers;
+            }
+
+            Set<DialServerSnapshot> copy = dialServers == null ? new HashSet<>() : new HashSet<>(dialServers);
+            copiedSets.add(copy);
+
+            return copy;
+        }
+
+        private Snapshot toSnapshot() {
+            return new Snapshot(devices, byHost, byFriendlyName, byServerDescription, byApplication);
+        }
+    }
+}
@@ -20,23 +20,43 @@ package de.w3is.jdial;
 import de.w3is.jdial.model.DialServer;
 import de.w3is.jdial.protocol.ProtocolFactory;
 import de.w3is.jdial.protocol.ProtocolFactoryImpl;
-import lombok.Data;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.function.Supplier;
 
 /**
  * The DialClient is the reusable factory for creating connections to a dialServer.
  *
+ * Connections are cached per server and shared by all threads using the client.
+ * A connection that wasn't requested for the connection idle timeout is dropped from the cache.
+ * Changes of the client friendly name or of the configuration of a {@link ProtocolFactoryImpl}
+ * apply to the next {@link #connectTo(DialServer)}.
+ * The client is thread safe.
+ *
  * @author Simon Weis
  */
-@Data
+@Getter
+@ToString
 public class DialClient {
 
     private final ProtocolFactory protocolFactory;
 
-    private String clientFriendlyName = "jdial";
+    private volatile String clientFriendlyName = "jdial";
+
+    private volatile long connectionIdleTimeoutMs = 600_000;
+
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final ConnectionRegistry connectionRegistry;
 
     public DialClient(ProtocolFactory protocolFactory) {
 
         this.protocolFactory = protocolFactory;
+        this.connectionRegistry = new ConnectionRegistry(
+                (url, name) -> new DialClientConnection(protocolFactory.createApplicationResource(name, url)),
+                () -> clientFriendlyName, configurationOf(protocolFactory), connectionIdleTimeoutMs);
     }
 
     public DialClient() {
@@ -44,14 +64,48 @@ public class DialClient {
     }
 
     /**
-     * Creates a connection to a dial server.
+     * Returns the connection to a dial server. All calls for the same server and application resource url
+     * return the same connection until the client settings change or it is idle for too long.
      *
      * @param dialServer The server to connect to.
-     * @return A new connection.
+     * @return The shared connection.
      */
     public DialClientConnection connectTo(DialServer dialServer) {
 
-        return new DialClientConnection(protocolFactory.createApplicationResource(clientFriendlyName,
-                dialServer.getApplicationResourceUrl()));
+        return connectionRegistry.connectionFor(dialServer);
+    }
+
+    /**
+     * Sets the name the servers show for this client. Cached connections are replaced on their next use,
+     * because they send the previous name.
+     *
+     * @param clientFriendlyName The name of this client
+     */
+    public void setClientFriendlyName(String clientFriendlyName) {
+
+        this.clientFriendlyName = clientFriendlyName;
+    }
+
+    public void setConnectionIdleTimeoutMs(long connectionIdleTimeoutMs) {
+
+        connectionRegistry.setIdleTimeoutMs(connectionIdleTimeoutMs);
+        this.connectionIdleTimeoutMs = connectionIdleTimeoutMs;
+    }
+
+    int getConnectionCount() {
+        return connectionRegistry.size();
+    }
+
+    /*
+     * Every change of a ProtocolFactoryImpl replaces its immutable configuration, so the identity
+     * of the configuration tells whether a cached connection was created with the current settings.
+     */
+    private static Supplier<Object> configurationOf(ProtocolFactory protocolFactory) {
+
+        if (protocolFactory instanceof ProtocolFactoryImpl) {
+            return ((ProtocolFactoryImpl) protocolFactory)::getConfiguration;
+        }
+
+        return () -> null;
     }
 }
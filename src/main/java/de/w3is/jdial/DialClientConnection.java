@@ -19,19 +19,24 @@ package de.w3is.jdial;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import de.w3is.jdial.model.Application;
 import de.w3is.jdial.model.DialClientException;
 import de.w3is.jdial.model.DialContent;
+import de.w3is.jdial.model.RateLimitedException;
 import de.w3is.jdial.model.State;
 import de.w3is.jdial.protocol.ApplicationResource;
 import de.w3is.jdial.protocol.model.ApplicationResourceException;
+import de.w3is.jdial.protocol.model.RateLimitExceededException;
 
 /**
  * A connection for interacting with a dial server.
  *
+ * Connections are thread safe and meant to be shared, see {@link DialClient}.
+ *
  * @author Simon Weis
  */
 public class DialClientConnection {
@@ -39,16 +44,19 @@ public class DialClientConnection {
     private static final Logger LOGGER = Logger.getLogger(DialClientConnection.class.getName());
 
     private final ApplicationResource applicationResource;
+    private final ApplicationStateWatcher applicationStateWatcher;
 
     DialClientConnection(ApplicationResource applicationResource) {
         this.applicationResource = applicationResource;
+        this.applicationStateWatcher = new ApplicationStateWatcher(applicationResource);
     }
 
     /**
      * Tests if the server supports the application.
      *
      * @param applicationName The name of the application.
-     * @return True if the server supports the application.
+     * @return True if the server supports the application, false if it doesn't or the request failed,
+     *         also when it was not sent because of the rate limit of the device
      */
     public boolean supportsApplication(String applicationName) {
 
@@ -59,7 +67,8 @@ public class DialClientConnection {
      * Returns an Application instance if the app is supported.
      *
      * @param applicationName The name of the application
-     * @return An instance of the Application
+     * @return An instance of the Application, or null if the app is not supported or the request failed,
+     *         also when it was not sent because of the rate limit of the device
      */
     public Application getApplication(String applicationName) {
 
@@ -73,12 +82,21 @@ public class DialClientConnection {
         }
     }
 
+    /*
+     * Unlike getApplication this distinguishes an unsupported application from a failed or limited request.
+     */
+    Application fetchApplication(String applicationName) throws IOException {
+
+        return applicationResource.getApplication(applicationName);
+    }
+
     /**
      * Start an application
      *
      * @param application An application instance
      * @return An url to the started instance if the server provides one
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     public URL startApplication(Application application) throws DialClientException {
 
@@ -91,6 +109,7 @@ public class DialClientConnection {
      * @param dialContent The additional data to send
      * @return An url to the started instance if the server provides one
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     public URL startApplication(Application application, DialContent dialContent) throws DialClientException {
 
@@ -103,12 +122,17 @@ public class DialClientConnection {
      * @param applicationName The name of the application
      * @return An url to the started instance if the server provides one
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     public URL startApplication(String applicationName) throws DialClientException {
 
         try {
             return applicationResource.startApplication(applicationName);
 
+        } catch (RateLimitExceededException e) {
+
+            throw new RateLimitedException(e);
+
         } catch (IOException | ApplicationResourceException e) {
 
             LOGGER.log(Level.WARNING, "Exception while starting application", e);
@@ -123,6 +147,7 @@ public class DialClientConnection {
      * @param dialContent The additional data to send
      * @return An url to the started instance if the server provides one
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     public URL startApplication(String applicationName, DialContent dialContent) throws DialClientException {
 
@@ -130,6 +155,10 @@ public class DialClientConnection {
 
             return applicationResource.startApplication(applicationName, dialContent);
 
+        } catch (RateLimitExceededException e) {
+
+            throw new RateLimitedException(e);
+
         } catch (IOException | ApplicationResourceException e) {
 
             LOGGER.log(Level.WARNING, "Exception while starting application", e);
@@ -137,11 +166,60 @@ public class DialClientConnection {
         }
     }
 
+    /**
+     * Starts an application and returns a future that completes when the application is running.
+     *
+     * @param applicationName The name of the application
+     * @param timeoutMs The time to wait for the running state
+     * @return A future of the running application that completes with a TimeoutException
+     * if the application doesn't reach the running state in time
+     * @throws DialClientException In case of an network or protocol error while starting
+     */
+    public CompletableFuture<Application> launchApplication(String applicationName, long timeoutMs) throws DialClientException {
+
+        startApplication(applicationName);
+
+        return awaitApplicationRunning(applicationName, timeoutMs);
+    }
+
+    /**
+     * Starts an application with additional data and returns a future that completes when the application is running.
+     *
+     * @param applicationName The name of the application
+     * @param dialContent The additional data to send
+     * @param timeoutMs The time to wait for the running state
+     * @return A future of the running application that completes with a TimeoutException
+     * if the application doesn't reach the running state in time
+     * @throws DialClientException In case of an network or protocol error while starting
+     */
+    public CompletableFuture<Application> launchApplication(String applicationName, DialContent dialContent,
+                                                            long timeoutMs) throws DialClientException {
+
+        startApplication(applicationName, dialContent);
+
+        return awaitApplicationRunning(applicationName, timeoutMs);
+    }
+
+    /**
+     * Returns a future that completes when the application is running.
+     * Concurrent callers waiting for the same application share the status requests to the server.
+     *
+     * @param applicationName The name of the application
+     * @param timeoutMs The time to wait for the running state
+     * @return A future of the running application that completes with a TimeoutException
+     * if the application doesn't reach the running state in time
+     */
+    public CompletableFuture<Application> awaitApplicationRunning(String applicationName, long timeoutMs) {
+
+        return applicationStateWatcher.awaitRunning(applicationName, timeoutMs);
+    }
+
     /**
      * Stop an application
      *
      * @param instanceUrl An url to the app instance
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     public void stopApplication(URL instanceUrl) throws DialClientException {
 
@@ -153,6 +231,10 @@ public class DialClientConnection {
 
             applicationResource.stopApplication(instanceUrl);
 
+        } catch (RateLimitExceededException e) {
+
+            throw new RateLimitedException(e);
+
         } catch (IOException | ApplicationResourceException e) {
 
             LOGGER.log(Level.WARNING, "Exception while stopping the application", e);
@@ -186,6 +268,7 @@ public class DialClientConnection {
      *
      * @param application An application instance
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     public void hideApplication(Application application) throws DialClientException {
 
@@ -197,10 +280,23 @@ public class DialClientConnection {
         hideApplication(application.getInstanceUrl());
     }
 
+    /**
+     * Opens a keep-alive connection to the server in the background, so the next request doesn't wait
+     * for the tcp connect. Call it for a device that is about to be used, for example when the user
+     * selected it. The request counts against the rate limit of the device.
+     *
+     * @return A future that completes when the connection is ready, or exceptionally if the request failed
+     *         or wasn't sent because of the rate limit of the device
+     */
+    public CompletableFuture<Void> preconnect() {
+        return applicationResource.preconnect();
+    }
+
     /**
      * Hide an application by url
      * @param instanceUrl The url of the app instance
      * @throws DialClientException In case of an network or protocol error
+     * @throws RateLimitedException If the request was not sent because of the rate limit of the device
      */
     private void hideApplication(URL instanceUrl) throws DialClientException {
 
@@ -212,6 +308,10 @@ public class DialClientConnection {
 
             applicationResource.hideApplication(instanceUrl);
 
+        } catch (RateLimitExceededException e) {
+
+            throw new RateLimitedException(e);
+
         } catch (IOException | ApplicationResourceException e) {
 
             LOGGER.log(Level.WARNING, "Exception while hiding the application", e);
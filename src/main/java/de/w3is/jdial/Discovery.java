@@ -71,33 +71,42 @@ public class Discovery {
             return Collections.emptyList();
         }
 
-        List<DialServer> devicesToRemove = new ArrayList<>();
+        List<DialServer> describedServers = new ArrayList<>(dialServers.size());
 
         for (DialServer device : dialServers) {
 
-            try {
+            if (describe(protocolFactory, device)) {
+                describedServers.add(device);
+            }
+        }
 
-                DeviceDescriptor descriptor
-                        = protocolFactory.createDeviceDescriptorResource().getDescriptor(device.getDeviceDescriptorUrl());
+        return describedServers;
+    }
 
-                if (descriptor != null) {
+    /**
+     * Sets the friendly name and application resource url from the device descriptor.
+     *
+     * @return False if the descriptor couldn't be read
+     */
+    static boolean describe(ProtocolFactory protocolFactory, DialServer device) {
 
-                    device.setFriendlyName(descriptor.getFriendlyName());
-                    device.setApplicationResourceUrl(descriptor.getApplicationResourceUrl());
-                } else {
+        try {
 
-                    devicesToRemove.add(device);
-                }
+            DeviceDescriptor descriptor
+                    = protocolFactory.createDeviceDescriptorResource().getDescriptor(device.getDeviceDescriptorUrl());
 
-            } catch (IOException e) {
+            if (descriptor != null) {
 
-                devicesToRemove.add(device);
-                LOGGER.log(Level.WARNING, "IOException while reading device descriptor " + device.getDeviceDescriptorUrl(), e);
+                device.setFriendlyName(descriptor.getFriendlyName());
+                device.setApplicationResourceUrl(descriptor.getApplicationResourceUrl());
+                return true;
             }
-        }
 
-        dialServers.removeAll(devicesToRemove);
+        } catch (IOException e) {
+
+            LOGGER.log(Level.WARNING, "IOException while reading device descriptor " + device.getDeviceDescriptorUrl(), e);
+        }
 
-        return dialServers;
+        return false;
     }
 }
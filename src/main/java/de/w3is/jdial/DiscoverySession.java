@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+import de.w3is.jdial.model.DiscoveryDelta;
+import de.w3is.jdial.model.UrlForms;
+import de.w3is.jdial.protocol.ProtocolFactory;
+import de.w3is.jdial.protocol.ProtocolFactoryImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A discovery that keeps the found servers between sweeps and reports only the changes.
+ *
+ * A sweep reads the device descriptor only for new unique service names and for servers whose
+ * LOCATION or SERVER header changed, so a sweep of an unchanged network costs one M-SEARCH.
+ * A server that didn't answer a number of consecutive sweeps is removed; single lost udp
+ * responses don't remove it. A failed M-SEARCH or one without any response leaves the state
+ * untouched, so a network outage doesn't remove the whole fleet.
+ *
+ * The methods are synchronized, sweeps of one session never overlap.
+ *
+ * @author Simon Weis
+ */
+public class DiscoverySession {
+
+    private static final Logger LOGGER = Logger.getLogger(DiscoverySession.class.getName());
+
+    public static final int DEFAULT_MISSED_SWEEPS_UNTIL_REMOVED = 2;
+
+    private final ProtocolFactory protocolFactory;
+    private final Map<String, Entry> devices = new HashMap<>();
+
+    private int missedSweepsUntilRemoved = DEFAULT_MISSED_SWEEPS_UNTIL_REMOVED;
+    private long descriptorFetches;
+
+    public DiscoverySession(ProtocolFactory protocolFactory) {
+
+        this.protocolFactory = protocolFactory;
+    }
+
+    public DiscoverySession() {
+        this(new ProtocolFactoryImpl(false));
+    }
+
+    /**
+     * Runs one sweep and updates the known servers.
+     *
+     * @return The servers added, changed or removed by this sweep
+     */
+    public synchronized DiscoveryDelta discover() {
+
+        List<DialServer> responses;
+
+        try {
+
+            responses = protocolFactory.createMSearch().sendAndReceive();
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.WARNING, "IOException while discovering devices:", e);
+            return DiscoveryDelta.EMPTY;
+        }
+
+        if (responses.isEmpty()) {
+
+            LOGGER.log(Level.FINE, "Sweep found no servers, keep the known ones");
+            return DiscoveryDelta.EMPTY;
+        }
+
+        Set<String> answered = new HashSet<>();
+        List<DialServer> added = new ArrayList<>();
+        List<DialServer> changed = new ArrayList<>();
+
+        for (DialServer response : responses) {
+
+            String uniqueServiceName = response.getUniqueServiceName();
+            answered.add(uniqueServiceName);
+
+            Entry known = devices.get(uniqueServiceName);
+            DialServerSnapshot current = known != null && sameAnnouncement(known.dialServer, response)
+                    ? describeAs(response, known.dialServer)
+                    : describe(response);
+
+            if (known == null) {
+
+                if (current != null) {
+                    devices.put(uniqueServiceName, new Entry(current));
+                    added.add(current.toDialServer());
+                }
+
+                continue;
+            }
+
+            known.missedSweeps = 0;
+
+            // A server with an unreadable descriptor keeps its values and is described again next sweep
+            if (current != null && !current.equals(known.dialServer)) {
+
+                known.dialServer = current;
+                changed.add(current.toDialServer());
+            }
+        }
+
+        List<DialServer> removed = new ArrayList<>();
+        Iterator<Entry> entries = devices.values().iterator();
+
+        while (entries.hasNext()) {
+
+            Entry entry = entries.next();
+
+            if (!answered.contains(entry.dialServer.getUniqueServiceName())
+                    && ++entry.missedSweeps >= missedSweepsUntilRemoved) {
+
+                entries.remove();
+                removed.add(entry.dialServer.toDialServer());
+            }
+        }
+
+        return new DiscoveryDelta(Collections.unmodifiableList(added), Collections.unmodifiableList(changed),
+                Collections.unmodifiableList(removed));
+    }
+
+    /**
+     * @return Copies of all servers known after the last sweep
+     */
+    public synchronized List<DialServer> getDevices() {
+
+        List<DialServer> dialServers = new ArrayList<>(devices.size());
+
+        for (Entry entry : devices.values()) {
+            dialServers.add(entry.dialServer.toDialServer());
+        }
+
+        return dialServers;
+    }
+
+    /**
+     * @return The number of device descriptors read by all sweeps of this session
+     */
+    public synchronized long getDescriptorFetches() {
+        return descriptorFetches;
+    }
+
+    public synchronized int getMissedSweepsUntilRemoved() {
+        return missedSweepsUntilRemoved;
+    }
+
+    /**
+     * @param missedSweepsUntilRemoved The number of consecutive sweeps a server may miss before it is removed
+     */
+    public synchronized void setMissedSweepsUntilRemoved(int missedSweepsUntilRemoved) {
+
+        if (missedSweepsUntilRemoved < 1) {
+            throw new IllegalArgumentException("A server must miss at least one sweep to be removed");
+        }
+
+        this.missedSweepsUntilRemoved = missedSweepsUntilRemoved;
+    }
+
+    /**
+     * Forgets all servers, the next sweep reports every server as added.
+     */
+    public synchronized void clear() {
+        devices.clear();
+    }
+
+    private DialServerSnapshot describe(DialServer response) {
+
+        descriptorFetches++;
+
+        return Discovery.describe(protocolFactory, response) ? response.snapshot() : null;
+    }
+
+    private static DialServerSnapshot describeAs(DialServer response, DialServerSnapshot known) {
+
+        response.setFriendlyName(known.getFriendlyName());
+        response.setApplicationResourceUrl(known.getApplicationResourceUrl());
+
+        return response.snapshot();
+    }
+
+    private static boolean sameAnnouncement(DialServerSnapshot known, DialServer response) {
+
+        return UrlForms.of(known.getDeviceDescriptorUrl()).equals(UrlForms.of(response.getDeviceDescriptorUrl()))
+                && Objects.equals(known.getServerDescription(), response.getServerDescription());
+    }
+
+    private static final class Entry {
+
+        private DialServerSnapshot dialServer;
+        private int missedSweeps;
+
+        private Entry(DialServerSnapshot dialServer) {
+            this.dialServer = dialServer;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+
+/**
+ * Receives the reachability changes of the servers watched by a {@link LivenessMonitor}.
+ *
+ * The methods are called on the monitor thread, so they should return quickly.
+ *
+ * @author Simon Weis
+ */
+public interface LivenessListener {
+
+    /**
+     * Called when a server accepts connections, after it was added or after it was down.
+     *
+     * @param dialServer The server
+     */
+    default void deviceUp(DialServer dialServer) {
+    }
+
+    /**
+     * Called when a server didn't accept connections on consecutive checks.
+     *
+     * @param dialServer The server
+     */
+    default void deviceDown(DialServer dialServer) {
+    }
+}
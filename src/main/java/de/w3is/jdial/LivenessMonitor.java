@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.protocol.DaemonThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the reachability of dial servers and reports when they go up or down.
+ *
+ * A server is checked with a tcp connect to the host and port of its application url, which is
+ * cheaper than any http request. All checks run on a single thread with non-blocking connects and
+ * a timer wheel, so thousands of servers can be watched at once. The check interval grows while a
+ * server is stable and starts over at the minimum after it changed. A server is reported down
+ * after two failed checks in a row.
+ *
+ * @author Simon Weis
+ */
+public class LivenessMonitor implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(LivenessMonitor.class.getName());
+
+    private static final long TICK_MS = 50;
+    private static final int SLOTS = 512;
+    private static final double INTERVAL_FACTOR = 1.5;
+    private static final int FAILURES_UNTIL_DOWN = 2;
+
+    private enum Status {
+        UNKNOWN, UP, DOWN
+    }
+
+    private final LivenessListener listener;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final long connectTimeoutMs;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<String, Device> devices = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+    private Selector selector;
+    private Thread thread;
+
+    // Only used by the monitor thread
+    private TimerWheel timerWheel;
+
+    public LivenessMonitor(LivenessListener listener) {
+        this(listener, 1000, 10_000, 1000);
+    }
+
+    /**
+     * @param listener The receiver of the up and down events
+     * @param minIntervalMs The check interval after a server was added or changed its state
+     * @param maxIntervalMs The longest check interval of a stable server
+     * @param connectTimeoutMs The time a server has to accept a connection
+     */
+    public LivenessMonitor(LivenessListener listener, long minIntervalMs, long maxIntervalMs, long connectTimeoutMs) {
+
+        if (minIntervalMs <= 0 || minIntervalMs > maxIntervalMs) {
+            throw new IllegalArgumentException("The minimal interval must be positive and not greater than the maximum");
+        }
+
+        this.listener = listener;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /**
+     * Starts the monitor thread.
+     *
+     * @throws IOException If the selector can't be opened
+     */
+    public synchronized void start() throws IOException {
+
+        if (thread != null) {
+            throw new IllegalStateException("The monitor was already started");
+        }
+
+        selector = Selector.open();
+        thread = new DaemonThreadFactory("jdial-liveness").newThread(this::run);
+        thread.start();
+    }
+
+    /**
+     * Starts watching a server. A server that is already watched is checked again from the start.
+     *
+     * The host name of the server is resolved on the calling thread.
+     *
+     * @param dialServer The server, which needs an application or device descriptor url
+     */
+    public void monitor(DialServer dialServer) {
+
+        URL url = dialServer.getApplicationResourceUrl() != null
+                ? dialServer.getApplicationResourceUrl()
+                : dialServer.getDeviceDescriptorUrl();
+
+        if (url == null) {
+            throw new IllegalArgumentException("The server has no url to check");
+        }
+
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        Device device = new Device(dialServer, new InetSocketAddress(url.getHost(), port));
+        Device previous = devices.put(key(dialServer), device);
+
+        execute(() -> {
+
+            if (previous != null) {
+                previous.stop();
+            }
+
+            device.scheduleCheck(0);
+        });
+    }
+
+    /**
+     * Stops watching a server.
+     *
+     * @param dialServer The server
+     */
+    public void unmonitor(DialServer dialServer) {
+
+        Device device = devices.remove(key(dialServer));
+
+        if (device != null) {
+            execute(device::stop);
+        }
+    }
+
+    /**
+     * @param dialServer The server
+     * @return True if the last checks of the server succeeded
+     */
+    public boolean isAlive(DialServer dialServer) {
+
+        Device device = devices.get(key(dialServer));
+
+        return device != null && device.status == Status.UP;
+    }
+
+    public int getMonitoredCount() {
+        return devices.size();
+    }
+
+    @Override
+    public void close() {
+
+        closed = true;
+
+        Selector selector;
+
+        synchronized (this) {
+            selector = this.selector;
+        }
+
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void execute(Runnable command) {
+
+        commands.add(command);
+
+        Selector selector;
+
+        synchronized (this) {
+            selector = this.selector;
+        }
+
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+
+        timerWheel = new TimerWheel(TICK_MS, SLOTS, nowMs());
+
+        try {
+
+            while (!closed) {
+
+                Runnable command;
+
+                while ((command = commands.poll()) != null) {
+                    command.run();
+                }
+
+                selector.select(Math.max(1, timerWheel.msUntilNextTick(nowMs())));
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ((Device) key.attachment()).connectable();
+                }
+
+                selector.selectedKeys().clear();
+                timerWheel.advance(nowMs());
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            LOGGER.log(Level.SEVERE, "Liveness monitor stopped", e);
+
+        } finally {
+
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+
+            closeQuietly(selector);
+        }
+    }
+
+    private void fire(Status status, DialServer dialServer) {
+
+        try {
+
+            if (status == Status.UP) {
+                listener.deviceUp(dialServer);
+            } else {
+                listener.deviceDown(dialServer);
+            }
+
+        } catch (RuntimeException e) {
+
+            LOGGER.log(Level.WARNING, "Liveness listener failed", e);
+        }
+    }
+
+    private static String key(DialServer dialServer) {
+
+        return dialServer.getUniqueServiceName() != null
+                ? dialServer.getUniqueServiceName()
+                : String.valueOf(dialServer.getApplicationResourceUrl());
+    }
+
+    private static long nowMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Can't close", e);
+        }
+    }
+
+    /*
+     * All fields except the status are confined to the monitor thread.
+     */
+    private final class Device {
+
+        private final DialServer dialServer;
+        private final InetSocketAddress address;
+
+        private volatile Status status = Status.UNKNOWN;
+        private long intervalMs = minIntervalMs;
+        private int failures;
+        private boolean stopped;
+        private SocketChannel channel;
+        private TimerWheel.Timer timer;
+
+        private Device(DialServer dialServer, InetSocketAddress address) {
+
+            this.dialServer = dialServer;
+            this.address = address;
+        }
+
+        private void scheduleCheck(long delayMs) {
+
+            timer = timerWheel.schedule(this::check, delayMs);
+        }
+
+        private void check() {
+
+            if (stopped) {
+                return;
+            }
+
+            if (address.isUnresolved()) {
+                completed(false);
+                return;
+            }
+
+            try {
+
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+
+                if (channel.connect(address)) {
+                    completed(true);
+                    return;
+                }
+
+                channel.register(selector, SelectionKey.OP_CONNECT, this);
+                timer = timerWheel.schedule(() -> completed(false), connectTimeoutMs);
+
+            } catch (IOException e) {
+
+                completed(false);
+            }
+        }
+
+        private void connectable() {
+
+            if (channel == null) {
+                return;
+            }
+
+            boolean connected;
+
+            try {
+                connected = channel.finishConnect();
+            } catch (IOException e) {
+                connected = false;
+            }
+
+            completed(connected);
+        }
+
+        private void completed(boolean reachable) {
+
+            timer.cancel();
+
+            if (channel != null) {
+                closeQuietly(channel);
+                channel = null;
+            }
+
+            if (stopped) {
+                return;
+            }
+
+            Status previous = status;
+
+            if (reachable) {
+
+                failures = 0;
+
+                if (previous == Status.UP) {
+
+                    intervalMs = Math.min(maxIntervalMs, (long) (intervalMs * INTERVAL_FACTOR));
+                } else {
+
+                    status = Status.UP;
+                    intervalMs = minIntervalMs;
+                    fire(Status.UP, dialServer);
+                }
+
+            } else {
+
+                failures++;
+
+                if (previous == Status.DOWN) {
+
+                    intervalMs = Math.min(maxIntervalMs, (long) (intervalMs * INTERVAL_FACTOR));
+                } else if (failures >= FAILURES_UNTIL_DOWN) {
+
+                    status = Status.DOWN;
+                    intervalMs = minIntervalMs;
+                    fire(Status.DOWN, dialServer);
+                } else {
+
+                    // Confirm a single failure quickly
+                    intervalMs = minIntervalMs;
+                }
+            }
+
+            scheduleCheck(intervalMs);
+        }
+
+        private void stop() {
+
+            stopped = true;
+
+            if (timer != null) {
+                timer.cancel();
+            }
+
+            if (channel != null) {
+                closeQuietly(channel);
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel. Timers are kept in slots of a fixed tick duration, so scheduling and
+ * cancelling are constant time operations and thousands of timers cost a single thread.
+ *
+ * Not thread safe, all methods must be called from the thread that drives the wheel.
+ *
+ * @author Simon Weis
+ */
+class TimerWheel {
+
+    private final long tickMs;
+    private final List<List<Timer>> slots;
+
+    private long currentTick;
+    private int size;
+
+    TimerWheel(long tickMs, int slotCount, long nowMs) {
+
+        if (tickMs <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("The tick duration and the slot count must be positive");
+        }
+
+        this.tickMs = tickMs;
+        this.slots = new ArrayList<>(slotCount);
+        this.currentTick = nowMs / tickMs;
+
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * @param task The task to run
+     * @param delayMs The delay, rounded up to the next tick
+     * @return The timer, which can be cancelled
+     */
+    Timer schedule(Runnable task, long delayMs) {
+
+        long ticks = Math.max(1, (delayMs + tickMs - 1) / tickMs);
+        long deadlineTick = currentTick + ticks;
+
+        Timer timer = new Timer(task, deadlineTick);
+        slots.get((int) (deadlineTick % slots.size())).add(timer);
+        size++;
+
+        return timer;
+    }
+
+    /**
+     * Runs the tasks of all ticks up to the given time. Tasks may schedule new timers.
+     */
+    void advance(long nowMs) {
+
+        long targetTick = nowMs / tickMs;
+
+        while (currentTick < targetTick) {
+
+            currentTick++;
+
+            List<Timer> slot = slots.get((int) (currentTick % slots.size()));
+            List<Timer> expired = new ArrayList<>();
+
+            for (Iterator<Timer> iterator = slot.iterator(); iterator.hasNext(); ) {
+
+                Timer timer = iterator.next();
+
+                if (timer.cancelled) {
+
+                    iterator.remove();
+                    size--;
+                } else if (timer.deadlineTick <= currentTick) {
+
+                    iterator.remove();
+                    size--;
+                    expired.add(timer);
+                }
+            }
+
+            for (Timer timer : expired) {
+                timer.task.run();
+            }
+        }
+    }
+
+    /**
+     * @return The time until the next tick
+     */
+    long msUntilNextTick(long nowMs) {
+
+        return (currentTick + 1) * tickMs - nowMs;
+    }
+
+    int size() {
+        return size;
+    }
+
+    static final class Timer {
+
+        private final Runnable task;
+        private final long deadlineTick;
+        private boolean cancelled;
+
+        private Timer(Runnable task, long deadlineTick) {
+
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
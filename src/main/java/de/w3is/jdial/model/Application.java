@@ -18,10 +18,12 @@
 package de.w3is.jdial.model;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import org.w3c.dom.Node;
 
 import java.io.Serializable;
 import java.net.URL;
+import java.util.List;
 
 /**
  * The Application class represents an app that can be
@@ -29,6 +31,8 @@ import java.net.URL;
  * For all reserved DIAL application names see the
  * <a href="http://www.dial-multiscreen.org/dial-registry/namespace-database">namespace database</a>
  *
+ * Instances are mutable and not thread safe. Use {@link #snapshot()} to share an application between threads.
+ *
  * @author Simon Weis
  */
 @Data
@@ -48,14 +52,28 @@ public class Application implements Serializable {
     private boolean allowStop;
 
     // The installUrl can be used to issue an installation of the app.
+    @EqualsAndHashCode.Exclude
     private URL installUrl;
 
     /*
      * The url of a running instance.
      * The installUrl is null when no instance is running.
      */
+    @EqualsAndHashCode.Exclude
     private URL instanceUrl;
 
     // Additional data defined by the app author.
     private Node additionalData;
+
+    /**
+     * @return An immutable copy of the current values
+     */
+    public ApplicationSnapshot snapshot() {
+        return ApplicationSnapshot.of(this);
+    }
+
+    @EqualsAndHashCode.Include
+    private List<String> urlForms() {
+        return UrlForms.of(installUrl, instanceUrl);
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+import org.w3c.dom.Node;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * An immutable copy of an {@link Application}, which can be shared between threads without synchronization.
+ *
+ * DOM nodes are not safe for concurrent use, even for reading, so the additional data
+ * is kept as serialized xml.
+ *
+ * @author Simon Weis
+ */
+@Value
+public class ApplicationSnapshot implements Serializable {
+
+    String name;
+    State state;
+    boolean allowStop;
+    @EqualsAndHashCode.Exclude
+    URL installUrl;
+    @EqualsAndHashCode.Exclude
+    URL instanceUrl;
+
+    // The additionalData element as xml or null if the server didn't send one
+    String additionalData;
+
+    /**
+     * Copies the current state of an application. The additional data is serialized to xml,
+     * so the application must not be changed by another thread while it is copied.
+     *
+     * @param application The application to copy
+     * @return The snapshot of the application
+     * @throws IllegalStateException if the additional data can't be serialized
+     */
+    public static ApplicationSnapshot of(Application application) {
+
+        return new ApplicationSnapshot(application.getName(), application.getState(), application.isAllowStop(),
+                application.getInstallUrl(), application.getInstanceUrl(), toXml(application.getAdditionalData()));
+    }
+
+    private static String toXml(Node node) {
+
+        if (node == null) {
+            return null;
+        }
+
+        try {
+
+            Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+            StringWriter writer = new StringWriter();
+            transformer.transform(new DOMSource(node), new StreamResult(writer));
+
+            return writer.toString();
+
+        } catch (TransformerException e) {
+
+            throw new IllegalStateException("Can't serialize additional data", e);
+        }
+    }
+
+    @EqualsAndHashCode.Include
+    private List<String> urlForms() {
+        return UrlForms.of(installUrl, instanceUrl);
+    }
+}
@@ -18,13 +18,17 @@
 package de.w3is.jdial.model;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.io.Serializable;
 import java.net.URL;
+import java.util.List;
 
 /**
  * The representation of a remote dial server
  *
+ * Instances are mutable and not thread safe. Use {@link #snapshot()} to share a server between threads.
+ *
  * @author Simon Weis
  */
 @Data
@@ -34,12 +38,14 @@ public class DialServer implements Serializable {
     private String friendlyName;
 
     // The url to the application rest resource
+    @EqualsAndHashCode.Exclude
     private URL applicationResourceUrl;
 
     // A unique identifier of the device
     private String uniqueServiceName;
 
     // The url to the upnp device descriptor
+    @EqualsAndHashCode.Exclude
     private URL deviceDescriptorUrl;
 
     // Set if the server supports wol
@@ -53,4 +59,16 @@ public class DialServer implements Serializable {
 
     // A technical description string of the server
     private String serverDescription;
+
+    /**
+     * @return An immutable copy of the current values
+     */
+    public DialServerSnapshot snapshot() {
+        return DialServerSnapshot.of(this);
+    }
+
+    @EqualsAndHashCode.Include
+    private List<String> urlForms() {
+        return UrlForms.of(applicationResourceUrl, deviceDescriptorUrl);
+    }
 }
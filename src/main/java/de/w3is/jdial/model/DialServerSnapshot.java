@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+import java.io.Serializable;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * An immutable copy of a {@link DialServer}, which can be shared between threads without synchronization.
+ *
+ * @author Simon Weis
+ */
+@Value
+public class DialServerSnapshot implements Serializable {
+
+    String friendlyName;
+    @EqualsAndHashCode.Exclude
+    URL applicationResourceUrl;
+    String uniqueServiceName;
+    @EqualsAndHashCode.Exclude
+    URL deviceDescriptorUrl;
+    boolean wakeOnLanSupport;
+    String wakeOnLanMAC;
+    Integer wakeOnLanTimeout;
+    String serverDescription;
+
+    public static DialServerSnapshot of(DialServer dialServer) {
+
+        return new DialServerSnapshot(dialServer.getFriendlyName(), dialServer.getApplicationResourceUrl(),
+                dialServer.getUniqueServiceName(), dialServer.getDeviceDescriptorUrl(), dialServer.isWakeOnLanSupport(),
+                dialServer.getWakeOnLanMAC(), dialServer.getWakeOnLanTimeout(), dialServer.getServerDescription());
+    }
+
+    /**
+     * @return A new mutable server with the values of this snapshot
+     */
+    public DialServer toDialServer() {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setFriendlyName(friendlyName);
+        dialServer.setApplicationResourceUrl(applicationResourceUrl);
+        dialServer.setUniqueServiceName(uniqueServiceName);
+        dialServer.setDeviceDescriptorUrl(deviceDescriptorUrl);
+        dialServer.setWakeOnLanSupport(wakeOnLanSupport);
+        dialServer.setWakeOnLanMAC(wakeOnLanMAC);
+        dialServer.setWakeOnLanTimeout(wakeOnLanTimeout);
+        dialServer.setServerDescription(serverDescription);
+
+        return dialServer;
+    }
+
+    @EqualsAndHashCode.Include
+    private List<String> urlForms() {
+        return UrlForms.of(applicationResourceUrl, deviceDescriptorUrl);
+    }
+}
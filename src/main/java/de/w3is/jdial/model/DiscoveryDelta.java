@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.model;
+
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes between two sweeps of a discovery session. The servers are copies,
+ * changing them doesn't affect the session.
+ *
+ * @author Simon Weis
+ */
+@Value
+public class DiscoveryDelta {
+
+    public static final DiscoveryDelta EMPTY =
+            new DiscoveryDelta(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+    // Servers with a unique service name that wasn't known before
+    List<DialServer> added;
+
+    // Known servers with a new location, server description, descriptor or wake on lan values
+    List<DialServer> changed;
+
+    // Known servers that stopped answering, with their last known values
+    List<DialServer> removed;
+
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.model;
+
+/**
+ * Thrown by a {@link de.w3is.jdial.DialClientConnection} when a request was not sent, because the rate limit
+ * of the device allowed no request within the configured wait time.
+ *
+ * It is a {@link DialClientException}, so callers that handle failed commands handle it as well
+ * and can tell a limited request apart where it matters.
+ *
+ * @author Simon Weis
+ */
+public class RateLimitedException extends DialClientException {
+
+    /**
+     * @param cause The rejection of the rate limiter
+     */
+    public RateLimitedException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.model;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The form in which the model classes compare their urls.
+ *
+ * {@link URL#equals(Object)} and {@link URL#hashCode()} resolve the host name, which blocks on slow resolvers
+ * and makes urls of hosts with several addresses equal. The model classes exclude their url fields from the
+ * generated equals and hashCode and include the external forms instead. Two urls that name the same host
+ * differently are therefore not equal.
+ *
+ * @author Simon Weis
+ */
+public final class UrlForms {
+
+    private UrlForms() {
+    }
+
+    /**
+     * @param urls The urls of an object, may contain null
+     * @return The external forms in the same order, null for a null url
+     */
+    public static List<String> of(URL... urls) {
+
+        List<String> forms = new ArrayList<>(urls.length);
+
+        for (URL url : urls) {
+            forms.add(url == null ? null : url.toExternalForm());
+        }
+
+        return forms;
+    }
+}
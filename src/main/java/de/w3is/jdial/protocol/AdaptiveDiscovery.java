@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the M-SEARCH listen window from the responses of the current and the previous sweep.
+ *
+ * The MX header is chosen so that the fleet seen in the previous sweep spreads its responses
+ * at a rate the receiver can keep up with. The window closes once no new device answered for a
+ * quiet period, which is a multiple of the mean interval between new devices. Until the fleet of the
+ * previous sweep has answered again, the longest quiet period is used and the window stays open at least
+ * until the MX deadline, so a single fast reply doesn't cut off the slower devices. Without a previous
+ * sweep the configured MX is sent and the window also stays open until its deadline.
+ *
+ * @author Simon Weis
+ */
+class AdaptiveDiscovery {
+
+    private static final int QUIET_FACTOR = 8;
+    private static final int MIN_RESPONSE_DELAY = 1;
+
+    private final int minQuietMs;
+    private final int maxQuietMs;
+    private final int initialResponseDelay;
+    private final int maxResponseDelay;
+    private final int responsesPerSecond;
+
+    private volatile int previousDevices = -1;
+
+    /**
+     * @param minQuietMs The shortest quiet period that closes a window
+     * @param maxQuietMs The longest quiet period, the socket timeout
+     * @param initialResponseDelay The configured MX, sent while there is no previous sweep with devices
+     * @param maxResponseDelay The highest MX to send
+     * @param responsesPerSecond The response rate the fleet is spread to
+     */
+    AdaptiveDiscovery(int minQuietMs, int maxQuietMs, int initialResponseDelay, int maxResponseDelay, int responsesPerSecond) {
+
+        if (minQuietMs > maxQuietMs) {
+            throw new IllegalArgumentException("The minimal quiet period must not be greater than the socket timeout");
+        }
+
+        if (maxResponseDelay < MIN_RESPONSE_DELAY || responsesPerSecond <= 0) {
+            throw new IllegalArgumentException("The response delay and the response rate must be positive");
+        }
+
+        this.minQuietMs = minQuietMs;
+        this.maxQuietMs = maxQuietMs;
+        this.initialResponseDelay = Math.max(MIN_RESPONSE_DELAY, initialResponseDelay);
+        this.maxResponseDelay = maxResponseDelay;
+        this.responsesPerSecond = responsesPerSecond;
+    }
+
+    boolean hasSettings(int minQuietMs, int maxQuietMs, int initialResponseDelay, int maxResponseDelay,
+                        int responsesPerSecond) {
+
+        return this.minQuietMs == minQuietMs && this.maxQuietMs == maxQuietMs
+                && this.initialResponseDelay == Math.max(MIN_RESPONSE_DELAY, initialResponseDelay)
+                && this.maxResponseDelay == maxResponseDelay && this.responsesPerSecond == responsesPerSecond;
+    }
+
+    /**
+     * @return The MX value in seconds for the next sweep
+     */
+    int responseDelay() {
+
+        int devices = previousDevices;
+
+        if (devices <= 0) {
+            return initialResponseDelay;
+        }
+
+        int responseDelay = (devices + responsesPerSecond - 1) / responsesPerSecond;
+
+        return Math.max(MIN_RESPONSE_DELAY, Math.min(maxResponseDelay, responseDelay));
+    }
+
+    Window openWindow(int responseDelay, long sentAtNanos) {
+
+        return new Window(responseDelay, sentAtNanos, previousDevices);
+    }
+
+    void sweepCompleted(int devices) {
+
+        previousDevices = devices;
+    }
+
+    int previousDevices() {
+
+        return previousDevices;
+    }
+
+    /**
+     * The listen window of a single sweep. Not thread safe.
+     */
+    class Window {
+
+        private final long sentAtNanos;
+        private final long responseDeadlineNanos;
+        private final long deadlineNanos;
+        private final int expectedDevices;
+
+        private int devices;
+        private long lastDeviceNanos;
+
+        private Window(int responseDelay, long sentAtNanos, int expectedDevices) {
+
+            this.sentAtNanos = sentAtNanos;
+            this.responseDeadlineNanos = sentAtNanos + TimeUnit.SECONDS.toNanos(responseDelay);
+            this.deadlineNanos = responseDeadlineNanos + TimeUnit.MILLISECONDS.toNanos(maxQuietMs);
+            this.expectedDevices = expectedDevices;
+            this.lastDeviceNanos = sentAtNanos;
+        }
+
+        void deviceFound(long nowNanos) {
+
+            devices++;
+            lastDeviceNanos = nowNanos;
+        }
+
+        /**
+         * @return How long to wait for the next response, zero or less closes the window
+         */
+        long remainingMs(long nowNanos) {
+
+            long endNanos = deadlineNanos;
+
+            if (devices > 0) {
+
+                long quietEndNanos = lastDeviceNanos + TimeUnit.MILLISECONDS.toNanos(quietMs());
+
+                // Devices may answer at any time within MX, so only the full fleet may end the window earlier
+                if (!hasExpectedFleet()) {
+                    quietEndNanos = Math.max(quietEndNanos, responseDeadlineNanos);
+                }
+
+                endNanos = Math.min(endNanos, quietEndNanos);
+            }
+
+            return TimeUnit.NANOSECONDS.toMillis(endNanos - nowNanos);
+        }
+
+        long quietMs() {
+
+            if (devices == 0 || devices < expectedDevices) {
+                return maxQuietMs;
+            }
+
+            long meanIntervalMs = TimeUnit.NANOSECONDS.toMillis(lastDeviceNanos - sentAtNanos) / devices;
+
+            return Math.max(minQuietMs, Math.min(maxQuietMs, QUIET_FACTOR * meanIntervalMs));
+        }
+
+        private boolean hasExpectedFleet() {
+            return expectedDevices > 0 && devices >= expectedDevices;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package de.w3is.jdial.protocol;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
 
 import de.w3is.jdial.model.Application;
 import de.w3is.jdial.model.DialContent;
@@ -29,6 +30,11 @@ import de.w3is.jdial.protocol.model.ApplicationResourceException;
  */
 public interface ApplicationResource {
 
+    /**
+     * @param applicationName The name of the application
+     * @return The application, or null if the server answered that it is not installed
+     * @throws IOException If the request failed, the server answered with another error or an invalid body
+     */
     Application getApplication(String applicationName) throws IOException;
 
     URL startApplication(String applicationName) throws IOException, ApplicationResourceException;
@@ -38,4 +44,13 @@ public interface ApplicationResource {
     void stopApplication(URL instanceUrl) throws IOException, ApplicationResourceException;
 
     void hideApplication(URL instanceURL) throws IOException, ApplicationResourceException;
+
+    /**
+     * Opens a connection to the application resource in the background, which the next request reuses.
+     *
+     * @return A future that completes when the connection is ready, or exceptionally if the request failed
+     */
+    default CompletableFuture<Void> preconnect() {
+        return CompletableFuture.completedFuture(null);
+    }
 }
@@ -21,7 +21,8 @@ import de.w3is.jdial.model.Application;
 import de.w3is.jdial.model.DialContent;
 import de.w3is.jdial.model.State;
 import de.w3is.jdial.protocol.model.ApplicationResourceException;
-import lombok.Data;
+import de.w3is.jdial.protocol.model.Operation;
+import lombok.Getter;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
@@ -33,7 +34,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,9 +45,12 @@ import static de.w3is.jdial.protocol.XMLUtil.getDocumentFromStream;
 import static de.w3is.jdial.protocol.XMLUtil.getTextFromSub;
 
 /**
+ * Instances are immutable apart from the shared hedging and round trip state, which is thread safe.
+ * The round trip state of the device is looked up per request, so it may be dropped while the device is idle.
+ *
  * @author Simon Weis
  */
-@Data
+@Getter
 class ApplicationResourceImpl implements ApplicationResource {
 
     private static final Logger LOGGER = Logger.getLogger(ApplicationResourceImpl.class.getName());
@@ -66,15 +73,35 @@ class ApplicationResourceImpl implements ApplicationResource {
 
     private final String clientFriendlyName;
     private final URL rootUrl;
-    private boolean sendQueryParameter;
-    private Integer connectionTimeout;
-    private Integer readTimeout;
-
-    ApplicationResourceImpl(String clientFriendlyName, URL rootUrl) {
+    private final boolean sendQueryParameter;
+    private final Integer connectionTimeout;
+    private final Integer readTimeout;
+    private final Supplier<RequestHedger> requestHedger;
+    private final Supplier<RttEstimator> rttEstimator;
+    private final ProtocolListener protocolListener;
+    private final TrafficRecorder trafficRecorder;
+    private final RequestPermits requestPermits;
+    private final int maxApplicationBytes;
+    private final int maxXmlElementDepth;
+    private final int maxXmlNameLength;
+
+    ApplicationResourceImpl(String clientFriendlyName, URL rootUrl, ProtocolConfiguration configuration,
+                            Supplier<RequestHedger> requestHedger, Supplier<RttEstimator> rttEstimator,
+                            RequestPermits requestPermits) {
 
         this.clientFriendlyName = clientFriendlyName;
         this.rootUrl = rootUrl;
-        this.sendQueryParameter = true;
+        this.sendQueryParameter = !configuration.isLegacyCompatibility();
+        this.connectionTimeout = configuration.getHttpClientConnectionTimeoutMs();
+        this.readTimeout = configuration.getHttpClientReadTimeoutMs();
+        this.requestHedger = requestHedger;
+        this.rttEstimator = rttEstimator;
+        this.protocolListener = configuration.getProtocolListener();
+        this.trafficRecorder = configuration.getTrafficRecorder();
+        this.requestPermits = requestPermits;
+        this.maxApplicationBytes = configuration.getMaxApplicationBytes();
+        this.maxXmlElementDepth = configuration.getMaxXmlElementDepth();
+        this.maxXmlNameLength = configuration.getMaxXmlNameLength();
     }
 
     @Override
@@ -87,19 +114,69 @@ class ApplicationResourceImpl implements ApplicationResource {
             applicationUrl.query(APPLICATION_DIAL_VERSION_QUERY);
         }
 
-        HttpURLConnection httpUrlConnection = (HttpURLConnection) applicationUrl.build().openConnection();
-        addTimeoutParameter(httpUrlConnection);
+        URL url = applicationUrl.build();
+
+        if (requestHedger == null) {
+            return fetchApplication(url);
+        }
+
+        return requestHedger.get().execute(() -> fetchApplication(url));
+    }
+
+    @Override
+    public CompletableFuture<Void> preconnect() {
+        return Preconnector.preconnect(this);
+    }
+
+    private Application fetchApplication(URL applicationUrl) throws IOException {
+
+        OperationTrace trace = OperationTrace.start(protocolListener, Operation.GET_APPLICATION, applicationUrl);
+        acquirePermit(trace);
+
+        HttpURLConnection httpUrlConnection = (HttpURLConnection) applicationUrl.openConnection();
+        addTimeoutParameter(httpUrlConnection, true);
         httpUrlConnection.setDoInput(true);
 
-        if (httpUrlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        int code = exchange(httpUrlConnection, trace, true);
 
-            LOGGER.log(Level.FINE, "Application not found: ", httpUrlConnection.getResponseCode());
-            return null;
+        if (code != HttpURLConnection.HTTP_OK) {
+
+            record(httpUrlConnection, trace, null);
+            trace.completed(code, 0, httpUrlConnection.getContentLengthLong());
+
+            // Only a 404 tells that the application is not installed, other codes are failed requests
+            if (code == HttpURLConnection.HTTP_NOT_FOUND) {
+
+                LOGGER.log(Level.FINE, "Application not found: {0}", applicationUrl);
+                return null;
+            }
+
+            throw new IOException("Unexpected response code " + code + " for " + applicationUrl);
         }
 
-        try (InputStream inputStream = httpUrlConnection.getInputStream()) {
+        try (BoundedInputStream inputStream = BoundedInputStream.of(httpUrlConnection, maxApplicationBytes)) {
 
-            Document serviceDocument = getDocumentFromStream(inputStream);
+            Application application = parseApplication(record(httpUrlConnection, trace, inputStream));
+            trace.completed(code, 0, inputStream.getCount());
+
+            return application;
+
+        } catch (IOException e) {
+
+            if (trafficRecorder != null) {
+                trafficRecorder.exchangeFailed(httpUrlConnection, trace.elapsedNanos());
+            }
+
+            trace.failed(e);
+            throw e;
+        }
+    }
+
+    private Application parseApplication(InputStream inputStream) throws IOException {
+
+        try {
+
+            Document serviceDocument = getDocumentFromStream(inputStream, maxXmlElementDepth, maxXmlNameLength);
 
             Application application = new Application();
             application.setName(getTextFromSub(serviceDocument, "name"));
@@ -113,8 +190,7 @@ class ApplicationResourceImpl implements ApplicationResource {
 
         } catch (ParserConfigurationException | SAXException | ApplicationResourceException e) {
 
-            LOGGER.log(Level.WARNING, "Can't parse body xml", e);
-            return null;
+            throw new IOException("Can't parse body xml", e);
         }
     }
 
@@ -133,29 +209,44 @@ class ApplicationResourceImpl implements ApplicationResource {
             applicationUrl.query(CLIENT_FRIENDLY_NAME_QUERY, clientFriendlyName);
         }
 
-        HttpURLConnection httpURLConnection = (HttpURLConnection) applicationUrl.build().openConnection();
+        URL url = applicationUrl.build();
+        OperationTrace trace = OperationTrace.start(protocolListener, Operation.START_APPLICATION, url);
+        acquirePermit(trace);
+
+        HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection();
         httpURLConnection.setRequestMethod("POST");
         httpURLConnection.setDoOutput(true);
 
-        addTimeoutParameter(httpURLConnection);
+        addTimeoutParameter(httpURLConnection, false);
 
-        if (dialContent.getData() == null) {
+        byte[] data = dialContent.getData();
 
-            httpURLConnection.setRequestProperty(CONTENT_LENGTH_HEADER, "0");
+        try {
 
-            // HttpURLConnection will not send headers if the outputStream not getting opened.
-            httpURLConnection.getOutputStream().close();
-        } else {
+            if (data == null) {
 
-            httpURLConnection.setRequestProperty(CONTENT_LENGTH_HEADER, String.valueOf(dialContent.getData().length));
-            httpURLConnection.setRequestProperty(CONTENT_TYPE_HEADER, dialContent.getContentType());
+                httpURLConnection.setRequestProperty(CONTENT_LENGTH_HEADER, "0");
+
+                // HttpURLConnection will not send headers if the outputStream not getting opened.
+                httpURLConnection.getOutputStream().close();
+            } else {
 
-            try (OutputStream outputStream = httpURLConnection.getOutputStream()) {
-                outputStream.write(dialContent.getData());
+                httpURLConnection.setRequestProperty(CONTENT_LENGTH_HEADER, String.valueOf(data.length));
+                httpURLConnection.setRequestProperty(CONTENT_TYPE_HEADER, dialContent.getContentType());
+
+                try (OutputStream outputStream = httpURLConnection.getOutputStream()) {
+                    outputStream.write(data);
+                }
             }
+        } catch (IOException e) {
+
+            trace.failed(e);
+            throw e;
         }
 
-        int code = httpURLConnection.getResponseCode();
+        int code = exchange(httpURLConnection, trace, false);
+        record(httpURLConnection, trace, null);
+        trace.completed(code, data == null ? 0 : data.length, httpURLConnection.getContentLengthLong());
 
         if (code == HttpURLConnection.HTTP_OK || code == HttpURLConnection.HTTP_CREATED) {
 
@@ -177,13 +268,19 @@ class ApplicationResourceImpl implements ApplicationResource {
     @Override
     public void stopApplication(URL instanceUrl) throws IOException, ApplicationResourceException {
 
+        OperationTrace trace = OperationTrace.start(protocolListener, Operation.STOP_APPLICATION, instanceUrl);
+        acquirePermit(trace);
+
         HttpURLConnection httpURLConnection = (HttpURLConnection) instanceUrl.openConnection();
-        addTimeoutParameter(httpURLConnection);
+        addTimeoutParameter(httpURLConnection, false);
         httpURLConnection.setRequestMethod("DELETE");
 
-        if (httpURLConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new ApplicationResourceException("Could not stop the application. Status: " +
-                    httpURLConnection.getResponseCode());
+        int code = exchange(httpURLConnection, trace, false);
+        record(httpURLConnection, trace, null);
+        trace.completed(code, 0, httpURLConnection.getContentLengthLong());
+
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new ApplicationResourceException("Could not stop the application. Status: " + code);
         }
     }
 
@@ -191,13 +288,19 @@ class ApplicationResourceImpl implements ApplicationResource {
     public void hideApplication(URL instanceURL) throws IOException, ApplicationResourceException {
 
         URL hidingUrl = URLBuilder.of(instanceURL).path("hide").build();
+        OperationTrace trace = OperationTrace.start(protocolListener, Operation.HIDE_APPLICATION, hidingUrl);
+        acquirePermit(trace);
+
         HttpURLConnection httpURLConnection = (HttpURLConnection) hidingUrl.openConnection();
-        addTimeoutParameter(httpURLConnection);
+        addTimeoutParameter(httpURLConnection, false);
         httpURLConnection.setRequestMethod("POST");
 
-        if (httpURLConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new ApplicationResourceException("Could not hide the application. Status: " +
-                    httpURLConnection.getResponseCode());
+        int code = exchange(httpURLConnection, trace, false);
+        record(httpURLConnection, trace, null);
+        trace.completed(code, 0, httpURLConnection.getContentLengthLong());
+
+        if (code != HttpURLConnection.HTTP_OK) {
+            throw new ApplicationResourceException("Could not hide the application. Status: " + code);
         }
     }
 
@@ -295,7 +398,11 @@ class ApplicationResourceImpl implements ApplicationResource {
         }
     }
 
-    private void addTimeoutParameter(HttpURLConnection httpUrlConnection) {
+    /*
+     * Only status requests use the estimated timeout for reading. Launching, stopping and hiding
+     * includes work of the application on the device, so these keep the configured read timeout.
+     */
+    private void addTimeoutParameter(HttpURLConnection httpUrlConnection, boolean isStatusRequest) {
 
         if (connectionTimeout != null) {
             httpUrlConnection.setConnectTimeout(connectionTimeout);
@@ -304,5 +411,79 @@ class ApplicationResourceImpl implements ApplicationResource {
         if (readTimeout != null) {
             httpUrlConnection.setReadTimeout(readTimeout);
         }
+
+        if (rttEstimator != null) {
+
+            int timeout = rttEstimator.get().timeoutMs();
+            httpUrlConnection.setConnectTimeout(timeout);
+
+            if (isStatusRequest) {
+                httpUrlConnection.setReadTimeout(timeout);
+            }
+        }
+    }
+
+    private void acquirePermit(OperationTrace trace) throws IOException {
+
+        if (requestPermits == null) {
+            return;
+        }
+
+        try {
+
+            requestPermits.acquire();
+
+        } catch (IOException e) {
+
+            trace.failed(e);
+            throw e;
+        }
+    }
+
+    private int exchange(HttpURLConnection httpUrlConnection, OperationTrace trace, boolean isStatusRequest) throws IOException {
+
+        long requestStart = System.nanoTime();
+
+        try {
+
+            int code = httpUrlConnection.getResponseCode();
+
+            if (rttEstimator != null && isStatusRequest) {
+                rttEstimator.get().sample((System.nanoTime() - requestStart) / 1_000_000.0);
+            }
+
+            return code;
+
+        } catch (IOException e) {
+
+            if (rttEstimator != null && e instanceof SocketTimeoutException) {
+                rttEstimator.get().timedOut();
+            }
+
+            if (trafficRecorder != null) {
+                trafficRecorder.exchangeFailed(httpUrlConnection, trace.elapsedNanos());
+            }
+
+            trace.failed(e);
+            throw e;
+        }
+    }
+
+    private InputStream record(HttpURLConnection httpUrlConnection, OperationTrace trace, InputStream body)
+            throws IOException {
+
+        if (trafficRecorder == null) {
+            return body;
+        }
+
+        return trafficRecorder.exchangeCompleted(httpUrlConnection, trace.elapsedNanos(), body);
+    }
+
+    /**
+     * Takes a permit of the rate limit of the device before a request is sent.
+     */
+    interface RequestPermits {
+
+        void acquire() throws IOException;
     }
 }
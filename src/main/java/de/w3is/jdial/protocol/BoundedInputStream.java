@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.ResponseTooLargeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+
+/**
+ * A CountingInputStream that fails as soon as more than a maximum number of bytes were read,
+ * so a response never occupies more memory than the limit.
+ *
+ * @author Simon Weis
+ */
+class BoundedInputStream extends CountingInputStream {
+
+    private final long maxBytes;
+
+    BoundedInputStream(InputStream inputStream, long maxBytes) {
+
+        super(inputStream);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens the response body of the connection. A body with a declared length above
+     * the limit is rejected without reading it.
+     */
+    static BoundedInputStream of(HttpURLConnection connection, long maxBytes) throws IOException {
+
+        long contentLength = connection.getContentLengthLong();
+
+        if (contentLength > maxBytes) {
+
+            connection.disconnect();
+            throw tooLarge(maxBytes);
+        }
+
+        return new BoundedInputStream(connection.getInputStream(), maxBytes);
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        int value = super.read();
+        checkLimit();
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+
+        // Read at most one byte beyond the limit
+        int read = super.read(buffer, offset, (int) Math.min(length, maxBytes - getCount() + 1));
+        checkLimit();
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long skipped = super.skip(Math.min(n, maxBytes - getCount() + 1));
+        checkLimit();
+        return skipped;
+    }
+
+    private void checkLimit() throws ResponseTooLargeException {
+
+        if (getCount() > maxBytes) {
+            throw tooLarge(maxBytes);
+        }
+    }
+
+    private static ResponseTooLargeException tooLarge(long maxBytes) {
+
+        return new ResponseTooLargeException("The response exceeds the limit of " + maxBytes + " bytes");
+    }
+}
@@ -18,6 +18,7 @@
 package de.w3is.jdial.protocol;
 
 import de.w3is.jdial.protocol.model.DeviceDescriptor;
+import de.w3is.jdial.protocol.model.Operation;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
@@ -41,6 +42,21 @@ class DeviceDescriptorResourceImpl implements DeviceDescriptorResource {
 
     private static final String APPLICATION_URL_HEADER = "Application-URL";
 
+    private final ProtocolListener protocolListener;
+    private final TrafficRecorder trafficRecorder;
+    private final int maxDescriptorBytes;
+    private final int maxXmlElementDepth;
+    private final int maxXmlNameLength;
+
+    DeviceDescriptorResourceImpl(ProtocolConfiguration configuration) {
+
+        this.protocolListener = configuration.getProtocolListener();
+        this.trafficRecorder = configuration.getTrafficRecorder();
+        this.maxDescriptorBytes = configuration.getMaxDescriptorBytes();
+        this.maxXmlElementDepth = configuration.getMaxXmlElementDepth();
+        this.maxXmlNameLength = configuration.getMaxXmlNameLength();
+    }
+
     @Override
     public DeviceDescriptor getDescriptor(URL deviceDescriptorLocation) throws IOException {
 
@@ -55,43 +71,81 @@ class DeviceDescriptorResourceImpl implements DeviceDescriptorResource {
             return null;
         }
 
-        HttpURLConnection connection = (HttpURLConnection) deviceDescriptorLocation.openConnection();
+        OperationTrace trace = OperationTrace.start(protocolListener, Operation.DEVICE_DESCRIPTOR, deviceDescriptorLocation);
+        HttpURLConnection connection = null;
 
-        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+        try {
 
-            LOGGER.log(Level.WARNING, "Could not get device descriptor: " + connection.getResponseCode());
-            return null;
-        }
+            connection = (HttpURLConnection) deviceDescriptorLocation.openConnection();
+            int code = connection.getResponseCode();
 
-        String applicationUrl = connection.getHeaderField(APPLICATION_URL_HEADER);
+            if (code != HttpURLConnection.HTTP_OK) {
 
-        if (applicationUrl == null) {
+                LOGGER.log(Level.WARNING, "Could not get device descriptor: " + code);
+                record(connection, trace, null);
+                trace.completed(code, 0, connection.getContentLengthLong());
+                return null;
+            }
 
-            LOGGER.log(Level.WARNING, "Server didn't return applicationUrl");
-            return null;
-        }
+            String applicationUrl = connection.getHeaderField(APPLICATION_URL_HEADER);
+
+            if (applicationUrl == null) {
+
+                LOGGER.log(Level.WARNING, "Server didn't return applicationUrl");
+                record(connection, trace, null);
+                trace.completed(code, 0, connection.getContentLengthLong());
+                return null;
+            }
+
+            DeviceDescriptor deviceDescriptor = new DeviceDescriptor();
+            deviceDescriptor.setApplicationResourceUrl(new URL(applicationUrl));
 
-        DeviceDescriptor deviceDescriptor = new DeviceDescriptor();
-        deviceDescriptor.setApplicationResourceUrl(new URL(applicationUrl));
+            long bytes = readInfoFromBody(connection, trace, deviceDescriptor);
+            trace.completed(code, 0, bytes);
 
-        readInfoFromBody(connection, deviceDescriptor);
+            return deviceDescriptor;
 
-        return deviceDescriptor;
+        } catch (IOException e) {
+
+            if (trafficRecorder != null && connection != null) {
+                trafficRecorder.exchangeFailed(connection, trace.elapsedNanos());
+            }
+
+            trace.failed(e);
+            throw e;
+        }
     }
 
-    private void readInfoFromBody(HttpURLConnection connection, DeviceDescriptor deviceDescriptor) throws IOException {
+    private long readInfoFromBody(HttpURLConnection connection, OperationTrace trace, DeviceDescriptor deviceDescriptor)
+            throws IOException {
+
+        try (BoundedInputStream inputStream = BoundedInputStream.of(connection, maxDescriptorBytes)) {
+
+            InputStream body = record(connection, trace, inputStream);
+
+            try {
 
-        try (InputStream inputStream = connection.getInputStream()) {
+                Document bodyDocument = getDocumentFromStream(body, maxXmlElementDepth, maxXmlNameLength);
 
-            Document bodyDocument = getDocumentFromStream(inputStream);
+                bodyDocument.getDocumentElement().normalize();
 
-            bodyDocument.getDocumentElement().normalize();
+                deviceDescriptor.setFriendlyName(getTextFromSub(bodyDocument, "friendlyName"));
 
-            deviceDescriptor.setFriendlyName(getTextFromSub(bodyDocument, "friendlyName"));
+            } catch (ParserConfigurationException | SAXException e) {
 
-        } catch (ParserConfigurationException | SAXException e) {
+                LOGGER.log(Level.WARNING, "Error while parsing device descriptor:", e);
+            }
 
-            LOGGER.log(Level.WARNING, "Error while parsing device descriptor:", e);
+            return inputStream.getCount();
         }
     }
+
+    private InputStream record(HttpURLConnection connection, OperationTrace trace, InputStream body) throws IOException {
+
+        if (trafficRecorder == null) {
+            return body;
+        }
+
+        return trafficRecorder.exchangeCompleted(connection, trace.elapsedNanos(), body);
+    }
 }
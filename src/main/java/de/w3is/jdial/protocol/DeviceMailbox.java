@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.model.DialContent;
+import de.w3is.jdial.protocol.model.ApplicationResourceException;
+import de.w3is.jdial.protocol.model.CommandSupersededException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends the requests for one device one after another.
+ *
+ * While a request waits in the queue it can be merged with later ones: an identical request shares
+ * the outcome of the queued one, and a different start, stop or hide of the same application replaces it.
+ * The callers of a replaced command fail with a {@link CommandSupersededException}.
+ *
+ * Requests are executed on a shared pool, so only devices with pending requests occupy a thread.
+ *
+ * @author Simon Weis
+ */
+class DeviceMailbox {
+
+    enum Kind {
+        GET, START, STOP, HIDE
+    }
+
+    private final Executor executor;
+    private final ArrayDeque<Command<?>> queue = new ArrayDeque<>();
+    private boolean draining;
+
+    DeviceMailbox() {
+        this(ExecutorHolder.EXECUTOR);
+    }
+
+    DeviceMailbox(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a request.
+     *
+     * @param kind The kind of the request
+     * @param target The application url for get and start, the instance url for stop and hide
+     * @param content The content of a start request or null
+     * @param request Sends the request to the device
+     * @return The outcome of the request, shared with all callers of an identical queued request
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> submit(Kind kind, String target, DialContent content, Request<T> request) {
+
+        Command<T> command = new Command<>(kind, target, content, request);
+
+        synchronized (queue) {
+
+            Iterator<Command<?>> iterator = queue.iterator();
+
+            while (iterator.hasNext()) {
+
+                Command<?> queued = iterator.next();
+
+                if (queued.isSameAs(command)) {
+                    return (CompletableFuture<T>) queued.outcome;
+                }
+
+                if (queued.isSupersededBy(command)) {
+
+                    iterator.remove();
+                    queued.outcome.completeExceptionally(new CommandSupersededException(
+                            queued.kind + " " + queued.target + " was superseded by " + kind + " " + target));
+                }
+            }
+
+            queue.add(command);
+
+            if (!draining) {
+
+                draining = true;
+                executor.execute(this::drain);
+            }
+        }
+
+        return command.outcome;
+    }
+
+    /*
+     * An idle mailbox has neither queued nor running requests and can be dropped.
+     */
+    boolean isIdle() {
+
+        synchronized (queue) {
+            return queue.isEmpty() && !draining;
+        }
+    }
+
+    int getQueueLength() {
+
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    private void drain() {
+
+        while (true) {
+
+            Command<?> command;
+
+            synchronized (queue) {
+
+                command = queue.poll();
+
+                if (command == null) {
+
+                    draining = false;
+                    return;
+                }
+            }
+
+            command.execute();
+        }
+    }
+
+    interface Request<T> {
+
+        T send() throws IOException, ApplicationResourceException;
+    }
+
+    private static final class Command<T> {
+
+        private final Kind kind;
+        private final String target;
+        private final DialContent content;
+        private final Request<T> request;
+        private final CompletableFuture<T> outcome = new CompletableFuture<>();
+
+        private Command(Kind kind, String target, DialContent content, Request<T> request) {
+
+            this.kind = kind;
+            this.target = target;
+            this.content = content;
+            this.request = request;
+        }
+
+        private void execute() {
+
+            try {
+                outcome.complete(request.send());
+            } catch (Exception e) {
+                outcome.completeExceptionally(e);
+            }
+        }
+
+        private boolean isSameAs(Command<?> other) {
+
+            return kind == other.kind && target.equals(other.target) && sameContent(content, other.content);
+        }
+
+        private boolean isSupersededBy(Command<?> other) {
+
+            return kind != Kind.GET && other.kind != Kind.GET && isSameApplication(other);
+        }
+
+        // Instance urls are usually below the application url, e.g. /apps/YouTube/run
+        private boolean isSameApplication(Command<?> other) {
+
+            return target.equals(other.target)
+                    || target.startsWith(other.target + "/")
+                    || other.target.startsWith(target + "/");
+        }
+
+        private static boolean sameContent(DialContent first, DialContent second) {
+
+            if (first == null || second == null) {
+                return first == second;
+            }
+
+            return Objects.equals(first.getContentType(), second.getContentType())
+                    && Arrays.equals(first.getData(), second.getData());
+        }
+    }
+
+    private static final class ExecutorHolder {
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("jdial-device-mailbox"));
+    }
+}
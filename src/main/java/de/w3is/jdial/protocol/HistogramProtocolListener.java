@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.Operation;
+import de.w3is.jdial.protocol.model.ResponseTooLargeException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ProtocolListener that keeps the durations of all operations in memory,
+ * so they can be exported to a monitoring system.
+ *
+ * Durations are recorded in nanoseconds. Status codes are counted by class (1xx to 5xx).
+ *
+ * @author Simon Weis
+ */
+public class HistogramProtocolListener implements ProtocolListener {
+
+    private static final int STATUS_CLASSES = 6;
+
+    private final LatencyHistogram mSearchSend = new LatencyHistogram();
+    private final LatencyHistogram mSearchFirstResponse = new LatencyHistogram();
+    private final LatencyHistogram mSearchLastResponse = new LatencyHistogram();
+    private final LatencyHistogram mSearchDuration = new LatencyHistogram();
+    private final LongAdder mSearchResponses = new LongAdder();
+    private final LongAdder mSearchResponseBytes = new LongAdder();
+    private final LongAdder mSearchFiltered = new LongAdder();
+    private final LongAdder mSearchQueueOverflows = new LongAdder();
+    private final LongAdder mSearchKernelDrops = new LongAdder();
+
+    private final Map<Operation, OperationMetrics> operationMetrics = new EnumMap<>(Operation.class);
+
+    public HistogramProtocolListener() {
+
+        for (Operation operation : Operation.values()) {
+            operationMetrics.put(operation, new OperationMetrics());
+        }
+    }
+
+    @Override
+    public void mSearchSent(int bytes, long durationNanos) {
+
+        mSearchSend.record(durationNanos);
+    }
+
+    @Override
+    public void mSearchResponseReceived(int bytes, long nanosSinceSent) {
+
+        mSearchResponses.increment();
+        mSearchResponseBytes.add(bytes);
+    }
+
+    @Override
+    public void mSearchPacketsDropped(int filtered, int queueOverflows, long kernelDrops) {
+
+        mSearchFiltered.add(filtered);
+        mSearchQueueOverflows.add(queueOverflows);
+
+        if (kernelDrops > 0) {
+            mSearchKernelDrops.add(kernelDrops);
+        }
+    }
+
+    @Override
+    public void mSearchCompleted(long durationNanos, long firstResponseNanos, long lastResponseNanos,
+                                 int responses, int devices) {
+
+        mSearchDuration.record(durationNanos);
+
+        if (firstResponseNanos >= 0) {
+            mSearchFirstResponse.record(firstResponseNanos);
+            mSearchLastResponse.record(lastResponseNanos);
+        }
+    }
+
+    @Override
+    public void requestCompleted(Operation operation, URL url, int statusCode, long requestBytes,
+                                 long responseBytes, long durationNanos) {
+
+        OperationMetrics metrics = operationMetrics.get(operation);
+
+        metrics.duration.record(durationNanos);
+        metrics.requestBytes.add(requestBytes);
+
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+
+        int statusClass = statusCode / 100;
+
+        if (statusClass > 0 && statusClass < STATUS_CLASSES) {
+            metrics.statusClasses.incrementAndGet(statusClass);
+        }
+    }
+
+    @Override
+    public void requestFailed(Operation operation, URL url, long durationNanos, IOException exception) {
+
+        OperationMetrics metrics = operationMetrics.get(operation);
+
+        metrics.duration.record(durationNanos);
+        metrics.failures.increment();
+
+        if (exception instanceof ResponseTooLargeException) {
+            metrics.oversizedResponses.increment();
+        }
+    }
+
+    public LatencyHistogram.Snapshot getMSearchSendDuration() {
+        return mSearchSend.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getMSearchFirstResponse() {
+        return mSearchFirstResponse.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getMSearchLastResponse() {
+        return mSearchLastResponse.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getMSearchDuration() {
+        return mSearchDuration.snapshot();
+    }
+
+    public long getMSearchResponses() {
+        return mSearchResponses.sum();
+    }
+
+    public long getMSearchResponseBytes() {
+        return mSearchResponseBytes.sum();
+    }
+
+    public long getMSearchFiltered() {
+        return mSearchFiltered.sum();
+    }
+
+    public long getMSearchQueueOverflows() {
+        return mSearchQueueOverflows.sum();
+    }
+
+    /**
+     * @return The udp datagrams the system dropped during searches, for all sockets of the host
+     */
+    public long getMSearchKernelDrops() {
+        return mSearchKernelDrops.sum();
+    }
+
+    /**
+     * @param operation The protocol operation
+     * @return The durations of completed and failed requests
+     */
+    public LatencyHistogram.Snapshot getDuration(Operation operation) {
+        return operationMetrics.get(operation).duration.snapshot();
+    }
+
+    /**
+     * @param operation The protocol operation
+     * @param statusClass The first digit of the status code, e.g. 2 for all 2xx responses
+     * @return The number of responses with a status code of the class
+     */
+    public long getStatusCount(Operation operation, int statusClass) {
+
+        if (statusClass <= 0 || statusClass >= STATUS_CLASSES) {
+            return 0;
+        }
+
+        return operationMetrics.get(operation).statusClasses.get(statusClass);
+    }
+
+    public long getFailures(Operation operation) {
+        return operationMetrics.get(operation).failures.sum();
+    }
+
+    /**
+     * @param operation The protocol operation
+     * @return The number of failures caused by a response above the size limit
+     */
+    public long getOversizedResponses(Operation operation) {
+        return operationMetrics.get(operation).oversizedResponses.sum();
+    }
+
+    public long getRequestBytes(Operation operation) {
+        return operationMetrics.get(operation).requestBytes.sum();
+    }
+
+    public long getResponseBytes(Operation operation) {
+        return operationMetrics.get(operation).responseBytes.sum();
+    }
+
+    private static final class OperationMetrics {
+
+        private final LatencyHistogram duration = new LatencyHistogram();
+        private final AtomicLongArray statusClasses = new AtomicLongArray(STATUS_CLASSES);
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder oversizedResponses = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Holds state per device and drops the state of devices that weren't used for the idle timeout,
+ * so long running processes don't keep the state of every device they ever talked to.
+ *
+ * An entry is only dropped if the evictable predicate accepts it, e.g. a mailbox without queued requests.
+ * Looking up an entry marks it as used in the same atomic step in which an eviction would remove it,
+ * so a value is never dropped while a caller is about to use it.
+ *
+ * @author Simon Weis
+ */
+class IdleEvictingMap<V> {
+
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction = new AtomicLong(System.nanoTime());
+    private final Predicate<V> evictable;
+    private volatile long idleTimeoutNanos;
+
+    /**
+     * @param idleTimeoutMs The time after which an unused entry is dropped
+     * @param evictable Tells if an idle value can be dropped
+     */
+    IdleEvictingMap(long idleTimeoutMs, Predicate<V> evictable) {
+
+        this.evictable = evictable;
+        setIdleTimeoutMs(idleTimeoutMs);
+    }
+
+    /**
+     * Returns the value of a device, creating it if there is none.
+     *
+     * @param key The device
+     * @param factory Creates a missing value
+     * @return The value
+     */
+    V get(String key, Function<String, V> factory) {
+
+        return get(key, value -> true, factory);
+    }
+
+    /**
+     * Returns the value of a device, replacing it if there is none or the existing one is not reusable.
+     *
+     * @param key The device
+     * @param reusable Tells if an existing value can be returned
+     * @param factory Creates a new value
+     * @return The value
+     */
+    V get(String key, Predicate<V> reusable, Function<String, V> factory) {
+
+        long now = System.nanoTime();
+
+        evictIdleEntries(now);
+
+        return entries.compute(key, (ignored, existing) -> {
+
+            if (existing != null && reusable.test(existing.value)) {
+
+                existing.lastUsed = now;
+                return existing;
+            }
+
+            return new Entry<>(factory.apply(key), now);
+
+        }).value;
+    }
+
+    void setIdleTimeoutMs(long idleTimeoutMs) {
+
+        if (idleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("The idle timeout must be positive");
+        }
+
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes idle entries, at most once per half idle timeout. Only the thread that
+     * claims the next eviction run iterates the entries, all others return immediately.
+     */
+    private void evictIdleEntries(long now) {
+
+        long scheduled = nextEviction.get();
+        long timeout = idleTimeoutNanos;
+
+        if (now - scheduled < 0 || !nextEviction.compareAndSet(scheduled, now + timeout / 2)) {
+            return;
+        }
+
+        for (String key : entries.keySet()) {
+
+            entries.computeIfPresent(key, (ignored, entry) ->
+                    now - entry.lastUsed > timeout && evictable.test(entry.value) ? null : entry);
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private long lastUsed;
+
+        private Entry(V value, long lastUsed) {
+
+            this.value = value;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram with logarithmic buckets for non negative values like latencies.
+ *
+ * Values below 64 are counted exactly, larger values in 32 linear buckets per power of two,
+ * so every reported value is within about 3% of the recorded one. Recording doesn't allocate.
+ *
+ * @author Simon Weis
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT_LIMIT = SUB_BUCKET_COUNT << 1;
+    private static final int EXACT_LIMIT_BITS = SUB_BUCKET_BITS + 1;
+    private static final int BUCKET_COUNT = EXACT_LIMIT + (63 - EXACT_LIMIT_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalSum = new LongAdder();
+    private final LongAccumulator minValue = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator maxValue = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     *
+     * @param value The value to record
+     */
+    public void record(long value) {
+
+        long normalized = Math.max(0, value);
+
+        counts.incrementAndGet(bucketOf(normalized));
+        totalCount.increment();
+        totalSum.add(normalized);
+        minValue.accumulate(normalized);
+        maxValue.accumulate(normalized);
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        totalCount.reset();
+        totalSum.reset();
+        minValue.reset();
+        maxValue.reset();
+    }
+
+    /**
+     * Returns a copy of the current state. Values recorded concurrently may or may not be included.
+     *
+     * @return An immutable snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = counts.get(i);
+            count += bucketCounts[i];
+        }
+
+        return new Snapshot(bucketCounts, count, totalSum.sum(), minValue.get(), maxValue.get());
+    }
+
+    static int bucketOf(long value) {
+
+        if (value < EXACT_LIMIT) {
+            return (int) value;
+        }
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+
+        return EXACT_LIMIT + (highestBit - EXACT_LIMIT_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueOf(int bucket) {
+
+        if (bucket < EXACT_LIMIT) {
+            return bucket;
+        }
+
+        int highestBit = (bucket - EXACT_LIMIT) / SUB_BUCKET_COUNT + EXACT_LIMIT_BITS;
+        int subBucket = (bucket - EXACT_LIMIT) % SUB_BUCKET_COUNT;
+        int shift = highestBit - SUB_BUCKET_BITS;
+
+        long lowestValue = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+
+        return lowestValue + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    public static final class Snapshot {
+
+        private final long[] bucketCounts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] bucketCounts, long count, long sum, long min, long max) {
+
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sum = sum;
+            this.min = count == 0 ? 0 : min;
+            this.max = count == 0 ? 0 : max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns the value at a percentile.
+         *
+         * @param percentile The percentile between 0 and 100, e.g. 99.9
+         * @return The highest value that is equivalent to the value at the percentile or 0 if the snapshot is empty
+         */
+        public long getValueAtPercentile(double percentile) {
+
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+            long seen = 0;
+
+            for (int i = 0; i < bucketCounts.length; i++) {
+
+                seen += bucketCounts[i];
+
+                if (seen >= rank) {
+                    return Math.min(max, highestValueOf(i));
+                }
+            }
+
+            return max;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A minimal http server on the loopback interface that serves the responses of a {@link Handler}.
+ * It understands just enough HTTP/1.1 for the client: keep-alive connections and request bodies
+ * with a Content-Length. Every connection is served by its own thread, so a handler may block
+ * to delay its response.
+ *
+ * @author Simon Weis
+ */
+class LoopbackHttpServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(LoopbackHttpServer.class.getName());
+
+    private static final String CONTENT_LENGTH = "content-length:";
+
+    private final Handler handler;
+    private final ThreadFactory threadFactory;
+    private final ServerSocket serverSocket;
+    private final String baseUrl;
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Thread acceptor;
+
+    /**
+     * @param threadName The name of the server threads
+     * @param handler Answers the requests
+     * @throws IOException If the server socket can't be bound
+     */
+    LoopbackHttpServer(String threadName, Handler handler) throws IOException {
+
+        InetAddress loopbackAddress = InetAddress.getLoopbackAddress();
+        String host = loopbackAddress instanceof Inet6Address
+                ? "[" + loopbackAddress.getHostAddress() + "]"
+                : loopbackAddress.getHostAddress();
+
+        this.handler = handler;
+        this.threadFactory = new DaemonThreadFactory(threadName);
+        this.serverSocket = new ServerSocket(0, 50, loopbackAddress);
+        this.baseUrl = "http://" + host + ":" + serverSocket.getLocalPort();
+        this.acceptor = threadFactory.newThread(this::accept);
+        this.acceptor.start();
+    }
+
+    /**
+     * @return The url of the server without a trailing slash
+     */
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return The number of requests that were answered
+     */
+    int getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        serverSocket.close();
+
+        for (Socket connection : connections) {
+            connection.close();
+        }
+
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+
+        try {
+            while (true) {
+
+                Socket connection = serverSocket.accept();
+                connections.add(connection);
+                threadFactory.newThread(() -> serve(connection)).start();
+            }
+        } catch (IOException e) {
+
+            if (!serverSocket.isClosed()) {
+                LOGGER.log(Level.WARNING, "Loopback server stopped", e);
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+
+        try (Socket socket = connection) {
+
+            socket.setTcpNoDelay(true);
+
+            InputStream inputStream = new BufferedInputStream(socket.getInputStream());
+            OutputStream outputStream = socket.getOutputStream();
+            String requestLine;
+
+            while ((requestLine = readLine(inputStream)) != null) {
+
+                long contentLength = 0;
+                String header;
+
+                while ((header = readLine(inputStream)) != null && !header.isEmpty()) {
+
+                    if (header.toLowerCase(Locale.ROOT).startsWith(CONTENT_LENGTH)) {
+                        contentLength = Long.parseLong(header.substring(CONTENT_LENGTH.length()).trim());
+                    }
+                }
+
+                if (inputStream.skip(contentLength) < contentLength) {
+                    return;
+                }
+
+                String[] parts = requestLine.split(" ");
+                Response response = handler.handle(parts[0], parts.length > 1 ? parts[1] : "/");
+
+                if (response == null) {
+                    return;
+                }
+
+                outputStream.write(response.toBytes());
+                outputStream.flush();
+                requests.incrementAndGet();
+            }
+
+        } catch (IOException | RuntimeException e) {
+
+            LOGGER.log(Level.FINE, "Loopback connection failed", e);
+
+        } finally {
+
+            connections.remove(connection);
+        }
+    }
+
+    private static String readLine(InputStream inputStream) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = inputStream.read()) != -1) {
+
+            if (c == '\n') {
+
+                int length = line.length();
+                return length > 0 && line.charAt(length - 1) == '\r' ? line.substring(0, length - 1) : line.toString();
+            }
+
+            line.append((char) c);
+        }
+
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    /**
+     * Answers the requests of the server.
+     */
+    interface Handler {
+
+        /**
+         * @param method The request method
+         * @param target The path and query of the request
+         * @return The response, or null to close the connection without one
+         * @throws IOException To close the connection without a response
+         */
+        Response handle(String method, String target) throws IOException;
+    }
+
+    /**
+     * A complete response, sent with a Content-Length.
+     */
+    static final class Response {
+
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        Response(int status, Map<String, String> headers, byte[] body) {
+
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        Response(int status) {
+            this(status, Collections.emptyMap(), new byte[0]);
+        }
+
+        private byte[] toBytes() {
+
+            StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason(status)).append("\r\n");
+            headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+            head.append("Content-Length: ").append(body.length).append("\r\n\r\n");
+
+            byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+            ByteArrayOutputStream response = new ByteArrayOutputStream(headBytes.length + body.length);
+            response.write(headBytes, 0, headBytes.length);
+            response.write(body, 0, body.length);
+
+            return response.toByteArray();
+        }
+
+        // The client reads only the code, the reason phrase may be empty
+        private static String reason(int status) {
+
+            switch (status) {
+                case 200:
+                    return "OK";
+                case 201:
+                    return "Created";
+                case 404:
+                    return "Not Found";
+                default:
+                    return "";
+            }
+        }
+    }
+}
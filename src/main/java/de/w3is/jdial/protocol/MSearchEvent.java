@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author Simon Weis
+ */
+@Name("de.w3is.jdial.MSearch")
+@Label("SSDP M-SEARCH")
+@Description("An M-SEARCH request and its listen window")
+@Category({"jdial", "Discovery"})
+@Enabled(false)
+@StackTrace(false)
+class MSearchEvent extends Event {
+
+    @Label("Search Target")
+    String searchTarget;
+
+    @Label("Responses")
+    int responses;
+
+    @Label("Devices")
+    int devices;
+
+    @Label("Filtered")
+    @Description("Datagrams without the dial search target")
+    int filtered;
+
+    @Label("Queue Overflows")
+    @Description("Dial datagrams dropped because the parser couldn't keep up")
+    int queueOverflows;
+
+    @Label("Host Kernel Drops")
+    @Description("Udp datagrams the system dropped for all sockets of the host during the search, -1 if unknown")
+    long kernelDrops;
+}
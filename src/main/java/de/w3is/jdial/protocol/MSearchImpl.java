@@ -20,12 +20,19 @@ package de.w3is.jdial.protocol;
 import de.w3is.jdial.model.DialServer;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,8 +43,9 @@ class MSearchImpl implements MSearch {
 
     private static final Logger LOGGER = Logger.getLogger(MSearchImpl.class.getName());
 
-    private static final String MULTICAST_IP = "239.255.255.250";
-    private static final int MULTICAST_PORT = 1900;
+    static final String MULTICAST_IP = "239.255.255.250";
+    static final int MULTICAST_PORT = 1900;
+    static final List<String> IPV6_MULTICAST_IPS = Collections.unmodifiableList(Arrays.asList("FF02::C", "FF05::C"));
 
     private static final String SEARCH_TARGET_HEADER_VALUE = "urn:dial-multiscreen-org:service:dial:1";
     private static final String SEARCH_TARGET_HEADER = "ST";
@@ -48,69 +56,497 @@ class MSearchImpl implements MSearch {
     private static final String WOL_MAC = "MAC";
     private static final String WOL_TIMEOUT = "TIMEOUT";
 
-    private final String msearchRequest;
-    private final int socketTimeoutMs;
-
-    MSearchImpl(int responseDelay, int socketTimeoutMs) {
+    private static final byte[] SEARCH_TARGET_BYTES = SEARCH_TARGET_HEADER_VALUE.getBytes(StandardCharsets.US_ASCII);
+    private static final int IPV6_HOP_LIMIT = 2;
+    private static final ThreadFactory RECEIVER_THREADS = new DaemonThreadFactory("jdial-ssdp-receiver");
 
-        this.msearchRequest = "M-SEARCH * HTTP/1.1\r\n" +
-                "HOST: " + MULTICAST_IP + ":" + MULTICAST_PORT + "\r\n" +
-                "MAN: \"ssdp:discover\"\r\n" +
-                "MX: " + responseDelay + "\r\n" +
-                SEARCH_TARGET_HEADER + ": " + SEARCH_TARGET_HEADER_VALUE + "\r\n" +
-                "USER-AGENT: OS/version product/version\r\n\r\n";
+    private final int responseDelay;
+    private final int socketTimeoutMs;
+    private final String searchAddress;
+    private final int searchPort;
+    private final List<String> ipv6SearchAddresses;
+    private final int receiveBufferBytes;
+    private final int queueCapacity;
+    private final int maxDatagramBytes;
+    private final ProtocolListener protocolListener;
+    private final TrafficRecorder trafficRecorder;
+    private final AdaptiveDiscovery adaptiveDiscovery;
+
+    MSearchImpl(int responseDelay, int socketTimeoutMs, ProtocolListener protocolListener) {
+        this(ProtocolConfiguration.builder().mSearchResponseDelay(responseDelay).socketTimeoutMs(socketTimeoutMs)
+                .protocolListener(protocolListener).build(), null);
+    }
 
-        this.socketTimeoutMs = socketTimeoutMs;
+    /*
+     * A unicast search address in the configuration is used to search a single host,
+     * for example a simulator on the loopback interface. With IPv6 discovery the IPv6
+     * addresses are searched at the same time.
+     *
+     * With an adaptive discovery the response delay is taken from it and the
+     * window closes as soon as the devices went quiet.
+     */
+    MSearchImpl(ProtocolConfiguration configuration, AdaptiveDiscovery adaptiveDiscovery) {
+
+        this.responseDelay = configuration.getMSearchResponseDelay();
+        this.socketTimeoutMs = configuration.getSocketTimeoutMs();
+        this.searchAddress = configuration.getMSearchAddress();
+        this.searchPort = configuration.getMSearchPort();
+        this.ipv6SearchAddresses = configuration.isIpv6Discovery()
+                ? configuration.getMSearchIpv6Addresses()
+                : Collections.emptyList();
+        this.receiveBufferBytes = configuration.getMSearchReceiveBufferBytes();
+        this.queueCapacity = configuration.getMSearchQueueCapacity();
+        this.maxDatagramBytes = configuration.getMSearchMaxDatagramBytes();
+        this.protocolListener = configuration.getProtocolListener();
+        this.trafficRecorder = configuration.getTrafficRecorder();
+        this.adaptiveDiscovery = adaptiveDiscovery;
     }
 
+    /*
+     * Every socket has a receiver thread, which only reads datagrams and drops the ones without the dial
+     * search target, so the socket buffers are drained as fast as possible during a storm of responses.
+     * The remaining datagrams of all sockets are parsed on the calling thread in one listen window.
+     */
     @Override
     public List<DialServer> sendAndReceive() throws IOException {
 
-        InetAddress inetAddress = InetAddress.getByName(MULTICAST_IP);
+        InetAddress inetAddress = InetAddress.getByName(searchAddress);
+        int responseDelay = adaptiveDiscovery != null ? adaptiveDiscovery.responseDelay() : this.responseDelay;
 
-        byte[] requestBuffer = msearchRequest.getBytes(StandardCharsets.UTF_8);
+        BlockingQueue<DatagramPacket> packets = new ArrayBlockingQueue<>(queueCapacity);
+        List<Receiver> receivers = new ArrayList<>();
+        List<Thread> receiverThreads = new ArrayList<>();
 
-        DatagramPacket requestPacket = new DatagramPacket(requestBuffer, requestBuffer.length, inetAddress, MULTICAST_PORT);
+        try {
 
-        try (MulticastSocket socket = new MulticastSocket(MULTICAST_PORT)) {
-            socket.setReuseAddress(true);
-            socket.setSoTimeout(socketTimeoutMs);
-            socket.joinGroup(inetAddress);
+            MSearchEvent mSearchEvent = new MSearchEvent();
+            mSearchEvent.begin();
+
+            long kernelDropsBefore = UdpStatistics.receiveBufferErrors();
+            long sendStart = System.nanoTime();
+
+            MulticastSocket socket = createSocket(inetAddress);
+            receivers.add(new Receiver(socket, packets));
+            send(socket, inetAddress, searchAddress, responseDelay);
 
-            LOGGER.log(Level.FINE, "Send M-SEARCH request");
-            socket.send(requestPacket);
+            if (!ipv6SearchAddresses.isEmpty()) {
+                sendIpv6(receivers, packets, responseDelay);
+            }
+
+            long sentAt = System.nanoTime();
+
+            if (trafficRecorder != null) {
+                trafficRecorder.searchSent();
+            }
+
+            for (Receiver receiver : receivers) {
+
+                receiver.sentAt = sentAt;
+                Thread receiverThread = RECEIVER_THREADS.newThread(receiver);
+                receiverThread.start();
+                receiverThreads.add(receiverThread);
+            }
+
+            AdaptiveDiscovery.Window window = adaptiveDiscovery != null
+                    ? adaptiveDiscovery.openWindow(responseDelay, sentAt)
+                    : null;
 
             Map<String, DialServer> discoveredDevicesByNames = new HashMap<>();
 
             try {
                 while (true) {
 
-                    byte[] responseBuffer = new byte[1024];
-                    DatagramPacket responsePacket = new DatagramPacket(responseBuffer, responseBuffer.length);
-                    socket.receive(responsePacket);
+                    long timeoutMs = socketTimeoutMs;
+
+                    if (window != null) {
+
+                        timeoutMs = window.remainingMs(System.nanoTime());
+
+                        if (timeoutMs <= 0) {
+                            break;
+                        }
+                    }
+
+                    DatagramPacket responsePacket = packets.poll(timeoutMs, TimeUnit.MILLISECONDS);
+
+                    if (responsePacket == null) {
+
+                        LOGGER.log(Level.FINER, "No further responses");
+                        break;
+                    }
+
+                    SsdpPacketEvent packetEvent = new SsdpPacketEvent();
+                    packetEvent.begin();
 
                     DialServer dialServer = toServer(responsePacket);
+                    String dropReason = null;
+
+                    if (dialServer == null) {
 
-                    if (dialServer != null) {
-                        if (!discoveredDevicesByNames.containsKey(dialServer.getUniqueServiceName())) {
-                            LOGGER.log(Level.FINE, "Found device: " + dialServer);
+                        dropReason = "Unrelated or incomplete";
+                    } else if (discoveredDevicesByNames.containsKey(dialServer.getUniqueServiceName())) {
+
+                        DialServer known = discoveredDevicesByNames.get(dialServer.getUniqueServiceName());
+
+                        if (isIpv6(known) && !isIpv6(dialServer)) {
+
+                            LOGGER.log(Level.FINE, "Prefer the IPv4 location of device: " + dialServer);
                             discoveredDevicesByNames.put(dialServer.getUniqueServiceName(), dialServer);
+                        } else {
+
+                            dropReason = "Duplicate";
+                        }
+                    } else {
+
+                        LOGGER.log(Level.FINE, "Found device: " + dialServer);
+                        discoveredDevicesByNames.put(dialServer.getUniqueServiceName(), dialServer);
+
+                        if (window != null) {
+                            window.deviceFound(System.nanoTime());
                         }
                     }
 
+                    packetEvent.end();
+
+                    if (packetEvent.shouldCommit()) {
+                        commitPacketEvent(packetEvent, responsePacket, dialServer, dropReason);
+                    }
                 }
-            } catch (SocketTimeoutException e) {
 
-                LOGGER.log(Level.FINER, "Socket timed out: ", e);
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for M-SEARCH responses");
+
+            } finally {
+
+                closeAll(receivers);
+                receiverThreads.forEach(MSearchImpl::joinUninterruptibly);
+            }
+
+            long kernelDrops = kernelDropsBefore >= 0
+                    ? Math.max(0, UdpStatistics.receiveBufferErrors() - kernelDropsBefore)
+                    : -1;
+
+            long firstResponseNanos = -1;
+            long lastResponseNanos = -1;
+            int responses = 0;
+            int filtered = 0;
+            int overflows = 0;
+
+            for (Receiver receiver : receivers) {
+
+                if (receiver.firstResponseNanos != -1) {
+                    firstResponseNanos = firstResponseNanos == -1
+                            ? receiver.firstResponseNanos
+                            : Math.min(firstResponseNanos, receiver.firstResponseNanos);
+                }
+
+                lastResponseNanos = Math.max(lastResponseNanos, receiver.lastResponseNanos);
+                responses += receiver.responses;
+                filtered += receiver.filtered;
+                overflows += receiver.overflows;
+            }
+
+            if (adaptiveDiscovery != null) {
+                adaptiveDiscovery.sweepCompleted(discoveredDevicesByNames.size());
+            }
+
+            if (overflows > 0) {
+                LOGGER.log(Level.WARNING, "Lost " + overflows + " M-SEARCH responses that exceeded the queue");
+            }
+
+            // RcvbufErrors counts the drops of every socket on the host, so it doesn't prove a loss of this search
+            if (kernelDrops > 0) {
+                LOGGER.log(Level.FINE, "The system dropped " + kernelDrops
+                        + " udp datagrams of all sockets during the search");
+            }
+
+            protocolListener.mSearchPacketsDropped(filtered, overflows, kernelDrops);
+            protocolListener.mSearchCompleted(System.nanoTime() - sendStart, firstResponseNanos,
+                    lastResponseNanos, responses, discoveredDevicesByNames.size());
+
+            mSearchEvent.end();
+
+            if (mSearchEvent.shouldCommit()) {
+
+                mSearchEvent.searchTarget = SEARCH_TARGET_HEADER_VALUE;
+                mSearchEvent.responses = responses;
+                mSearchEvent.devices = discoveredDevicesByNames.size();
+                mSearchEvent.filtered = filtered;
+                mSearchEvent.queueOverflows = overflows;
+                mSearchEvent.kernelDrops = kernelDrops;
+                mSearchEvent.commit();
             }
 
             return new ArrayList<>(discoveredDevicesByNames.values());
+
+        } finally {
+
+            closeAll(receivers);
+        }
+    }
+
+    private void send(DatagramSocket socket, InetAddress inetAddress, String host, int responseDelay)
+            throws IOException {
+
+        byte[] requestBuffer = createRequest(host, responseDelay).getBytes(StandardCharsets.UTF_8);
+
+        LOGGER.log(Level.FINE, "Send M-SEARCH request to " + inetAddress.getHostAddress());
+
+        long sendStart = System.nanoTime();
+        socket.send(new DatagramPacket(requestBuffer, requestBuffer.length, inetAddress, searchPort));
+        protocolListener.mSearchSent(requestBuffer.length, System.nanoTime() - sendStart);
+    }
+
+    /*
+     * The IPv6 search is best effort, hosts without IPv6 connectivity keep searching with IPv4.
+     */
+    private void sendIpv6(List<Receiver> receivers, BlockingQueue<DatagramPacket> packets, int responseDelay) {
+
+        MulticastSocket socket;
+
+        try {
+
+            socket = createIpv6Socket();
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Can't open an IPv6 socket, searching with IPv4 only", e);
+            return;
+        }
+
+        receivers.add(new Receiver(socket, packets));
+
+        for (String ipv6SearchAddress : ipv6SearchAddresses) {
+
+            try {
+
+                send(socket, InetAddress.getByName(ipv6SearchAddress), ipv6SearchAddress, responseDelay);
+
+            } catch (IOException e) {
+
+                LOGGER.log(Level.FINE, "Can't send M-SEARCH request to " + ipv6SearchAddress, e);
+            }
         }
     }
 
-    private DialServer toServer(DatagramPacket packet) {
+    /*
+     * The HOST header carries the configured address as written, for example [FF02::C] instead of
+     * the expanded form InetAddress would print.
+     */
+    private String createRequest(String host, int responseDelay) {
 
-        String data = new String(packet.getData(), StandardCharsets.UTF_8);
+        String hostLiteral = host.indexOf(':') >= 0 && !host.startsWith("[") ? "[" + host + "]" : host;
+
+        return "M-SEARCH * HTTP/1.1\r\n" +
+                "HOST: " + hostLiteral + ":" + searchPort + "\r\n" +
+                "MAN: \"ssdp:discover\"\r\n" +
+                "MX: " + responseDelay + "\r\n" +
+                SEARCH_TARGET_HEADER + ": " + SEARCH_TARGET_HEADER_VALUE + "\r\n" +
+                "USER-AGENT: OS/version product/version\r\n\r\n";
+    }
+
+    private MulticastSocket createSocket(InetAddress inetAddress) throws IOException {
+
+        MulticastSocket socket;
+
+        if (!inetAddress.isMulticastAddress()) {
+
+            socket = new MulticastSocket();
+        } else {
+
+            socket = new MulticastSocket(MULTICAST_PORT);
+            socket.setReuseAddress(true);
+            socket.joinGroup(inetAddress);
+        }
+
+        if (receiveBufferBytes > 0) {
+
+            socket.setReceiveBufferSize(receiveBufferBytes);
+            LOGGER.log(Level.FINE, "Requested a receive buffer of " + receiveBufferBytes + " bytes, got "
+                    + socket.getReceiveBufferSize());
+        }
+
+        return socket;
+    }
+
+    /*
+     * The responses to a search are unicast, so the IPv6 socket doesn't need to join the groups.
+     */
+    private MulticastSocket createIpv6Socket() throws IOException {
+
+        MulticastSocket socket = new MulticastSocket(new InetSocketAddress(InetAddress.getByName("::"), 0));
+
+        try {
+
+            socket.setTimeToLive(IPV6_HOP_LIMIT);
+
+            if (receiveBufferBytes > 0) {
+                socket.setReceiveBufferSize(receiveBufferBytes);
+            }
+
+        } catch (IOException e) {
+
+            socket.close();
+            throw e;
+        }
+
+        return socket;
+    }
+
+    private static void closeAll(List<Receiver> receivers) {
+
+        for (Receiver receiver : receivers) {
+            receiver.socket.close();
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks the raw datagram for the dial search target without decoding it.
+     */
+    static boolean containsSearchTarget(byte[] data, int offset, int length) {
+
+        int last = offset + length - SEARCH_TARGET_BYTES.length;
+
+        outer:
+        for (int i = offset; i <= last; i++) {
+
+            for (int j = 0; j < SEARCH_TARGET_BYTES.length; j++) {
+
+                if (data[i + j] != SEARCH_TARGET_BYTES[j]) {
+                    continue outer;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /*
+     * Reads datagrams until the socket is closed into a queue shared by all receivers.
+     * The counters are read after the thread was joined.
+     */
+    private class Receiver implements Runnable {
+
+        private final DatagramSocket socket;
+        private final BlockingQueue<DatagramPacket> packets;
+
+        // Set before the thread starts
+        private long sentAt;
+
+        private long firstResponseNanos = -1;
+        private long lastResponseNanos = -1;
+        private int responses;
+        private int filtered;
+        private int overflows;
+
+        private Receiver(DatagramSocket socket, BlockingQueue<DatagramPacket> packets) {
+
+            this.socket = socket;
+            this.packets = packets;
+        }
+
+        @Override
+        public void run() {
+
+            // One byte more than allowed reveals datagrams that were truncated
+            byte[] buffer = new byte[maxDatagramBytes + 1];
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+            try {
+                while (true) {
+
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+
+                    lastResponseNanos = System.nanoTime() - sentAt;
+                    if (firstResponseNanos == -1) {
+                        firstResponseNanos = lastResponseNanos;
+                    }
+                    responses++;
+                    protocolListener.mSearchResponseReceived(packet.getLength(), lastResponseNanos);
+
+                    if (trafficRecorder != null) {
+                        trafficRecorder.datagramReceived(packet, lastResponseNanos);
+                    }
+
+                    if (packet.getLength() > maxDatagramBytes) {
+
+                        LOGGER.log(Level.FINE, "Drop oversized datagram from " + packet.getAddress());
+                        filtered++;
+                        continue;
+                    }
+
+                    if (!containsSearchTarget(buffer, 0, packet.getLength())) {
+
+                        filtered++;
+                        continue;
+                    }
+
+                    DatagramPacket copy = new DatagramPacket(Arrays.copyOf(buffer, packet.getLength()),
+                            packet.getLength(), packet.getSocketAddress());
+
+                    if (!packets.offer(copy)) {
+                        overflows++;
+                    }
+                }
+            } catch (IOException e) {
+
+                if (!socket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Failed to receive M-SEARCH responses", e);
+                }
+            }
+        }
+    }
+
+    private void commitPacketEvent(SsdpPacketEvent event, DatagramPacket packet, DialServer dialServer, String dropReason) {
+
+        event.source = packet.getAddress() != null ? packet.getAddress().getHostAddress() : null;
+        event.bytes = packet.getLength();
+        event.accepted = dropReason == null;
+        event.dropReason = dropReason;
+
+        if (dialServer != null) {
+            event.usn = dialServer.getUniqueServiceName();
+            event.location = String.valueOf(dialServer.getDeviceDescriptorUrl());
+            event.server = dialServer.getServerDescription();
+        }
+
+        event.commit();
+    }
+
+    /*
+     * A device that answers on both families is kept with its IPv4 location, so the result doesn't
+     * depend on which response arrived first.
+     */
+    private static boolean isIpv6(DialServer dialServer) {
+        return dialServer.getDeviceDescriptorUrl().getHost().startsWith("[");
+    }
+
+    DialServer toServer(DatagramPacket packet) {
+
+        String data = new String(packet.getData(), packet.getOffset(), packet.getLength(), StandardCharsets.UTF_8);
 
         if (!data.contains(SEARCH_TARGET_HEADER_VALUE)) {
 
@@ -118,7 +554,7 @@ class MSearchImpl implements MSearch {
             return null;
         }
 
-        String[] dataRows = data.split("\n");
+        String[] dataRows = data.split("\r?\n");
         DialServer dialServer = new DialServer();
 
         for (String row : dataRows) {
@@ -128,10 +564,11 @@ class MSearchImpl implements MSearch {
             if (headerParts.length == 2) {
 
                 String headerName = headerParts[0].toUpperCase();
+                headerParts[1] = headerParts[1].trim();
 
                 switch (headerName) {
                     case LOCATION_HEADER:
-                        parseDeviceDescriptorUrl(dialServer, headerParts[1]);
+                        parseDeviceDescriptorUrl(dialServer, withScope(headerParts[1], packet.getAddress()));
                         break;
                     case USN_HEADER:
                         dialServer.setUniqueServiceName(headerParts[1]);
@@ -159,6 +596,34 @@ class MSearchImpl implements MSearch {
         }
     }
 
+    /*
+     * A link-local location is only reachable through the interface the response arrived on,
+     * so the zone of the sender is added when the device didn't send one.
+     */
+    static String withScope(String location, InetAddress sender) {
+
+        if (!(sender instanceof Inet6Address) || !sender.isLinkLocalAddress()) {
+            return location;
+        }
+
+        String senderAddress = sender.getHostAddress();
+        int zoneStart = senderAddress.indexOf('%');
+        int hostStart = location.indexOf("://[");
+        int hostEnd = location.indexOf(']', hostStart + 1);
+
+        if (zoneStart < 0 || hostStart < 0 || hostEnd < 0) {
+            return location;
+        }
+
+        String host = location.substring(hostStart + 4, hostEnd);
+
+        if (host.indexOf('%') >= 0 || !host.toLowerCase().startsWith("fe80:")) {
+            return location;
+        }
+
+        return location.substring(0, hostEnd) + senderAddress.substring(zoneStart) + location.substring(hostEnd);
+    }
+
     private void parseDeviceDescriptorUrl(DialServer dialServer, String headerPart) {
         try {
             dialServer.setDeviceDescriptorUrl(new URL(headerPart));
@@ -183,7 +648,7 @@ class MSearchImpl implements MSearch {
                         dialServer.setWakeOnLanSupport(true);
                         break;
                     case WOL_TIMEOUT:
-                        dialServer.setWakeOnLanTimeout(Integer.parseInt(wolHeader[1]));
+                        parseWolTimeout(dialServer, wolHeader[1]);
                         break;
                     default:
                         LOGGER.log(Level.FINE, "Ignore unknown wol header: " + wolHeader[0]);
@@ -191,4 +656,12 @@ class MSearchImpl implements MSearch {
             }
         }
     }
+
+    private void parseWolTimeout(DialServer dialServer, String timeout) {
+        try {
+            dialServer.setWakeOnLanTimeout(Integer.parseInt(timeout.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.FINE, "Server provided malformed wol timeout: " + timeout);
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.Operation;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Reports the outcome of a single http request to the ProtocolListener and the flight recorder.
+ *
+ * @author Simon Weis
+ */
+final class OperationTrace {
+
+    private final ProtocolListener protocolListener;
+    private final Operation operation;
+    private final URL url;
+    private final HttpRequestEvent event;
+    private final long start;
+
+    private OperationTrace(ProtocolListener protocolListener, Operation operation, URL url) {
+
+        this.protocolListener = protocolListener;
+        this.operation = operation;
+        this.url = url;
+        this.event = operation == Operation.DEVICE_DESCRIPTOR ? new DescriptorFetchEvent() : new ApplicationOperationEvent();
+        this.start = System.nanoTime();
+
+        event.begin();
+    }
+
+    static OperationTrace start(ProtocolListener protocolListener, Operation operation, URL url) {
+
+        return new OperationTrace(protocolListener, operation, url);
+    }
+
+    void completed(int statusCode, long requestBytes, long responseBytes) {
+
+        event.end();
+        protocolListener.requestCompleted(operation, url, statusCode, requestBytes, responseBytes, elapsedNanos());
+
+        if (event.shouldCommit()) {
+
+            describeEvent();
+            event.statusCode = statusCode;
+            event.requestBytes = requestBytes;
+            event.responseBytes = responseBytes;
+            event.commit();
+        }
+    }
+
+    void failed(IOException exception) {
+
+        event.end();
+        protocolListener.requestFailed(operation, url, elapsedNanos(), exception);
+
+        if (event.shouldCommit()) {
+
+            describeEvent();
+            event.responseBytes = -1;
+            event.failure = exception.toString();
+            event.commit();
+        }
+    }
+
+    long elapsedNanos() {
+
+        return System.nanoTime() - start;
+    }
+
+    private void describeEvent() {
+
+        event.operation = operation.name();
+        event.url = url.toExternalForm();
+        event.authority = url.getAuthority();
+    }
+}
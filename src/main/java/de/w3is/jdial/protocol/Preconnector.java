@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.Operation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opens a keep-alive connection to the application resource of a device in the background,
+ * so the first application request doesn't wait for the tcp connect. The request takes a permit
+ * of the rate limit of the device like any other request.
+ *
+ * The JDK parks idle http connections per host and port in its keep-alive cache, where any later
+ * request to the device picks them up. A connection stays parked as long as the Keep-Alive header
+ * of the device allows, or five seconds without the header.
+ *
+ * @author Simon Weis
+ */
+class Preconnector {
+
+    private static final Logger LOGGER = Logger.getLogger(Preconnector.class.getName());
+
+    private static final int THREADS = 4;
+    private static final int DISCARD_BUFFER_SIZE = 4096;
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private Preconnector() {
+    }
+
+    /**
+     * @return A future that completes when the connection was parked, or exceptionally if the request failed
+     */
+    static CompletableFuture<Void> preconnect(ApplicationResourceImpl applicationResource) {
+
+        return CompletableFuture.runAsync(() -> {
+
+            try {
+                request(applicationResource);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Preconnect to " + applicationResource.getRootUrl() + " failed", e);
+                throw new CompletionException(e);
+            }
+
+        }, EXECUTOR);
+    }
+
+    private static void request(ApplicationResourceImpl applicationResource) throws IOException {
+
+        OperationTrace trace = OperationTrace.start(applicationResource.getProtocolListener(), Operation.PRECONNECT,
+                applicationResource.getRootUrl());
+
+        try {
+
+            if (applicationResource.getRequestPermits() != null) {
+                applicationResource.getRequestPermits().acquire();
+            }
+
+            HttpURLConnection connection = (HttpURLConnection) applicationResource.getRootUrl().openConnection();
+            connection.setConnectTimeout(applicationResource.getConnectionTimeout());
+            connection.setReadTimeout(applicationResource.getReadTimeout());
+
+            int code = connection.getResponseCode();
+
+            // Only a completely read body returns the connection to the keep-alive cache
+            InputStream body = code < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream()
+                    : connection.getErrorStream();
+
+            long bytes = body != null ? discard(body, applicationResource.getMaxApplicationBytes()) : 0;
+            trace.completed(code, 0, bytes);
+
+        } catch (IOException e) {
+
+            trace.failed(e);
+            throw e;
+        }
+    }
+
+    private static long discard(InputStream body, long maxBytes) throws IOException {
+
+        try (BoundedInputStream inputStream = new BoundedInputStream(body, maxBytes)) {
+
+            byte[] buffer = new byte[DISCARD_BUFFER_SIZE];
+
+            while (inputStream.read(buffer, 0, buffer.length) != -1) {
+                // The content is not needed
+            }
+
+            return inputStream.getCount();
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("jdial-preconnect"));
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.RateLimitMode;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * The immutable configuration of a {@link ProtocolFactoryImpl}.
+ *
+ * Instances can be shared between threads without synchronization.
+ * Use {@code toBuilder()} to derive a changed configuration. The builder rejects negative timeouts,
+ * a hedge delay percentile outside of (0, 1] and a negative hedge budget with an {@link IllegalArgumentException}.
+ *
+ * @author Simon Weis
+ */
+@Value
+@Builder(toBuilder = true)
+public class ProtocolConfiguration {
+
+    public static final ProtocolConfiguration DEFAULT = builder().build();
+
+    // Don't send the dial version and friendly name query parameters
+    boolean legacyCompatibility;
+
+    @Builder.Default
+    int httpClientReadTimeoutMs = 1500;
+
+    @Builder.Default
+    int httpClientConnectionTimeoutMs = 1500;
+
+    // How long the M-SEARCH waits for further responses
+    @Builder.Default
+    int socketTimeoutMs = 1500;
+
+    @Builder.Default
+    int mSearchResponseDelay = 1;
+
+    @Builder.Default
+    String mSearchAddress = MSearchImpl.MULTICAST_IP;
+
+    // The requested SO_RCVBUF of the M-SEARCH socket, the system may grant less. Zero keeps the system default
+    @Builder.Default
+    int mSearchReceiveBufferBytes = 1024 * 1024;
+
+    // Received dial responses waiting to be parsed, further responses are dropped
+    @Builder.Default
+    int mSearchQueueCapacity = 4096;
+
+    @Builder.Default
+    int mSearchPort = MSearchImpl.MULTICAST_PORT;
+
+    // Also search the IPv6 addresses in the same listen window
+    boolean ipv6Discovery;
+
+    // The link-local and site-local SSDP groups by default
+    @Builder.Default
+    List<String> mSearchIpv6Addresses = MSearchImpl.IPV6_MULTICAST_IPS;
+
+    // Close the M-SEARCH window once the devices went quiet and derive MX from the previous sweep
+    boolean adaptiveDiscovery;
+
+    // The shortest quiet period that closes an adaptive discovery window
+    @Builder.Default
+    int adaptiveDiscoveryMinQuietMs = 200;
+
+    // The highest MX an adaptive discovery sends, UPnP allows up to five seconds
+    @Builder.Default
+    int adaptiveDiscoveryMaxResponseDelay = 5;
+
+    // The rate of M-SEARCH responses an adaptive discovery spreads the fleet to
+    @Builder.Default
+    int adaptiveDiscoveryResponsesPerSecond = 100;
+
+    // Responses with a larger body are rejected while they are read
+    @Builder.Default
+    int maxDescriptorBytes = 64 * 1024;
+
+    @Builder.Default
+    int maxApplicationBytes = 64 * 1024;
+
+    // Limits of the xml parser for descriptor and application responses
+    @Builder.Default
+    int maxXmlElementDepth = 32;
+
+    @Builder.Default
+    int maxXmlNameLength = 256;
+
+    // Larger M-SEARCH responses are dropped, so the receive buffer has a fixed size
+    @Builder.Default
+    int mSearchMaxDatagramBytes = 2048;
+
+    // Hedging of application status requests
+    boolean hedgedRequests;
+
+    @Builder.Default
+    double hedgeDelayPercentile = 0.95;
+
+    @Builder.Default
+    int hedgeMinDelayMs = 50;
+
+    @Builder.Default
+    double hedgeBudgetRatio = 0.1;
+
+    // Timeouts derived from the round trip time observed per device
+    boolean adaptiveTimeouts;
+
+    @Builder.Default
+    int adaptiveTimeoutFloorMs = 100;
+
+    @Builder.Default
+    int adaptiveTimeoutCeilingMs = 5000;
+
+    // Send the requests to a device one after another and merge superseded commands
+    boolean serializedCommands;
+
+    // The round trip, mailbox and rate limit state of a device is dropped after it wasn't used for this time
+    @Builder.Default
+    long deviceStateIdleTimeoutMs = 600_000;
+
+    // Application requests per second and device host, zero disables the rate limit
+    double rateLimitPerSecond;
+
+    // Requests a device host may receive at once after an idle period
+    @Builder.Default
+    int rateLimitBurst = 2;
+
+    @Builder.Default
+    RateLimitMode rateLimitMode = RateLimitMode.QUEUE;
+
+    // The longest time a request waits for a permit in queue mode
+    @Builder.Default
+    int rateLimitMaxWaitMs = 1000;
+
+    // Observer of all protocol operations
+    @Builder.Default
+    ProtocolListener protocolListener = ProtocolListener.NONE;
+
+    // Writes the received datagrams and http exchanges to a file, if set
+    TrafficRecorder trafficRecorder;
+
+    // Called by the builder, rejects values the protocol can't work with
+    private ProtocolConfiguration(boolean legacyCompatibility,
+                                  int httpClientReadTimeoutMs,
+                                  int httpClientConnectionTimeoutMs,
+                                  int socketTimeoutMs,
+                                  int mSearchResponseDelay,
+                                  String mSearchAddress,
+                                  int mSearchReceiveBufferBytes,
+                                  int mSearchQueueCapacity,
+                                  int mSearchPort,
+                                  boolean ipv6Discovery,
+                                  List<String> mSearchIpv6Addresses,
+                                  boolean adaptiveDiscovery,
+                                  int adaptiveDiscoveryMinQuietMs,
+                                  int adaptiveDiscoveryMaxResponseDelay,
+                                  int adaptiveDiscoveryResponsesPerSecond,
+                                  int maxDescriptorBytes,
+                                  int maxApplicationBytes,
+                                  int maxXmlElementDepth,
+                                  int maxXmlNameLength,
+                                  int mSearchMaxDatagramBytes,
+                                  boolean hedgedRequests,
+                                  double hedgeDelayPercentile,
+                                  int hedgeMinDelayMs,
+                                  double hedgeBudgetRatio,
+                                  boolean adaptiveTimeouts,
+                                  int adaptiveTimeoutFloorMs,
+                                  int adaptiveTimeoutCeilingMs,
+                                  boolean serializedCommands,
+                                  long deviceStateIdleTimeoutMs,
+                                  double rateLimitPerSecond,
+                                  int rateLimitBurst,
+                                  RateLimitMode rateLimitMode,
+                                  int rateLimitMaxWaitMs,
+                                  ProtocolListener protocolListener,
+                                  TrafficRecorder trafficRecorder) {
+
+        requireNotNegative(httpClientReadTimeoutMs, "http client read timeout");
+        requireNotNegative(httpClientConnectionTimeoutMs, "http client connection timeout");
+        requireNotNegative(socketTimeoutMs, "socket timeout");
+        requireNotNegative(adaptiveDiscoveryMinQuietMs, "adaptive discovery quiet period");
+        requireNotNegative(hedgeMinDelayMs, "minimal hedge delay");
+        requireNotNegative(adaptiveTimeoutFloorMs, "adaptive timeout floor");
+        requireNotNegative(adaptiveTimeoutCeilingMs, "adaptive timeout ceiling");
+        requireNotNegative(rateLimitMaxWaitMs, "rate limit wait");
+
+        if (deviceStateIdleTimeoutMs <= 0) {
+            throw new IllegalArgumentException("The device state idle timeout must be positive");
+        }
+
+        if (!(hedgeDelayPercentile > 0 && hedgeDelayPercentile <= 1)) {
+            throw new IllegalArgumentException("The hedge delay percentile must be in (0, 1]");
+        }
+
+        if (!(hedgeBudgetRatio >= 0)) {
+            throw new IllegalArgumentException("The hedge budget ratio must not be negative");
+        }
+
+        this.legacyCompatibility = legacyCompatibility;
+        this.httpClientReadTimeoutMs = httpClientReadTimeoutMs;
+        this.httpClientConnectionTimeoutMs = httpClientConnectionTimeoutMs;
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.mSearchResponseDelay = mSearchResponseDelay;
+        this.mSearchAddress = mSearchAddress;
+        this.mSearchReceiveBufferBytes = mSearchReceiveBufferBytes;
+        this.mSearchQueueCapacity = mSearchQueueCapacity;
+        this.mSearchPort = mSearchPort;
+        this.ipv6Discovery = ipv6Discovery;
+        this.mSearchIpv6Addresses = List.copyOf(mSearchIpv6Addresses);
+        this.adaptiveDiscovery = adaptiveDiscovery;
+        this.adaptiveDiscoveryMinQuietMs = adaptiveDiscoveryMinQuietMs;
+        this.adaptiveDiscoveryMaxResponseDelay = adaptiveDiscoveryMaxResponseDelay;
+        this.adaptiveDiscoveryResponsesPerSecond = adaptiveDiscoveryResponsesPerSecond;
+        this.maxDescriptorBytes = maxDescriptorBytes;
+        this.maxApplicationBytes = maxApplicationBytes;
+        this.maxXmlElementDepth = maxXmlElementDepth;
+        this.maxXmlNameLength = maxXmlNameLength;
+        this.mSearchMaxDatagramBytes = mSearchMaxDatagramBytes;
+        this.hedgedRequests = hedgedRequests;
+        this.hedgeDelayPercentile = hedgeDelayPercentile;
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+        this.hedgeBudgetRatio = hedgeBudgetRatio;
+        this.adaptiveTimeouts = adaptiveTimeouts;
+        this.adaptiveTimeoutFloorMs = adaptiveTimeoutFloorMs;
+        this.adaptiveTimeoutCeilingMs = adaptiveTimeoutCeilingMs;
+        this.serializedCommands = serializedCommands;
+        this.deviceStateIdleTimeoutMs = deviceStateIdleTimeoutMs;
+        this.rateLimitPerSecond = rateLimitPerSecond;
+        this.rateLimitBurst = rateLimitBurst;
+        this.rateLimitMode = rateLimitMode;
+        this.rateLimitMaxWaitMs = rateLimitMaxWaitMs;
+        this.protocolListener = protocolListener;
+        this.trafficRecorder = trafficRecorder;
+    }
+
+    private static void requireNotNegative(long timeoutMs, String name) {
+
+        if (timeoutMs < 0) {
+            throw new IllegalArgumentException("The " + name + " must not be negative");
+        }
+    }
+
+    // Declared for javadoc, the methods are generated
+    public static class ProtocolConfigurationBuilder {
+    }
+}
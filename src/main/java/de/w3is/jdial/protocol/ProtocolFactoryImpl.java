@@ -14,50 +14,259 @@
  * You should have received a copy of the GNU General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package de.w3is.jdial.protocol;
 
-import lombok.Data;
+import de.w3is.jdial.protocol.model.RateLimitMode;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
+import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
+ * The default protocol factory.
+ *
+ * Instances are thread safe. The configuration is held as an immutable {@link ProtocolConfiguration}
+ * which every change replaces as a whole, so each created resource sees one consistent configuration
+ * and keeps it for its lifetime. Factories are equal if their configurations are equal.
+ *
  * @author Simon Weis
  */
-@Data
+@ToString
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class ProtocolFactoryImpl implements ProtocolFactory {
 
-    private boolean legacyCompatibility;
-    private int httpClientReadTimeoutMs = 1500;
-    private int httpClientConnectionTimeoutMs = 1500;
-    private int socketTimeoutMs = 1500;
-    private int mSearchResponseDelay = 1;
+    @EqualsAndHashCode.Include
+    private volatile ProtocolConfiguration configuration;
+
+    @ToString.Exclude
+    private final IdleEvictingMap<RttEstimator> rttEstimators;
+
+    @ToString.Exclude
+    private final IdleEvictingMap<RequestHedger> requestHedgers;
+
+    @ToString.Exclude
+    private final IdleEvictingMap<DeviceMailbox> deviceMailboxes;
+
+    @ToString.Exclude
+    private final IdleEvictingMap<RateLimiter> rateLimiters;
+
+    @ToString.Exclude
+    private AdaptiveDiscovery adaptiveDiscovery;
 
     public ProtocolFactoryImpl(boolean legacyCompatibility) {
 
-        this.legacyCompatibility = legacyCompatibility;
+        this(ProtocolConfiguration.builder().legacyCompatibility(legacyCompatibility).build());
+    }
+
+    public ProtocolFactoryImpl(ProtocolConfiguration configuration) {
+
+        long idleTimeoutMs = configuration.getDeviceStateIdleTimeoutMs();
+
+        this.configuration = configuration;
+        this.rttEstimators = new IdleEvictingMap<>(idleTimeoutMs, rttEstimator -> true);
+        this.requestHedgers = new IdleEvictingMap<>(idleTimeoutMs, requestHedger -> true);
+        this.deviceMailboxes = new IdleEvictingMap<>(idleTimeoutMs, DeviceMailbox::isIdle);
+        this.rateLimiters = new IdleEvictingMap<>(idleTimeoutMs, RateLimiter::isFull);
     }
 
     @Override
     public MSearch createMSearch() {
 
-        return new MSearchImpl(mSearchResponseDelay, socketTimeoutMs);
+        ProtocolConfiguration configuration = this.configuration;
+
+        return new MSearchImpl(configuration,
+                configuration.isAdaptiveDiscovery() ? adaptiveDiscoveryFor(configuration) : null);
     }
 
     @Override
     public DeviceDescriptorResource createDeviceDescriptorResource() {
 
-        return new DeviceDescriptorResourceImpl();
+        return new DeviceDescriptorResourceImpl(configuration);
     }
 
     @Override
     public ApplicationResource createApplicationResource(String clientFriendlyName, URL applicationResourceUrl) {
 
-        ApplicationResourceImpl applicationResource = new ApplicationResourceImpl(clientFriendlyName, applicationResourceUrl);
-        applicationResource.setSendQueryParameter(!legacyCompatibility);
-        applicationResource.setConnectionTimeout(httpClientConnectionTimeoutMs);
-        applicationResource.setReadTimeout(httpClientReadTimeoutMs);
+        ProtocolConfiguration configuration = this.configuration;
+        String deviceKey = deviceKey(applicationResourceUrl);
+        Supplier<RequestHedger> requestHedger = null;
+        Supplier<RttEstimator> rttEstimator = null;
+
+        updateIdleTimeouts(configuration.getDeviceStateIdleTimeoutMs());
+
+        if (configuration.isHedgedRequests()) {
+            requestHedger = () -> requestHedgerFor(deviceKey);
+        }
+
+        if (configuration.isAdaptiveTimeouts()) {
+            rttEstimator = () -> rttEstimators.get(deviceKey,
+                    key -> new RttEstimator(configuration.getHttpClientReadTimeoutMs(),
+                            configuration.getAdaptiveTimeoutFloorMs(), configuration.getAdaptiveTimeoutCeilingMs()));
+        }
+
+        ApplicationResource applicationResource = new ApplicationResourceImpl(clientFriendlyName, applicationResourceUrl,
+                configuration, requestHedger, rttEstimator, () -> acquirePermit(applicationResourceUrl.getHost()));
+
+        if (configuration.isSerializedCommands()) {
+            applicationResource = new SerializedApplicationResource(applicationResource,
+                    () -> deviceMailboxes.get(deviceKey, key -> new DeviceMailbox()),
+                    applicationResourceUrl);
+        }
 
         return applicationResource;
     }
+
+    /**
+     * @return The current configuration, which is immutable
+     */
+    public ProtocolConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Replaces the configuration. Resources created before keep the previous configuration.
+     *
+     * @param configuration The new configuration
+     */
+    public synchronized void setConfiguration(ProtocolConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Atomically replaces the configuration with a changed copy. This is the way to change single settings:
+     * {@code factory.updateConfiguration(builder -> builder.adaptiveDiscovery(true))}.
+     *
+     * @param update Changes a builder initialized with the current configuration
+     */
+    public synchronized void updateConfiguration(UnaryOperator<ProtocolConfiguration.ProtocolConfigurationBuilder> update) {
+
+        configuration = update.apply(configuration.toBuilder()).build();
+    }
+
+    // The accessors of the original settings are kept for compatibility, further settings are only in the configuration
+
+    public boolean isLegacyCompatibility() {
+        return configuration.isLegacyCompatibility();
+    }
+
+    public void setLegacyCompatibility(boolean legacyCompatibility) {
+        updateConfiguration(builder -> builder.legacyCompatibility(legacyCompatibility));
+    }
+
+    public int getHttpClientReadTimeoutMs() {
+        return configuration.getHttpClientReadTimeoutMs();
+    }
+
+    public void setHttpClientReadTimeoutMs(int httpClientReadTimeoutMs) {
+        updateConfiguration(builder -> builder.httpClientReadTimeoutMs(httpClientReadTimeoutMs));
+    }
+
+    public int getHttpClientConnectionTimeoutMs() {
+        return configuration.getHttpClientConnectionTimeoutMs();
+    }
+
+    public void setHttpClientConnectionTimeoutMs(int httpClientConnectionTimeoutMs) {
+        updateConfiguration(builder -> builder.httpClientConnectionTimeoutMs(httpClientConnectionTimeoutMs));
+    }
+
+    public int getSocketTimeoutMs() {
+        return configuration.getSocketTimeoutMs();
+    }
+
+    public void setSocketTimeoutMs(int socketTimeoutMs) {
+        updateConfiguration(builder -> builder.socketTimeoutMs(socketTimeoutMs));
+    }
+
+    public int getMSearchResponseDelay() {
+        return configuration.getMSearchResponseDelay();
+    }
+
+    public void setMSearchResponseDelay(int mSearchResponseDelay) {
+        updateConfiguration(builder -> builder.mSearchResponseDelay(mSearchResponseDelay));
+    }
+
+    /*
+     * All resources of a host share one limiter, which is replaced when the rate settings change.
+     * The limiter is looked up with the current configuration for every request, so rate limit
+     * changes also apply to resources created before.
+     */
+    private void acquirePermit(String host) throws IOException {
+
+        ProtocolConfiguration configuration = this.configuration;
+        double rate = configuration.getRateLimitPerSecond();
+
+        if (rate <= 0) {
+            return;
+        }
+
+        int burst = configuration.getRateLimitBurst();
+        long maxWaitNanos = configuration.getRateLimitMode() == RateLimitMode.QUEUE
+                ? TimeUnit.MILLISECONDS.toNanos(configuration.getRateLimitMaxWaitMs())
+                : 0;
+
+        rateLimiters.get(host, existing -> existing.hasSettings(rate, burst), key -> new RateLimiter(rate, burst))
+                .acquire(maxWaitNanos);
+    }
+
+    /*
+     * All connections to a device share the budget and the latency samples of one hedger, which is
+     * replaced when the hedge settings change. Like the rate limiter it is looked up with the current
+     * configuration, so connections created before don't keep replacing it with their settings.
+     */
+    private RequestHedger requestHedgerFor(String deviceKey) {
+
+        ProtocolConfiguration configuration = this.configuration;
+        double delayPercentile = configuration.getHedgeDelayPercentile();
+        long minDelayMs = configuration.getHedgeMinDelayMs();
+        double budgetRatio = configuration.getHedgeBudgetRatio();
+
+        return requestHedgers.get(deviceKey, existing -> existing.hasSettings(delayPercentile, minDelayMs, budgetRatio),
+                key -> new RequestHedger(delayPercentile, minDelayMs, budgetRatio));
+    }
+
+    private void updateIdleTimeouts(long idleTimeoutMs) {
+
+        rttEstimators.setIdleTimeoutMs(idleTimeoutMs);
+        requestHedgers.setIdleTimeoutMs(idleTimeoutMs);
+        deviceMailboxes.setIdleTimeoutMs(idleTimeoutMs);
+        rateLimiters.setIdleTimeoutMs(idleTimeoutMs);
+    }
+
+    int getDeviceStateCount() {
+        return rttEstimators.size() + requestHedgers.size() + deviceMailboxes.size() + rateLimiters.size();
+    }
+
+    /*
+     * The sweeps of all searches share the fleet size of the previous sweep, the state is
+     * dropped when the discovery settings change.
+     */
+    private synchronized AdaptiveDiscovery adaptiveDiscoveryFor(ProtocolConfiguration configuration) {
+
+        int minQuietMs = configuration.getAdaptiveDiscoveryMinQuietMs();
+        int maxQuietMs = configuration.getSocketTimeoutMs();
+        int initialResponseDelay = configuration.getMSearchResponseDelay();
+        int maxResponseDelay = configuration.getAdaptiveDiscoveryMaxResponseDelay();
+        int responsesPerSecond = configuration.getAdaptiveDiscoveryResponsesPerSecond();
+
+        if (adaptiveDiscovery == null
+                || !adaptiveDiscovery.hasSettings(minQuietMs, maxQuietMs, initialResponseDelay, maxResponseDelay,
+                        responsesPerSecond)) {
+
+            adaptiveDiscovery = new AdaptiveDiscovery(minQuietMs, maxQuietMs, initialResponseDelay, maxResponseDelay,
+                    responsesPerSecond);
+        }
+
+        return adaptiveDiscovery;
+    }
+
+    private static String deviceKey(URL url) {
+
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+        return url.getHost() + ":" + port;
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.Operation;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Implement this interface to observe the protocol operations, for example to collect metrics.
+ *
+ * The methods are called synchronously on the thread that executes the operation and
+ * only receive primitives and objects that already exist, so implementations should be
+ * fast and must be thread safe. All methods do nothing by default.
+ *
+ * @author Simon Weis
+ */
+public interface ProtocolListener {
+
+    ProtocolListener NONE = new ProtocolListener() {
+    };
+
+    /**
+     * Called after the M-SEARCH request was sent.
+     *
+     * @param bytes The size of the request
+     * @param durationNanos The time it took to send the request
+     */
+    default void mSearchSent(int bytes, long durationNanos) {
+    }
+
+    /**
+     * Called for every datagram received in response to an M-SEARCH request.
+     *
+     * @param bytes The size of the datagram
+     * @param nanosSinceSent The time since the M-SEARCH request was sent
+     */
+    default void mSearchResponseReceived(int bytes, long nanosSinceSent) {
+    }
+
+    /**
+     * Called when the M-SEARCH listen window closed, before {@link #mSearchCompleted}.
+     *
+     * @param filtered The number of datagrams dropped because they don't contain the dial search target
+     *                 or exceed the maximum datagram size
+     * @param queueOverflows The number of dial datagrams dropped because the parser couldn't keep up
+     * @param kernelDrops The number of udp datagrams the operating system dropped during the search
+     *                    because a socket buffer was full, for all sockets of the host, or -1 if unknown
+     */
+    default void mSearchPacketsDropped(int filtered, int queueOverflows, long kernelDrops) {
+    }
+
+    /**
+     * Called when the M-SEARCH listen window closed.
+     *
+     * @param durationNanos The duration of the whole search
+     * @param firstResponseNanos The time until the first response or -1 if there was no response
+     * @param lastResponseNanos The time until the last response or -1 if there was no response
+     * @param responses The number of received datagrams
+     * @param devices The number of discovered devices
+     */
+    default void mSearchCompleted(long durationNanos, long firstResponseNanos, long lastResponseNanos,
+                                  int responses, int devices) {
+    }
+
+    /**
+     * Called when an http request got a response.
+     *
+     * @param operation The protocol operation
+     * @param url The requested url
+     * @param statusCode The http status code of the response
+     * @param requestBytes The size of the request body
+     * @param responseBytes The size of the response body or -1 if unknown
+     * @param durationNanos The duration of the request including reading the response body
+     */
+    default void requestCompleted(Operation operation, URL url, int statusCode, long requestBytes,
+                                  long responseBytes, long durationNanos) {
+    }
+
+    /**
+     * Called when an http request failed with an IOException.
+     *
+     * @param operation The protocol operation
+     * @param url The requested url
+     * @param durationNanos The time until the request failed
+     * @param exception The cause of the failure
+     */
+    default void requestFailed(Operation operation, URL url, long durationNanos, IOException exception) {
+    }
+}
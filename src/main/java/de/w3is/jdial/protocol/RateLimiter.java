@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.RateLimitExceededException;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock free token bucket, implemented as generic cell rate algorithm.
+ *
+ * Instead of a token count it keeps the time at which the bucket is full again. A request takes
+ * one token by moving that time one interval into the future. If the bucket is empty, the caller
+ * reserves the next token and waits for it, unless the wait would exceed its limit.
+ * Rejected requests don't take a token, and a caller interrupted while waiting gives its token back.
+ *
+ * @author Simon Weis
+ */
+class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param permitsPerSecond The sustained request rate
+     * @param burst The number of requests that may be sent at once after an idle period
+     */
+    RateLimiter(double permitsPerSecond, int burst) {
+
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate must be positive and the burst at least one");
+        }
+
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.toleranceNanos = intervalNanos * (burst - 1);
+    }
+
+    /**
+     * Takes a token, waiting for it if necessary.
+     *
+     * @param maxWaitNanos The longest acceptable wait, zero to fail if no token is available right now
+     * @throws RateLimitExceededException If no token is available within the maximum wait
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    void acquire(long maxWaitNanos) throws RateLimitExceededException, InterruptedIOException {
+
+        while (true) {
+
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long start = current - now < 0 ? now : current;
+            long waitNanos = start - toleranceNanos - now;
+
+            if (waitNanos > maxWaitNanos) {
+                throw new RateLimitExceededException("Rate limit of " + permitsPerSecond + " requests per second exceeded");
+            }
+
+            if (fullAt.compareAndSet(current, start + intervalNanos)) {
+
+                if (waitNanos > 0) {
+                    awaitToken(now + waitNanos);
+                }
+
+                return;
+            }
+        }
+    }
+
+    /*
+     * A full bucket behaves like a new one, so an idle limiter can be dropped.
+     */
+    boolean isFull() {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+
+    boolean hasSettings(double permitsPerSecond, int burst) {
+        return this.permitsPerSecond == permitsPerSecond && this.burst == burst;
+    }
+
+    private void awaitToken(long deadline) throws InterruptedIOException {
+
+        try {
+
+            parkUntil(deadline);
+
+        } catch (InterruptedIOException e) {
+
+            // Move the full time back one interval, so the next caller can use the reserved slot
+            long current;
+
+            do {
+                current = fullAt.get();
+            } while (!fullAt.compareAndSet(current, current - intervalNanos));
+
+            throw e;
+        }
+    }
+
+    private static void parkUntil(long deadline) throws InterruptedIOException {
+
+        long remaining;
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+
+            LockSupport.parkNanos(remaining);
+
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Interrupted while waiting for a request permit");
+            }
+        }
+    }
+}
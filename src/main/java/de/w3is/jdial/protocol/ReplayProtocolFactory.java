@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.SocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves a recording of a {@link TrafficRecorder} on the loopback interface with the recorded timing,
+ * so discovery and application requests against a captured fleet can be benchmarked and profiled offline.
+ *
+ * Every M-SEARCH is answered with the datagrams of the next recorded sweep, each sent as long after the
+ * search as it was received during the recording. Http requests receive the recorded response after the
+ * recorded duration; repeated requests cycle through the responses recorded for the same url. The hosts
+ * of the recorded urls are mapped to paths of one loopback http server, and failed exchanges are replayed
+ * as closed connections.
+ *
+ * The resources are created by a {@link ProtocolFactoryImpl}, so the replay runs through the regular
+ * parsing and the configured limits.
+ *
+ * @author Simon Weis
+ */
+public class ReplayProtocolFactory implements ProtocolFactory, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplayProtocolFactory.class.getName());
+
+    private static final Pattern LOCATION_PATTERN = Pattern.compile("(?im)^(LOCATION:\\s*)(\\S+)");
+    private static final List<String> URL_HEADERS = List.of("Application-URL", "Location");
+    private static final int MAX_SEARCH_BYTES = 2048;
+
+    private final InetAddress loopbackAddress = InetAddress.getLoopbackAddress();
+    private final List<String> authorities = new ArrayList<>();
+    private final Map<String, Integer> hostIndexes = new HashMap<>();
+    private final Map<String, Responses> responses = new HashMap<>();
+    private final List<List<TrafficRecording.Datagram>> sweeps = new ArrayList<>();
+    private final AtomicInteger nextSweep = new AtomicInteger();
+
+    private final LoopbackHttpServer httpServer;
+    private final DatagramSocket ssdpSocket;
+    private final ScheduledExecutorService ssdpScheduler;
+    private final ProtocolFactoryImpl protocolFactory;
+
+    public ReplayProtocolFactory(Path recording) throws IOException {
+        this(recording, ProtocolConfiguration.DEFAULT);
+    }
+
+    /**
+     * @param recording A file written by a {@link TrafficRecorder}
+     * @param configuration The configuration of the resources, the search address and port are replaced
+     * @throws IOException If the recording can't be read or the loopback sockets can't be opened
+     */
+    public ReplayProtocolFactory(Path recording, ProtocolConfiguration configuration) throws IOException {
+
+        TrafficRecording trafficRecording = TrafficRecording.read(recording);
+
+        this.ssdpSocket = new DatagramSocket(new InetSocketAddress(loopbackAddress, 0));
+
+        try {
+            this.httpServer = new LoopbackHttpServer("jdial-replay-http", this::respond);
+        } catch (IOException e) {
+            ssdpSocket.close();
+            throw e;
+        }
+
+        this.ssdpScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jdial-replay-ssdp"));
+
+        for (TrafficRecording.Exchange exchange : trafficRecording.getExchanges()) {
+
+            responses.computeIfAbsent(requestKey(exchange.method, exchange.url), key -> new Responses())
+                    .exchanges.add(exchange);
+        }
+
+        for (List<TrafficRecording.Datagram> sweep : trafficRecording.getSweeps()) {
+
+            List<TrafficRecording.Datagram> rewrittenSweep = new ArrayList<>();
+
+            for (TrafficRecording.Datagram datagram : sweep) {
+                rewrittenSweep.add(new TrafficRecording.Datagram(datagram.nanosSinceSent, rewriteLocation(datagram.data)));
+            }
+
+            sweeps.add(rewrittenSweep);
+        }
+
+        Thread ssdpResponder = new DaemonThreadFactory("jdial-replay-ssdp-responder").newThread(this::answerSearches);
+        ssdpResponder.start();
+
+        this.protocolFactory = new ProtocolFactoryImpl(configuration.toBuilder()
+                .mSearchAddress(loopbackAddress.getHostAddress())
+                .mSearchPort(ssdpSocket.getLocalPort())
+                .ipv6Discovery(false)
+                .build());
+
+        LOGGER.log(Level.FINE, "Replaying " + sweeps.size() + " sweeps and " + trafficRecording.getExchanges().size()
+                + " http exchanges of " + authorities.size() + " hosts");
+    }
+
+    @Override
+    public MSearch createMSearch() {
+        return protocolFactory.createMSearch();
+    }
+
+    @Override
+    public DeviceDescriptorResource createDeviceDescriptorResource() {
+        return protocolFactory.createDeviceDescriptorResource();
+    }
+
+    @Override
+    public ApplicationResource createApplicationResource(String clientFriendlyName, URL applicationResourceUrl) {
+        return protocolFactory.createApplicationResource(clientFriendlyName, applicationResourceUrl);
+    }
+
+    /**
+     * @return The replayed url of a recorded url, or the url itself if its host wasn't recorded
+     */
+    public String toReplayUrl(String recordedUrl) {
+
+        URL url;
+
+        try {
+            url = new URL(recordedUrl);
+        } catch (MalformedURLException e) {
+            return recordedUrl;
+        }
+
+        int hostIndex;
+
+        synchronized (authorities) {
+
+            hostIndex = hostIndexes.computeIfAbsent(url.getAuthority(), authority -> {
+                authorities.add(authority);
+                return authorities.size() - 1;
+            });
+        }
+
+        return httpServer.getBaseUrl() + "/" + hostIndex + url.getFile();
+    }
+
+    private byte[] rewriteLocation(byte[] datagram) {
+
+        // ISO-8859-1 maps every byte to one char, so the rest of the datagram stays unchanged
+        String content = new String(datagram, StandardCharsets.ISO_8859_1);
+        Matcher matcher = LOCATION_PATTERN.matcher(content);
+
+        if (!matcher.find()) {
+            return datagram;
+        }
+
+        String rewritten = content.substring(0, matcher.start(2)) + toReplayUrl(matcher.group(2))
+                + content.substring(matcher.end(2));
+
+        return rewritten.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private String toRecordedUrl(String target) {
+
+        int queryStart = target.indexOf('?');
+        String path = queryStart == -1 ? target : target.substring(0, queryStart);
+        String query = queryStart == -1 ? null : target.substring(queryStart + 1);
+
+        int pathStart = path.indexOf('/', 1);
+        String hostIndex = pathStart == -1 ? path.substring(1) : path.substring(1, pathStart);
+        String authority;
+
+        try {
+
+            synchronized (authorities) {
+                authority = authorities.get(Integer.parseInt(hostIndex));
+            }
+
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return null;
+        }
+
+        return "http://" + authority + (pathStart == -1 ? "" : path.substring(pathStart))
+                + (query != null ? "?" + query : "");
+    }
+
+    private LoopbackHttpServer.Response respond(String method, String target) {
+
+        String recordedUrl = toRecordedUrl(target);
+        Responses recordedResponses = recordedUrl != null
+                ? responses.get(requestKey(method, recordedUrl))
+                : null;
+
+        if (recordedResponses == null) {
+
+            LOGGER.log(Level.FINE, "No recorded response for " + method + " " + recordedUrl);
+            return new LoopbackHttpServer.Response(404);
+        }
+
+        TrafficRecording.Exchange recorded = recordedResponses.next();
+
+        try {
+
+            TimeUnit.NANOSECONDS.sleep(recorded.durationNanos);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        if (recorded.status == TrafficRecorder.FAILED_STATUS) {
+            return null;
+        }
+
+        Map<String, String> headers = new LinkedHashMap<>();
+        recorded.headers.forEach((name, value) -> headers.put(name, URL_HEADERS.contains(name) ? toReplayUrl(value) : value));
+
+        return new LoopbackHttpServer.Response(recorded.status, headers, recorded.body);
+    }
+
+    private void answerSearches() {
+
+        byte[] buffer = new byte[MAX_SEARCH_BYTES];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+        try {
+            while (true) {
+
+                packet.setLength(buffer.length);
+                ssdpSocket.receive(packet);
+
+                String request = new String(buffer, 0, packet.getLength(), StandardCharsets.ISO_8859_1);
+
+                if (!request.startsWith("M-SEARCH") || sweeps.isEmpty()) {
+                    continue;
+                }
+
+                List<TrafficRecording.Datagram> sweep = sweeps.get(Math.floorMod(nextSweep.getAndIncrement(), sweeps.size()));
+                SocketAddress searcher = packet.getSocketAddress();
+
+                for (TrafficRecording.Datagram datagram : sweep) {
+                    ssdpScheduler.schedule(() -> sendDatagram(datagram, searcher), datagram.nanosSinceSent, TimeUnit.NANOSECONDS);
+                }
+            }
+        } catch (IOException e) {
+
+            if (!ssdpSocket.isClosed()) {
+                LOGGER.log(Level.WARNING, "Replay of M-SEARCH responses failed", e);
+            }
+        }
+    }
+
+    private void sendDatagram(TrafficRecording.Datagram datagram, SocketAddress searcher) {
+
+        try {
+
+            ssdpSocket.send(new DatagramPacket(datagram.data, datagram.data.length, searcher));
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Can't replay M-SEARCH response", e);
+        }
+    }
+
+    private static String requestKey(String method, String url) {
+        return method + " " + url;
+    }
+
+    @Override
+    public void close() {
+
+        ssdpSocket.close();
+        ssdpScheduler.shutdownNow();
+
+        try {
+            httpServer.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Can't close the replay http server", e);
+        }
+    }
+
+    private static class Responses {
+
+        private final List<TrafficRecording.Exchange> exchanges = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        private TrafficRecording.Exchange next() {
+            return exchanges.get(Math.floorMod(next.getAndIncrement(), exchanges.size()));
+        }
+    }
+}
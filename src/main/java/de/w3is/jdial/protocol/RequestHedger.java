@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes idempotent requests with a hedge: if the first request didn't answer
+ * within the configured percentile of the observed latencies, a second request is sent
+ * and the first response wins.
+ *
+ * Hedges are paid from a budget that grows by a fixed ratio with every request,
+ * so the additional load on the server is bounded. The latency of a request is the duration
+ * of the attempt that answered, measured from its own start. One hedger is shared by all
+ * connections to a device, so the budget bounds the load of the device.
+ *
+ * @author Simon Weis
+ */
+class RequestHedger {
+
+    private static final Logger LOGGER = Logger.getLogger(RequestHedger.class.getName());
+
+    private static final int SAMPLE_SIZE = 128;
+    private static final int MIN_SAMPLES = 16;
+    private static final double MAX_BUDGET = 2.0;
+
+    private final double delayPercentile;
+    private final long minDelayMs;
+    private final double budgetRatio;
+
+    private final long[] latencySamplesMs = new long[SAMPLE_SIZE];
+    private final long[] sortedSamplesMs = new long[SAMPLE_SIZE];
+    private int sampleCount;
+    private int nextSample;
+    private double budget;
+
+    RequestHedger(double delayPercentile, long minDelayMs, double budgetRatio) {
+
+        if (delayPercentile <= 0 || delayPercentile > 1) {
+            throw new IllegalArgumentException("The hedge delay percentile must be in (0, 1]");
+        }
+
+        this.delayPercentile = delayPercentile;
+        this.minDelayMs = minDelayMs;
+        this.budgetRatio = budgetRatio;
+    }
+
+    boolean hasSettings(double delayPercentile, long minDelayMs, double budgetRatio) {
+
+        return this.delayPercentile == delayPercentile && this.minDelayMs == minDelayMs
+                && this.budgetRatio == budgetRatio;
+    }
+
+    <T> T execute(Callable<T> request) throws IOException {
+
+        ExecutorCompletionService<Attempt<T>> completionService = new ExecutorCompletionService<>(ExecutorHolder.EXECUTOR);
+        List<Future<Attempt<T>>> pending = new ArrayList<>(2);
+
+        try {
+
+            pending.add(completionService.submit(() -> Attempt.of(request)));
+            earnBudget();
+
+            Future<Attempt<T>> done = completionService.poll(hedgeDelayMs(), TimeUnit.MILLISECONDS);
+
+            if (done == null && spendBudget()) {
+
+                LOGGER.log(Level.FINE, "Send hedged request");
+                pending.add(completionService.submit(() -> Attempt.of(request)));
+            }
+
+            if (done == null) {
+                done = completionService.take();
+            }
+
+            ExecutionException failure = null;
+
+            while (true) {
+
+                pending.remove(done);
+
+                try {
+
+                    Attempt<T> attempt = done.get();
+                    recordLatency(TimeUnit.NANOSECONDS.toMillis(attempt.durationNanos));
+                    return attempt.result;
+
+                } catch (ExecutionException e) {
+
+                    failure = e;
+                }
+
+                if (pending.isEmpty()) {
+                    throw unwrap(failure);
+                }
+
+                done = completionService.take();
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+
+        } finally {
+
+            for (Future<Attempt<T>> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    long hedgeDelayMs() {
+
+        long percentileMs = latencyPercentileMs();
+
+        return percentileMs < 0 ? minDelayMs : Math.max(minDelayMs, percentileMs);
+    }
+
+    /*
+     * The configured percentile of the sampled latencies, or -1 while there are too few samples.
+     */
+    synchronized long latencyPercentileMs() {
+
+        if (sampleCount < MIN_SAMPLES) {
+            return -1;
+        }
+
+        int index = (int) Math.ceil(delayPercentile * sampleCount) - 1;
+
+        return sortedSamplesMs[Math.max(0, index)];
+    }
+
+    /*
+     * Keeps the samples in arrival order for eviction and a sorted copy for the percentile.
+     * The sorted copy is updated in place, so recording a sample doesn't sort the window.
+     */
+    private synchronized void recordLatency(long latencyMs) {
+
+        if (sampleCount == SAMPLE_SIZE) {
+
+            int evicted = Arrays.binarySearch(sortedSamplesMs, 0, sampleCount, latencySamplesMs[nextSample]);
+            System.arraycopy(sortedSamplesMs, evicted + 1, sortedSamplesMs, evicted, sampleCount - evicted - 1);
+            sampleCount--;
+        }
+
+        int insertion = Arrays.binarySearch(sortedSamplesMs, 0, sampleCount, latencyMs);
+
+        if (insertion < 0) {
+            insertion = -insertion - 1;
+        }
+
+        System.arraycopy(sortedSamplesMs, insertion, sortedSamplesMs, insertion + 1, sampleCount - insertion);
+        sortedSamplesMs[insertion] = latencyMs;
+        sampleCount++;
+
+        latencySamplesMs[nextSample] = latencyMs;
+        nextSample = (nextSample + 1) % SAMPLE_SIZE;
+    }
+
+    private synchronized void earnBudget() {
+
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+    }
+
+    private synchronized boolean spendBudget() {
+
+        if (budget < 1.0) {
+            return false;
+        }
+
+        budget -= 1.0;
+        return true;
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+
+        Throwable cause = e.getCause();
+
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new IOException(cause);
+    }
+
+    /*
+     * The result of one request together with its own duration, so a winning hedge
+     * doesn't count the time the first request waited before it.
+     */
+    private static final class Attempt<T> {
+
+        private final T result;
+        private final long durationNanos;
+
+        private Attempt(T result, long durationNanos) {
+
+            this.result = result;
+            this.durationNanos = durationNanos;
+        }
+
+        private static <T> Attempt<T> of(Callable<T> request) throws Exception {
+
+            long start = System.nanoTime();
+            T result = request.call();
+
+            return new Attempt<>(result, System.nanoTime() - start);
+        }
+    }
+
+    private static final class ExecutorHolder {
+
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new DaemonThreadFactory("jdial-hedge"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+/**
+ * Estimates the round trip time to a device like TCP does (RFC 6298)
+ * and derives a timeout from the smoothed mean and deviation.
+ *
+ * @author Simon Weis
+ */
+class RttEstimator {
+
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final int DEVIATION_FACTOR = 4;
+
+    private final int floorMs;
+    private final int ceilingMs;
+
+    private boolean hasSample;
+    private double smoothedRttMs;
+    private double rttDeviationMs;
+    private int timeoutMs;
+
+    RttEstimator(int initialTimeoutMs, int floorMs, int ceilingMs) {
+
+        if (floorMs > ceilingMs) {
+            throw new IllegalArgumentException("The timeout floor must not be greater than the ceiling");
+        }
+
+        this.floorMs = floorMs;
+        this.ceilingMs = ceilingMs;
+        this.timeoutMs = clamp(initialTimeoutMs);
+    }
+
+    synchronized void sample(double rttMs) {
+
+        if (!hasSample) {
+
+            smoothedRttMs = rttMs;
+            rttDeviationMs = rttMs / 2;
+            hasSample = true;
+        } else {
+
+            rttDeviationMs = (1 - BETA) * rttDeviationMs + BETA * Math.abs(smoothedRttMs - rttMs);
+            smoothedRttMs = (1 - ALPHA) * smoothedRttMs + ALPHA * rttMs;
+        }
+
+        timeoutMs = clamp((long) Math.ceil(smoothedRttMs + DEVIATION_FACTOR * rttDeviationMs));
+    }
+
+    /**
+     * Doubles the timeout after a request timed out, until the next sample arrives.
+     */
+    synchronized void timedOut() {
+
+        timeoutMs = clamp(2L * timeoutMs);
+    }
+
+    synchronized int timeoutMs() {
+
+        return timeoutMs;
+    }
+
+    synchronized double smoothedRttMs() {
+
+        return smoothedRttMs;
+    }
+
+    private int clamp(long value) {
+
+        return (int) Math.max(floorMs, Math.min(ceilingMs, value));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialContent;
+import de.w3is.jdial.protocol.model.ApplicationResourceException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Routes all requests of an application resource through the mailbox of its device.
+ *
+ * @author Simon Weis
+ */
+class SerializedApplicationResource implements ApplicationResource {
+
+    private final ApplicationResource applicationResource;
+    private final Supplier<DeviceMailbox> deviceMailbox;
+    private final URL rootUrl;
+
+    /**
+     * @param applicationResource Sends the requests
+     * @param deviceMailbox Looks up the mailbox of the device for every request, so it can be dropped while idle
+     * @param rootUrl The application resource url
+     */
+    SerializedApplicationResource(ApplicationResource applicationResource, Supplier<DeviceMailbox> deviceMailbox, URL rootUrl) {
+
+        this.applicationResource = applicationResource;
+        this.deviceMailbox = deviceMailbox;
+        this.rootUrl = rootUrl;
+    }
+
+    @Override
+    public Application getApplication(String applicationName) throws IOException {
+
+        try {
+
+            return await(deviceMailbox.get().submit(DeviceMailbox.Kind.GET, applicationTarget(applicationName), null,
+                    () -> applicationResource.getApplication(applicationName)));
+
+        } catch (ApplicationResourceException e) {
+
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public URL startApplication(String applicationName) throws IOException, ApplicationResourceException {
+
+        return await(deviceMailbox.get().submit(DeviceMailbox.Kind.START, applicationTarget(applicationName), null,
+                () -> applicationResource.startApplication(applicationName)));
+    }
+
+    @Override
+    public URL startApplication(String applicationName, DialContent dialContent) throws IOException, ApplicationResourceException {
+
+        return await(deviceMailbox.get().submit(DeviceMailbox.Kind.START, applicationTarget(applicationName), dialContent,
+                () -> applicationResource.startApplication(applicationName, dialContent)));
+    }
+
+    @Override
+    public void stopApplication(URL instanceUrl) throws IOException, ApplicationResourceException {
+
+        await(deviceMailbox.get().submit(DeviceMailbox.Kind.STOP, instanceUrl.toExternalForm(), null, () -> {
+            applicationResource.stopApplication(instanceUrl);
+            return null;
+        }));
+    }
+
+    @Override
+    public void hideApplication(URL instanceURL) throws IOException, ApplicationResourceException {
+
+        await(deviceMailbox.get().submit(DeviceMailbox.Kind.HIDE, instanceURL.toExternalForm(), null, () -> {
+            applicationResource.hideApplication(instanceURL);
+            return null;
+        }));
+    }
+
+    /*
+     * A preconnect doesn't change the state of an application, so it bypasses the mailbox.
+     */
+    @Override
+    public CompletableFuture<Void> preconnect() {
+        return applicationResource.preconnect();
+    }
+
+    private String applicationTarget(String applicationName) throws MalformedURLException {
+
+        return URLBuilder.of(rootUrl).path(applicationName).build().toExternalForm();
+    }
+
+    private static <T> T await(CompletableFuture<T> outcome) throws IOException, ApplicationResourceException {
+
+        try {
+
+            return outcome.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the device");
+
+        } catch (ExecutionException e) {
+
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            if (cause instanceof ApplicationResourceException) {
+                throw (ApplicationResourceException) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+}
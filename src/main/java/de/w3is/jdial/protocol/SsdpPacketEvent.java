@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author Simon Weis
+ */
+@Name("de.w3is.jdial.SsdpPacket")
+@Label("SSDP Packet")
+@Description("A datagram received in response to an M-SEARCH request")
+@Category({"jdial", "Discovery"})
+@Enabled(false)
+@StackTrace(false)
+class SsdpPacketEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Size")
+    @DataAmount
+    int bytes;
+
+    @Label("Unique Service Name")
+    String usn;
+
+    @Label("Location")
+    String location;
+
+    @Label("Server")
+    String server;
+
+    @Label("Accepted")
+    boolean accepted;
+
+    @Label("Drop Reason")
+    String dropReason;
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the received M-SEARCH datagrams and the descriptor and application http exchanges with their
+ * timing to a file, which a {@link ReplayProtocolFactory} serves back on the loopback interface.
+ *
+ * The file is a gzip compressed stream of records. Every M-SEARCH starts a sweep, the datagrams
+ * following it store the time since the search was sent. An http exchange stores the method, url,
+ * the time until the response was read, the status code, the dial relevant headers and the body.
+ * Failed exchanges are stored with the status -1, so timeouts and resets replay as well.
+ *
+ * Recording never fails a protocol operation. After a write error the recorder logs a warning
+ * and stops recording. The file is complete after {@link #close()}.
+ *
+ * @author Simon Weis
+ */
+public final class TrafficRecorder implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(TrafficRecorder.class.getName());
+
+    static final int MAGIC = 0x4A445452;
+    static final int VERSION = 1;
+
+    static final int SEARCH_RECORD = 1;
+    static final int DATAGRAM_RECORD = 2;
+    static final int HTTP_EXCHANGE_RECORD = 3;
+
+    static final int FAILED_STATUS = -1;
+
+    static final List<String> RECORDED_HEADERS = Arrays.asList("Application-URL", "Location", "Content-Type");
+
+    private final DataOutputStream outputStream;
+    private final long start;
+
+    private boolean stopped;
+
+    private TrafficRecorder(OutputStream outputStream) throws IOException {
+
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream)));
+        this.start = System.nanoTime();
+
+        this.outputStream.writeInt(MAGIC);
+        this.outputStream.writeShort(VERSION);
+    }
+
+    /**
+     * Creates or replaces the recording file.
+     */
+    public static TrafficRecorder open(Path file) throws IOException {
+
+        OutputStream outputStream = Files.newOutputStream(file);
+
+        try {
+            return new TrafficRecorder(outputStream);
+        } catch (IOException e) {
+            outputStream.close();
+            throw e;
+        }
+    }
+
+    synchronized void searchSent() {
+
+        if (stopped) {
+            return;
+        }
+
+        try {
+
+            outputStream.writeByte(SEARCH_RECORD);
+            outputStream.writeLong(System.nanoTime() - start);
+
+        } catch (IOException e) {
+
+            stop(e);
+        }
+    }
+
+    synchronized void datagramReceived(DatagramPacket packet, long nanosSinceSent) {
+
+        if (stopped) {
+            return;
+        }
+
+        try {
+
+            outputStream.writeByte(DATAGRAM_RECORD);
+            outputStream.writeLong(nanosSinceSent);
+            outputStream.writeInt(packet.getLength());
+            outputStream.write(packet.getData(), packet.getOffset(), packet.getLength());
+
+        } catch (IOException e) {
+
+            stop(e);
+        }
+    }
+
+    /**
+     * Reads the rest of the body, which may be null, and records the exchange.
+     *
+     * @return A stream with the same content as the body
+     * @throws IOException If the body couldn't be read
+     */
+    InputStream exchangeCompleted(HttpURLConnection connection, long durationNanos, InputStream body) throws IOException {
+
+        byte[] bytes = body != null ? body.readAllBytes() : new byte[0];
+        List<String> headers = new ArrayList<>();
+
+        for (String header : RECORDED_HEADERS) {
+
+            String value = connection.getHeaderField(header);
+
+            if (value != null) {
+                headers.add(header);
+                headers.add(value);
+            }
+        }
+
+        write(connection.getRequestMethod(), connection.getURL(), durationNanos, connection.getResponseCode(), headers, bytes);
+
+        return new ByteArrayInputStream(bytes);
+    }
+
+    void exchangeFailed(HttpURLConnection connection, long durationNanos) {
+
+        write(connection.getRequestMethod(), connection.getURL(), durationNanos, FAILED_STATUS, new ArrayList<>(), new byte[0]);
+    }
+
+    private synchronized void write(String method, URL url, long durationNanos, int status, List<String> headers,
+                                    byte[] body) {
+
+        if (stopped) {
+            return;
+        }
+
+        try {
+
+            outputStream.writeByte(HTTP_EXCHANGE_RECORD);
+            outputStream.writeLong(System.nanoTime() - start - durationNanos);
+            outputStream.writeLong(durationNanos);
+            outputStream.writeUTF(method);
+            outputStream.writeUTF(url.toExternalForm());
+            outputStream.writeInt(status);
+            outputStream.writeByte(headers.size() / 2);
+
+            for (String header : headers) {
+                outputStream.writeUTF(header);
+            }
+
+            outputStream.writeInt(body.length);
+            outputStream.write(body);
+
+        } catch (IOException e) {
+
+            stop(e);
+        }
+    }
+
+    private void stop(IOException e) {
+
+        LOGGER.log(Level.WARNING, "Can't write the traffic recording, recording stopped", e);
+        stopped = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        stopped = true;
+        outputStream.close();
+    }
+}
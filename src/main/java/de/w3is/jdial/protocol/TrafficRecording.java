@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The content of a file written by a {@link TrafficRecorder}. A truncated file is read up to the last
+ * complete record, so the recording of a crashed process can still be replayed.
+ *
+ * @author Simon Weis
+ */
+class TrafficRecording {
+
+    private final List<List<Datagram>> sweeps;
+    private final List<Exchange> exchanges;
+
+    private TrafficRecording(List<List<Datagram>> sweeps, List<Exchange> exchanges) {
+
+        this.sweeps = sweeps;
+        this.exchanges = exchanges;
+    }
+
+    static TrafficRecording read(Path file) throws IOException {
+
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return read(inputStream);
+        }
+    }
+
+    static TrafficRecording read(InputStream inputStream) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+
+        if (in.readInt() != TrafficRecorder.MAGIC) {
+            throw new IOException("Not a traffic recording");
+        }
+
+        int version = in.readUnsignedShort();
+
+        if (version != TrafficRecorder.VERSION) {
+            throw new IOException("Unsupported traffic recording version " + version);
+        }
+
+        List<List<Datagram>> sweeps = new ArrayList<>();
+        List<Exchange> exchanges = new ArrayList<>();
+
+        try {
+            while (true) {
+
+                int type = in.read();
+
+                switch (type) {
+                    case -1:
+                        return new TrafficRecording(sweeps, exchanges);
+                    case TrafficRecorder.SEARCH_RECORD:
+                        in.readLong();
+                        sweeps.add(new ArrayList<>());
+                        break;
+                    case TrafficRecorder.DATAGRAM_RECORD:
+                        Datagram datagram = readDatagram(in);
+                        if (!sweeps.isEmpty()) {
+                            sweeps.get(sweeps.size() - 1).add(datagram);
+                        }
+                        break;
+                    case TrafficRecorder.HTTP_EXCHANGE_RECORD:
+                        exchanges.add(readExchange(in));
+                        break;
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+
+            return new TrafficRecording(sweeps, exchanges);
+        }
+    }
+
+    private static Datagram readDatagram(DataInputStream in) throws IOException {
+
+        long nanosSinceSent = in.readLong();
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+
+        return new Datagram(nanosSinceSent, data);
+    }
+
+    private static Exchange readExchange(DataInputStream in) throws IOException {
+
+        in.readLong();
+        long durationNanos = in.readLong();
+        String method = in.readUTF();
+        String url = in.readUTF();
+        int status = in.readInt();
+        int headerCount = in.readUnsignedByte();
+
+        Map<String, String> headers = new LinkedHashMap<>();
+
+        for (int i = 0; i < headerCount; i++) {
+            headers.put(in.readUTF(), in.readUTF());
+        }
+
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        return new Exchange(durationNanos, method, url, status, headers, body);
+    }
+
+    List<List<Datagram>> getSweeps() {
+        return sweeps;
+    }
+
+    List<Exchange> getExchanges() {
+        return exchanges;
+    }
+
+    static class Datagram {
+
+        final long nanosSinceSent;
+        final byte[] data;
+
+        Datagram(long nanosSinceSent, byte[] data) {
+
+            this.nanosSinceSent = nanosSinceSent;
+            this.data = data;
+        }
+    }
+
+    static class Exchange {
+
+        final long durationNanos;
+        final String method;
+        final String url;
+        final int status;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        Exchange(long durationNanos, String method, String url, int status, Map<String, String> headers, byte[] body) {
+
+            this.durationNanos = durationNanos;
+            this.method = method;
+            this.url = url;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the udp counters of the operating system. Only Linux exposes them, other systems report -1.
+ *
+ * @author Simon Weis
+ */
+class UdpStatistics {
+
+    private static final Logger LOGGER = Logger.getLogger(UdpStatistics.class.getName());
+
+    private static final Path SNMP = Paths.get("/proc/net/snmp");
+    private static final String UDP_PREFIX = "Udp:";
+    private static final String RECEIVE_BUFFER_ERRORS = "RcvbufErrors";
+
+    private UdpStatistics() {
+    }
+
+    /**
+     * @return The datagrams the system dropped because a socket buffer was full or -1 if unknown
+     */
+    static long receiveBufferErrors() {
+
+        if (!Files.isReadable(SNMP)) {
+            return -1;
+        }
+
+        try {
+
+            return receiveBufferErrors(Files.readAllLines(SNMP, StandardCharsets.US_ASCII));
+
+        } catch (IOException e) {
+
+            LOGGER.log(Level.FINE, "Can't read udp statistics", e);
+            return -1;
+        }
+    }
+
+    /*
+     * The udp section consists of a line with the counter names followed by a line with the values.
+     */
+    static long receiveBufferErrors(List<String> snmpLines) {
+
+        String[] names = null;
+
+        for (String line : snmpLines) {
+
+            if (!line.startsWith(UDP_PREFIX)) {
+                continue;
+            }
+
+            String[] fields = line.trim().split("\\s+");
+
+            if (names == null) {
+
+                names = fields;
+                continue;
+            }
+
+            for (int i = 1; i < names.length && i < fields.length; i++) {
+
+                if (RECEIVE_BUFFER_ERRORS.equals(names[i])) {
+                    return parse(fields[i]);
+                }
+            }
+
+            return -1;
+        }
+
+        return -1;
+    }
+
+    private static long parse(String value) {
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
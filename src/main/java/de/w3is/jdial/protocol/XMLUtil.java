@@ -26,6 +26,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -37,10 +38,28 @@ class XMLUtil {
 
     private static final String PREVENT_XXE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
 
+    // Processing limits of the jdk parser, other parsers ignore them
+    private static final String MAX_ELEMENT_DEPTH = "jdk.xml.maxElementDepth";
+    private static final String MAX_NAME_LENGTH = "jdk.xml.maxXMLNameLimit";
+
     static Document getDocumentFromStream(InputStream inputStream) throws IOException, ParserConfigurationException, SAXException {
 
+        return getDocumentFromStream(inputStream, ProtocolConfiguration.DEFAULT.getMaxXmlElementDepth(),
+                ProtocolConfiguration.DEFAULT.getMaxXmlNameLength());
+    }
+
+    static Document getDocumentFromStream(InputStream inputStream, int maxElementDepth, int maxNameLength)
+            throws IOException, ParserConfigurationException, SAXException {
+
         DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
 
+        try {
+            documentBuilderFactory.setAttribute(MAX_ELEMENT_DEPTH, String.valueOf(maxElementDepth));
+            documentBuilderFactory.setAttribute(MAX_NAME_LENGTH, String.valueOf(maxNameLength));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "The xml parser doesn't support processing limits", e);
+        }
+
         // https://cheatsheetseries.owasp.org/cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.html#introduction
         try {
             documentBuilderFactory.setFeature(PREVENT_XXE_FEATURE, true);
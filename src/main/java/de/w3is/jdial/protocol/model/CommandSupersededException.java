@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.w3is.jdial.protocol.model;
+
+/**
+ * Thrown to the caller of a command that was dropped from a device queue
+ * because a later command for the same application replaced it before it was sent.
+ *
+ * @author Simon Weis
+ */
+public class CommandSupersededException extends ApplicationResourceException {
+
+    /**
+     * @param message Names the dropped command and the command that replaced it
+     */
+    public CommandSupersededException(String message) {
+        super(message);
+    }
+}
@@ -17,9 +17,12 @@
 
 package de.w3is.jdial.protocol.model;
 
+import de.w3is.jdial.model.UrlForms;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.net.URL;
+import java.util.List;
 
 /**
  * @author Simon Weis
@@ -28,5 +31,11 @@ import java.net.URL;
 public class DeviceDescriptor {
 
     private String friendlyName;
+    @EqualsAndHashCode.Exclude
     private URL applicationResourceUrl;
+
+    @EqualsAndHashCode.Include
+    private List<String> urlForms() {
+        return UrlForms.of(applicationResourceUrl);
+    }
 }
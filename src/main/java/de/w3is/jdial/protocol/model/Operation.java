@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018 Simon Weis
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.w3is.jdial.protocol.model;
+
+/**
+ * The http operations of the dial protocol.
+ *
+ * @author Simon Weis
+ */
+public enum Operation {
+
+    DEVICE_DESCRIPTOR,
+    GET_APPLICATION,
+    START_APPLICATION,
+    STOP_APPLICATION,
+    HIDE_APPLICATION,
+
+    // A request that only opens a keep-alive connection to the application resource
+    PRECONNECT
+}
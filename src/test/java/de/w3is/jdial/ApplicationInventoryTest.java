@@ -0,0 +1,154 @@
+package de.w3is.jdial;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ApplicationInventoryTest {
+
+    private static WireMockServer MOCK_SERVER;
+    private static byte[] APPLICATION_BODY;
+
+    @BeforeAll
+    static void beforeAll() throws Exception {
+
+        MOCK_SERVER = new WireMockServer(wireMockConfig().dynamicPort());
+        MOCK_SERVER.start();
+
+        APPLICATION_BODY = Files.readAllBytes(Paths.get(ApplicationInventoryTest.class.getResource("/application.xml").toURI()));
+    }
+
+    @BeforeEach
+    void beforeEach() {
+
+        MOCK_SERVER.resetAll();
+        MOCK_SERVER.stubFor(get(urlPathMatching("/.*"))
+                .willReturn(aResponse().withStatus(404)));
+    }
+
+    @Test
+    void testDevicesOfTheSameModelAreProbedOnce() throws Exception {
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/first/YouTube"))
+                .willReturn(aResponse().withStatus(200).withBody(APPLICATION_BODY)));
+
+        ApplicationInventory inventory = new ApplicationInventory(new DialClient());
+
+        Set<String> first = inventory.getSupportedApplications(dialServer("first", "Linux UPnP/1.0 TV/1.2")).get(5, TimeUnit.SECONDS);
+        Set<String> second = inventory.getSupportedApplications(dialServer("second", "Linux UPnP/1.0 TV/1.2")).get(5, TimeUnit.SECONDS);
+
+        assertThat(first).containsExactly(Application.YOUTUBE);
+        assertThat(second).isSameAs(first);
+        assertThat(MOCK_SERVER.getAllServeEvents()).hasSize(ApplicationInventory.DEFAULT_CATALOG.size());
+
+        inventory.getSupportedApplications(dialServer("third", "Linux UPnP/1.0 TV/1.3")).get(5, TimeUnit.SECONDS);
+
+        assertThat(MOCK_SERVER.getAllServeEvents()).hasSize(2 * ApplicationInventory.DEFAULT_CATALOG.size());
+    }
+
+    @Test
+    void testProbesRunInParallelUpToTheLimit() throws Exception {
+
+        MOCK_SERVER.stubFor(get(urlPathMatching("/slow/.*"))
+                .willReturn(aResponse().withStatus(404).withFixedDelay(200)));
+
+        ApplicationInventory inventory = new ApplicationInventory(new DialClient(), 4);
+        inventory.addApplications(Arrays.asList("App1", "App2", "App3", "App4", "App5"));
+
+        long start = System.nanoTime();
+        Set<String> supported = inventory.getSupportedApplications(dialServer("slow", null)).get(5, TimeUnit.SECONDS);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Eight probes with four in parallel take two rounds
+        assertThat(supported).isEmpty();
+        assertThat(elapsedMs).isBetween(390L, 1200L);
+    }
+
+    @Test
+    void testFailedProbesAreNotCached() throws Exception {
+
+        int closedPort;
+
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            closedPort = serverSocket.getLocalPort();
+        }
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName("uuid:offline");
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + closedPort + "/apps"));
+
+        ApplicationInventory inventory = new ApplicationInventory(new DialClient());
+        CompletableFuture<Set<String>> failed = inventory.getSupportedApplications(dialServer);
+
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(inventory.getSupportedApplications(dialServer)).isNotSameAs(failed);
+    }
+
+    @Test
+    void testUnavailableServerIsProbedAgain() throws Exception {
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/busy/YouTube")).inScenario("busy").whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(503))
+                .willSetStateTo("available"));
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/busy/YouTube")).inScenario("busy").whenScenarioStateIs("available")
+                .willReturn(aResponse().withStatus(200).withBody(APPLICATION_BODY)));
+
+        ApplicationInventory inventory = new ApplicationInventory(new DialClient());
+        DialServer dialServer = dialServer("busy", "Linux UPnP/1.0 TV/1.4");
+
+        CompletableFuture<Set<String>> failed = inventory.getSupportedApplications(dialServer);
+
+        // A 503 doesn't tell whether the application is installed
+        assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(inventory.getSupportedApplications(dialServer).get(5, TimeUnit.SECONDS))
+                .containsExactly(Application.YOUTUBE);
+    }
+
+    @Test
+    void testReadCatalog() throws Exception {
+
+        StringReader reader = new StringReader("# DIAL registry\nPandora\n\n  Hulu  \n");
+
+        assertThat(ApplicationInventory.readCatalog(reader)).containsExactly("Pandora", "Hulu");
+
+        // The caller closes the reader, a closed StringReader would throw
+        assertThat(reader.ready()).isTrue();
+    }
+
+    private static DialServer dialServer(String name, String serverDescription) throws Exception {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName("uuid:" + name);
+        dialServer.setServerDescription(serverDescription);
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + MOCK_SERVER.port() + "/" + name));
+
+        return dialServer;
+    }
+
+    @AfterAll
+    static void afterAll() {
+
+        MOCK_SERVER.stop();
+    }
+}
@@ -0,0 +1,114 @@
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeviceRegistryTest {
+
+    @Test
+    void testIndexesFollowChanges() throws Exception {
+
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.registerAll(Arrays.asList(
+                dialServer("uuid:1", "Living Room", "192.168.0.10", "TV/1.0"),
+                dialServer("uuid:2", "Kitchen", "192.168.0.11", "TV/1.0")));
+
+        assertThat(registry.setSupportedApplications("uuid:1", new HashSet<>(Arrays.asList(Application.YOUTUBE)))).isTrue();
+        assertThat(registry.setSupportedApplications("uuid:unknown", new HashSet<>())).isFalse();
+
+        DeviceRegistry.Snapshot before = registry.snapshot();
+
+        assertThat(before.findByServerDescription("TV/1.0")).hasSize(2);
+        assertThat(before.findByHost("192.168.0.11")).extracting(DialServerSnapshot::getUniqueServiceName).containsExactly("uuid:2");
+        assertThat(before.findByApplication(Application.YOUTUBE)).extracting(DialServerSnapshot::getFriendlyName).containsExactly("Living Room");
+
+        registry.register(dialServer("uuid:1", "Bedroom", "192.168.0.12", "TV/1.1"));
+
+        DeviceRegistry.Snapshot after = registry.snapshot();
+
+        assertThat(after.findByFriendlyName("Living Room")).isEmpty();
+        assertThat(after.findByFriendlyName("Bedroom")).hasSize(1);
+        assertThat(after.findByHost("192.168.0.10")).isEmpty();
+        assertThat(after.findByServerDescription("TV/1.0")).hasSize(1);
+        assertThat(after.findByApplication(Application.YOUTUBE)).extracting(DialServerSnapshot::getFriendlyName).containsExactly("Bedroom");
+
+        assertThat(before.getDevice("uuid:1").getFriendlyName()).isEqualTo("Living Room");
+        assertThat(before.findByFriendlyName("Living Room")).hasSize(1);
+
+        assertThat(registry.remove("uuid:1")).isTrue();
+        assertThat(registry.snapshot().size()).isEqualTo(1);
+        assertThat(registry.snapshot().findByApplication(Application.YOUTUBE)).isEmpty();
+        assertThat(after.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testServersNeedAUniqueServiceName() throws Exception {
+
+        assertThatThrownBy(() -> new DeviceRegistry().register(dialServer(null, "TV", "localhost", null)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testReadersSeeConsistentSnapshotsWhileWritersChange() throws Exception {
+
+        DeviceRegistry registry = new DeviceRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+
+            Future<?> writer = executor.submit(() -> {
+
+                for (int i = 0; i < 2000; i++) {
+                    registry.register(dialServer("uuid:" + (i % 100), "TV " + i, "10.0.0." + (i % 100), "TV/1.0"));
+                }
+
+                return null;
+            });
+
+            Future<?> reader = executor.submit(() -> {
+
+                while (!writer.isDone()) {
+
+                    DeviceRegistry.Snapshot snapshot = registry.snapshot();
+                    assertThat(snapshot.findByServerDescription("TV/1.0")).hasSize(snapshot.size());
+                }
+
+                return null;
+            });
+
+            writer.get(30, TimeUnit.SECONDS);
+            reader.get(30, TimeUnit.SECONDS);
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        assertThat(registry.snapshot().size()).isEqualTo(100);
+    }
+
+    private static DialServer dialServer(String uniqueServiceName, String friendlyName, String host,
+                                         String serverDescription) throws Exception {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName(uniqueServiceName);
+        dialServer.setFriendlyName(friendlyName);
+        dialServer.setServerDescription(serverDescription);
+        dialServer.setApplicationResourceUrl(new URL("http://" + host + ":8080/apps"));
+
+        return dialServer;
+    }
+}
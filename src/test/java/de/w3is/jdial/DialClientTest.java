@@ -2,7 +2,13 @@ package de.w3is.jdial;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
 import de.w3is.jdial.model.*;
+import de.w3is.jdial.protocol.HistogramProtocolListener;
+import de.w3is.jdial.protocol.ProtocolConfiguration;
 import de.w3is.jdial.protocol.ProtocolFactoryImpl;
+import de.w3is.jdial.protocol.model.DeviceDescriptor;
+import de.w3is.jdial.protocol.model.Operation;
+import de.w3is.jdial.protocol.model.RateLimitExceededException;
+import de.w3is.jdial.protocol.model.RateLimitMode;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -14,10 +20,16 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @ExtendWith(LoggingExtension.class)
@@ -82,6 +94,65 @@ class DialClientTest {
         MOCK_SERVER.verify(getRequestedFor(urlPathEqualTo("/resource/app")));
     }
 
+    @Test
+    void testGetApplicationWithHedgedRequest() throws Exception {
+
+        byte[] body = Files.readAllBytes(Paths.get(DialClientTest.class.getResource("/application.xml").toURI()));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/hedgedApp")).inScenario("hedge")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(200).withBody(body).withFixedDelay(1000))
+                .willSetStateTo("fast"));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/hedgedApp")).inScenario("hedge")
+                .whenScenarioStateIs("fast")
+                .willReturn(aResponse().withStatus(200).withBody(body)));
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .hedgedRequests(true)
+                .hedgeBudgetRatio(1.0)
+                .build());
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/resource"));
+
+        DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServer);
+
+        long start = System.nanoTime();
+        Application app = connection.getApplication("hedgedApp");
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(app.getState()).isEqualTo(State.STOPPED);
+        assertThat(durationMs).isLessThan(1000);
+
+        MOCK_SERVER.verify(2, getRequestedFor(urlPathEqualTo("/resource/hedgedApp")));
+    }
+
+    @Test
+    void testGetApplicationReportsToProtocolListener() throws Exception {
+
+        byte[] body = Files.readAllBytes(Paths.get(DialClientTest.class.getResource("/application.xml").toURI()));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/measuredApp"))
+                .willReturn(aResponse().withStatus(200).withBody(body)));
+
+        HistogramProtocolListener listener = new HistogramProtocolListener();
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(false);
+        protocolFactory.updateConfiguration(builder -> builder.protocolListener(listener));
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/resource"));
+
+        DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServer);
+
+        assertThat(connection.getApplication("measuredApp")).isNotNull();
+
+        assertThat(listener.getDuration(Operation.GET_APPLICATION).getCount()).isEqualTo(1);
+        assertThat(listener.getStatusCount(Operation.GET_APPLICATION, 2)).isEqualTo(1);
+        assertThat(listener.getResponseBytes(Operation.GET_APPLICATION)).isEqualTo(body.length);
+        assertThat(listener.getFailures(Operation.GET_APPLICATION)).isZero();
+    }
+
     @Test
     void testGetApplicationNotFound() throws Exception {
 
@@ -203,6 +274,61 @@ class DialClientTest {
                 .withRequestBody(equalTo(requestBody)));
     }
 
+    @Test
+    void testLaunchApplicationCompletesWhenRunning() throws Exception {
+
+        byte[] stoppedBody = Files.readAllBytes(Paths.get(DialClientTest.class.getResource("/application.xml").toURI()));
+        byte[] runningBody = Files.readAllBytes(Paths.get(DialClientTest.class.getResource("/application-running.xml").toURI()));
+
+        MOCK_SERVER.stubFor(post(urlPathEqualTo("/resource/launchApp"))
+                .willReturn(aResponse().withStatus(201)));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/launchApp")).inScenario("launch")
+                .whenScenarioStateIs(STARTED)
+                .willReturn(aResponse().withStatus(200).withBody(stoppedBody))
+                .willSetStateTo("running"));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/launchApp")).inScenario("launch")
+                .whenScenarioStateIs("running")
+                .willReturn(aResponse().withStatus(200).withBody(runningBody)));
+
+        DialClientConnection connection = getConnectionToMock();
+
+        CompletableFuture<Application> launched = connection.launchApplication("launchApp", 5000);
+        CompletableFuture<Application> awaited = connection.awaitApplicationRunning("launchApp", 5000);
+
+        assertThat(launched.get(5, TimeUnit.SECONDS).getState()).isEqualTo(State.RUNNING);
+        assertThat(awaited.get(5, TimeUnit.SECONDS).getState()).isEqualTo(State.RUNNING);
+
+        MOCK_SERVER.verify(1, postRequestedFor(urlPathEqualTo("/resource/launchApp")));
+        MOCK_SERVER.verify(2, getRequestedFor(urlPathEqualTo("/resource/launchApp")));
+    }
+
+    @Test
+    void testLaunchApplicationTimesOut() throws Exception {
+
+        byte[] stoppedBody = Files.readAllBytes(Paths.get(DialClientTest.class.getResource("/application.xml").toURI()));
+
+        MOCK_SERVER.stubFor(post(urlPathEqualTo("/resource/slowApp"))
+                .willReturn(aResponse().withStatus(201)));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/slowApp"))
+                .willReturn(aResponse().withStatus(200).withBody(stoppedBody)));
+
+        DialClientConnection connection = getConnectionToMock();
+
+        final CompletableFuture<Application> launched = connection.launchApplication("slowApp", 300);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                launched.get(5, TimeUnit.SECONDS);
+            }
+        });
+
+        assertThat(exception.getCause()).isInstanceOf(TimeoutException.class);
+    }
+
     @Test
     void testStopApplication() throws Exception {
 
@@ -272,6 +398,176 @@ class DialClientTest {
         MOCK_SERVER.verify(postRequestedFor(urlPathEqualTo("/resource/app/run/hide")));
     }
 
+    @Test
+    void testStartApplicationWithSerializedCommands() throws Exception {
+
+        MOCK_SERVER.stubFor(post(urlPathEqualTo("/serialized/app"))
+                .willReturn(aResponse().withStatus(201)
+                        .withHeader("LOCATION", "http://localhost:" + SERVER_PORT + "/serialized/app/run")));
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(false);
+        protocolFactory.updateConfiguration(builder -> builder.serializedCommands(true));
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/serialized"));
+
+        DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServer);
+
+        assertThat(connection.startApplication("app")).hasPath("/serialized/app/run");
+    }
+
+    @Test
+    void testGetApplicationFailsFastWhenRateLimited() throws Exception {
+
+        byte[] body = Files.readAllBytes(Paths.get(DialClientTest.class.getResource("/application.xml").toURI()));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/limited/app"))
+                .willReturn(aResponse().withStatus(200)
+                        .withHeader("Content-Length", String.valueOf(body.length))
+                        .withBody(body)));
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .rateLimitPerSecond(0.5)
+                .rateLimitBurst(1)
+                .rateLimitMode(RateLimitMode.FAIL_FAST)
+                .build());
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/limited"));
+
+        DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServer);
+
+        assertThat(connection.getApplication("app")).isNotNull();
+        assertThat(connection.getApplication("app")).isNull();
+        assertThatThrownBy(() -> connection.startApplication("app")).isInstanceOf(RateLimitedException.class);
+
+        MOCK_SERVER.verify(1, getRequestedFor(urlPathEqualTo("/limited/app")));
+        MOCK_SERVER.verify(0, postRequestedFor(urlPathEqualTo("/limited/app")));
+
+        // The connection looks up the limiter of the current configuration for every request
+        protocolFactory.updateConfiguration(builder -> builder.rateLimitPerSecond(0));
+
+        assertThat(connection.getApplication("app")).isNotNull();
+    }
+
+    @Test
+    void testGetApplicationRejectsOversizedResponse() throws Exception {
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/oversized/app"))
+                .willReturn(aResponse().withStatus(200)
+                        .withHeader("Content-Length", "2048")
+                        .withBody(new byte[2048])));
+
+        HistogramProtocolListener listener = new HistogramProtocolListener();
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .maxApplicationBytes(1024)
+                .protocolListener(listener)
+                .build());
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/oversized"));
+
+        DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServer);
+
+        assertThat(connection.getApplication("app")).isNull();
+        assertThat(listener.getOversizedResponses(Operation.GET_APPLICATION)).isEqualTo(1);
+        assertThat(listener.getFailures(Operation.GET_APPLICATION)).isEqualTo(1);
+    }
+
+    @Test
+    void testPreconnectOpensApplicationResourceOnRequest() throws Exception {
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/preconnect/dd.xml"))
+                .willReturn(aResponse().withStatus(200)
+                        .withHeader("Application-URL", "http://localhost:" + SERVER_PORT + "/preconnect/apps/")
+                        .withBody("<root xmlns=\"urn:schemas-upnp-org:device-1-0\"><device>" +
+                                "<friendlyName>Device</friendlyName></device></root>")));
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/preconnect/apps/"))
+                .willReturn(aResponse().withStatus(404)));
+
+        HistogramProtocolListener listener = new HistogramProtocolListener();
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .protocolListener(listener)
+                .rateLimitPerSecond(0.5)
+                .rateLimitBurst(1)
+                .rateLimitMode(RateLimitMode.FAIL_FAST)
+                .build());
+
+        DeviceDescriptor descriptor = protocolFactory.createDeviceDescriptorResource()
+                .getDescriptor(new URL("http://localhost:" + SERVER_PORT + "/preconnect/dd.xml"));
+
+        MOCK_SERVER.verify(0, getRequestedFor(urlPathEqualTo("/preconnect/apps/")));
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName("uuid:preconnect");
+        dialServer.setApplicationResourceUrl(descriptor.getApplicationResourceUrl());
+        DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServer);
+
+        connection.preconnect().get(2, TimeUnit.SECONDS);
+
+        assertThat(listener.getStatusCount(Operation.PRECONNECT, 4)).isEqualTo(1);
+        MOCK_SERVER.verify(1, getRequestedFor(urlPathEqualTo("/preconnect/apps/")));
+
+        assertThatThrownBy(() -> connection.preconnect().get(2, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(RateLimitExceededException.class);
+        MOCK_SERVER.verify(1, getRequestedFor(urlPathEqualTo("/preconnect/apps/")));
+    }
+
+    @Test
+    void testConnectToReusesConnectionPerServer() throws Exception {
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(false);
+        DialClient dialClient = new DialClient(protocolFactory);
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName("uuid:device");
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/resource"));
+
+        DialClientConnection connection = dialClient.connectTo(dialServer);
+
+        assertThat(dialClient.connectTo(dialServer)).isSameAs(connection);
+
+        DialServer otherAddress = new DialServer();
+        otherAddress.setUniqueServiceName("uuid:device");
+        otherAddress.setApplicationResourceUrl(new URL("http://127.0.0.1:" + SERVER_PORT + "/resource"));
+        DialClientConnection otherConnection = dialClient.connectTo(otherAddress);
+
+        assertThat(otherConnection).isNotSameAs(connection);
+        assertThat(dialClient.connectTo(dialServer)).isSameAs(connection);
+        assertThat(dialClient.getConnectionCount()).isEqualTo(2);
+
+        dialClient.setClientFriendlyName(CLIENT_FRIENDLY_NAME);
+        DialClientConnection renamedConnection = dialClient.connectTo(dialServer);
+
+        assertThat(renamedConnection).isNotSameAs(connection);
+        assertThat(dialClient.connectTo(dialServer)).isSameAs(renamedConnection);
+
+        protocolFactory.setHttpClientReadTimeoutMs(500);
+
+        assertThat(dialClient.connectTo(dialServer)).isNotSameAs(renamedConnection);
+    }
+
+    @Test
+    void testConnectToEvictsIdleConnections() throws Exception {
+
+        DialClient dialClient = new DialClient();
+        dialClient.setConnectionIdleTimeoutMs(50);
+
+        DialServer idleServer = new DialServer();
+        idleServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/idle"));
+        DialServer activeServer = new DialServer();
+        activeServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/active"));
+
+        DialClientConnection idleConnection = dialClient.connectTo(idleServer);
+        dialClient.connectTo(activeServer);
+
+        Thread.sleep(100);
+        dialClient.connectTo(activeServer);
+
+        assertThat(dialClient.getConnectionCount()).isEqualTo(1);
+        assertThat(dialClient.connectTo(idleServer)).isNotSameAs(idleConnection);
+    }
+
     private DialClientConnection getConnectionToMock() throws MalformedURLException {
         DialServer dialServer = new DialServer();
         dialServer.setApplicationResourceUrl(new URL("http://localhost:" + SERVER_PORT + "/resource"));
@@ -0,0 +1,208 @@
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DiscoveryDelta;
+import de.w3is.jdial.protocol.ApplicationResource;
+import de.w3is.jdial.protocol.DeviceDescriptorResource;
+import de.w3is.jdial.protocol.MSearch;
+import de.w3is.jdial.protocol.ProtocolFactory;
+import de.w3is.jdial.protocol.model.DeviceDescriptor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DiscoverySessionTest {
+
+    private final List<DialServer> responses = new ArrayList<>();
+    private final List<URL> fetchedDescriptors = new ArrayList<>();
+
+    @Test
+    void testUnchangedSweepReadsNoDescriptor() throws Exception {
+
+        DiscoverySession session = new DiscoverySession(createFactory());
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0"),
+                response("uuid:stick", "http://10.0.0.3:8008/dd.xml", "Linux/1.0"));
+
+        DiscoveryDelta first = session.discover();
+
+        assertThat(first.getAdded()).extracting(DialServer::getUniqueServiceName)
+                .containsExactlyInAnyOrder("uuid:tv", "uuid:stick");
+        assertThat(first.getAdded()).extracting(DialServer::getFriendlyName).containsOnly("Friendly 10.0.0.2", "Friendly 10.0.0.3");
+        assertThat(session.getDescriptorFetches()).isEqualTo(2);
+
+        DiscoveryDelta second = session.discover();
+
+        assertThat(second.isEmpty()).isTrue();
+        assertThat(session.getDescriptorFetches()).isEqualTo(2);
+        assertThat(session.getDevices()).hasSize(2);
+    }
+
+    @Test
+    void testChangedAnnouncementIsDescribedAgain() throws Exception {
+
+        DiscoverySession session = new DiscoverySession(createFactory());
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0"));
+        session.discover();
+
+        answer(response("uuid:tv", "http://10.0.0.9:8008/dd.xml", "Linux/1.0"));
+        DiscoveryDelta moved = session.discover();
+
+        assertThat(moved.getChanged()).hasSize(1);
+        assertThat(moved.getChanged().get(0).getApplicationResourceUrl().toString()).isEqualTo("http://10.0.0.9:8008/apps");
+
+        answer(response("uuid:tv", "http://10.0.0.9:8008/dd.xml", "Linux/2.0"));
+        DiscoveryDelta updated = session.discover();
+
+        assertThat(updated.getChanged()).extracting(DialServer::getServerDescription).containsExactly("Linux/2.0");
+        assertThat(fetchedDescriptors).hasSize(3);
+    }
+
+    @Test
+    void testServerIsRemovedAfterMissedSweeps() throws Exception {
+
+        DiscoverySession session = new DiscoverySession(createFactory());
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0"),
+                response("uuid:stick", "http://10.0.0.3:8008/dd.xml", "Linux/1.0"));
+        session.discover();
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0"));
+
+        assertThat(session.discover().isEmpty()).isTrue();
+
+        DiscoveryDelta delta = session.discover();
+
+        assertThat(delta.getRemoved()).extracting(DialServer::getUniqueServiceName).containsExactly("uuid:stick");
+        assertThat(session.getDevices()).extracting(DialServer::getUniqueServiceName).containsExactly("uuid:tv");
+    }
+
+    @Test
+    void testFailedSearchKeepsState() throws Exception {
+
+        MSearch mSearch = mock(MSearch.class);
+        when(mSearch.sendAndReceive())
+                .thenReturn(Arrays.asList(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0")))
+                .thenThrow(new IOException());
+
+        DiscoverySession session = new DiscoverySession(createFactory(mSearch));
+        session.setMissedSweepsUntilRemoved(1);
+        session.discover();
+
+        assertThat(session.discover()).isSameAs(DiscoveryDelta.EMPTY);
+        assertThat(session.getDevices()).hasSize(1);
+    }
+
+    @Test
+    void testEmptySweepKeepsState() throws Exception {
+
+        DiscoverySession session = new DiscoverySession(createFactory());
+        session.setMissedSweepsUntilRemoved(1);
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0"));
+        session.discover();
+
+        answer();
+
+        assertThat(session.discover()).isSameAs(DiscoveryDelta.EMPTY);
+        assertThat(session.getDevices()).hasSize(1);
+    }
+
+    @Test
+    void testRegistryAppliesDelta() throws Exception {
+
+        DiscoverySession session = new DiscoverySession(createFactory());
+        session.setMissedSweepsUntilRemoved(1);
+        DeviceRegistry registry = new DeviceRegistry();
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/1.0"),
+                response("uuid:stick", "http://10.0.0.3:8008/dd.xml", "Linux/1.0"));
+        registry.apply(session.discover());
+
+        answer(response("uuid:tv", "http://10.0.0.2:8008/dd.xml", "Linux/2.0"));
+        registry.apply(session.discover());
+
+        assertThat(registry.snapshot().size()).isEqualTo(1);
+        assertThat(registry.snapshot().getDevice("uuid:tv").getServerDescription()).isEqualTo("Linux/2.0");
+    }
+
+    private void answer(DialServer... dialServers) {
+
+        responses.clear();
+        responses.addAll(Arrays.asList(dialServers));
+    }
+
+    private ProtocolFactory createFactory() throws IOException {
+
+        MSearch mSearch = mock(MSearch.class);
+
+        // Every sweep receives new instances, like from the network
+        when(mSearch.sendAndReceive()).thenAnswer(invocation -> {
+
+            List<DialServer> copies = new ArrayList<>();
+
+            for (DialServer dialServer : responses) {
+                copies.add(dialServer.snapshot().toDialServer());
+            }
+
+            return copies;
+        });
+
+        return createFactory(mSearch);
+    }
+
+    private ProtocolFactory createFactory(MSearch mSearch) throws IOException {
+
+        DeviceDescriptorResource deviceDescriptorResource = mock(DeviceDescriptorResource.class);
+        when(deviceDescriptorResource.getDescriptor(any())).thenAnswer(invocation -> {
+
+            URL location = invocation.getArgument(0);
+            fetchedDescriptors.add(location);
+
+            DeviceDescriptor descriptor = new DeviceDescriptor();
+            descriptor.setFriendlyName("Friendly " + location.getHost());
+            descriptor.setApplicationResourceUrl(new URL("http://" + location.getAuthority() + "/apps"));
+
+            return descriptor;
+        });
+
+        return new ProtocolFactory() {
+            @Override
+            public MSearch createMSearch() {
+                return mSearch;
+            }
+
+            @Override
+            public DeviceDescriptorResource createDeviceDescriptorResource() {
+                return deviceDescriptorResource;
+            }
+
+            @Override
+            public ApplicationResource createApplicationResource(String clientFriendlyName, URL applicationResourceUrl) {
+                return null;
+            }
+        };
+    }
+
+    private static DialServer response(String uniqueServiceName, String location, String serverDescription)
+            throws MalformedURLException {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName(uniqueServiceName);
+        dialServer.setDeviceDescriptorUrl(new URL(location));
+        dialServer.setServerDescription(serverDescription);
+
+        return dialServer;
+    }
+}
@@ -0,0 +1,114 @@
+package de.w3is.jdial;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import de.w3is.jdial.model.DialServer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlightRecorderTest {
+
+    private static final String APPLICATION_OPERATION_EVENT = "de.w3is.jdial.ApplicationOperation";
+
+    private static WireMockServer MOCK_SERVER;
+
+    @BeforeAll
+    static void beforeAll() {
+
+        MOCK_SERVER = new WireMockServer(wireMockConfig().dynamicPort());
+        MOCK_SERVER.start();
+    }
+
+    @Test
+    void testApplicationOperationsAreRecorded() throws Exception {
+
+        byte[] body = Files.readAllBytes(Paths.get(FlightRecorderTest.class.getResource("/application.xml").toURI()));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/app"))
+                .willReturn(aResponse().withStatus(200).withBody(body)));
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + MOCK_SERVER.port() + "/resource"));
+
+        DialClientConnection connection = new DialClient().connectTo(dialServer);
+
+        Path recordingFile = Files.createTempFile("jdial", ".jfr");
+
+        try (Recording recording = new Recording()) {
+
+            recording.enable(APPLICATION_OPERATION_EVENT);
+            recording.start();
+
+            assertThat(connection.getApplication("app")).isNotNull();
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().equals(APPLICATION_OPERATION_EVENT))
+                .collect(Collectors.toList());
+
+        Files.delete(recordingFile);
+
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getString("operation")).isEqualTo("GET_APPLICATION");
+        assertThat(events.get(0).getString("authority")).isEqualTo("localhost:" + MOCK_SERVER.port());
+        assertThat(events.get(0).getInt("statusCode")).isEqualTo(200);
+        assertThat(events.get(0).getLong("responseBytes")).isEqualTo(body.length);
+    }
+
+    @Test
+    void testEventsAreDisabledByDefault() throws Exception {
+
+        byte[] body = Files.readAllBytes(Paths.get(FlightRecorderTest.class.getResource("/application.xml").toURI()));
+
+        MOCK_SERVER.stubFor(get(urlPathEqualTo("/resource/app"))
+                .willReturn(aResponse().withStatus(200).withBody(body)));
+
+        DialServer dialServer = new DialServer();
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:" + MOCK_SERVER.port() + "/resource"));
+
+        DialClientConnection connection = new DialClient().connectTo(dialServer);
+
+        Path recordingFile = Files.createTempFile("jdial", ".jfr");
+
+        try (Recording recording = new Recording()) {
+
+            recording.start();
+
+            assertThat(connection.getApplication("app")).isNotNull();
+
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile).stream()
+                .filter(event -> event.getEventType().getName().startsWith("de.w3is.jdial"))
+                .collect(Collectors.toList());
+
+        Files.delete(recordingFile);
+
+        assertThat(events).isEmpty();
+    }
+
+    @AfterAll
+    static void afterAll() {
+
+        MOCK_SERVER.stop();
+    }
+}
@@ -0,0 +1,60 @@
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.DialServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LivenessMonitorTest {
+
+    @Test
+    void testReportsUpAndDown() throws Exception {
+
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        LivenessListener listener = new LivenessListener() {
+
+            @Override
+            public void deviceUp(DialServer dialServer) {
+                events.add("up " + dialServer.getUniqueServiceName());
+            }
+
+            @Override
+            public void deviceDown(DialServer dialServer) {
+                events.add("down " + dialServer.getUniqueServiceName());
+            }
+        };
+
+        try (LivenessMonitor monitor = new LivenessMonitor(listener, 50, 200, 500)) {
+
+            monitor.start();
+
+            DialServer dialServer = new DialServer();
+            dialServer.setUniqueServiceName("uuid:tv");
+
+            try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+
+                dialServer.setApplicationResourceUrl(new URL("http://127.0.0.1:" + serverSocket.getLocalPort() + "/apps"));
+                monitor.monitor(dialServer);
+
+                assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("up uuid:tv");
+                assertThat(monitor.isAlive(dialServer)).isTrue();
+            }
+
+            assertThat(events.poll(5, TimeUnit.SECONDS)).isEqualTo("down uuid:tv");
+            assertThat(monitor.isAlive(dialServer)).isFalse();
+
+            monitor.unmonitor(dialServer);
+
+            assertThat(monitor.getMonitoredCount()).isZero();
+            assertThat(events.poll(300, TimeUnit.MILLISECONDS)).isNull();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package de.w3is.jdial;
+
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.ApplicationSnapshot;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.DialServerSnapshot;
+import de.w3is.jdial.model.State;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ThreadSafetyTest {
+
+    private static final int THREADS = 16;
+
+    @Test
+    void testAllThreadsShareOneConnectionPerServer() throws Exception {
+
+        DialClient dialClient = new DialClient();
+        List<DialServer> dialServers = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+
+            DialServer dialServer = new DialServer();
+            dialServer.setUniqueServiceName("uuid:" + i);
+            dialServer.setApplicationResourceUrl(new URL("http://localhost:" + (8000 + i) + "/apps"));
+            dialServers.add(dialServer);
+        }
+
+        Set<DialClientConnection> connections = ConcurrentHashMap.newKeySet();
+
+        runConcurrently(() -> {
+
+            for (int i = 0; i < 1000; i++) {
+                connections.add(dialClient.connectTo(dialServers.get(i % dialServers.size())));
+            }
+        });
+
+        assertThat(connections).hasSize(dialServers.size());
+    }
+
+    @Test
+    void testSnapshotsAreNotAffectedByChangesOfTheOriginal() throws Exception {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setFriendlyName("Living Room");
+        dialServer.setApplicationResourceUrl(new URL("http://localhost:8080/apps"));
+
+        DialServerSnapshot snapshot = dialServer.snapshot();
+
+        runConcurrently(() -> {
+
+            for (int i = 0; i < 1000; i++) {
+
+                synchronized (dialServer) {
+                    dialServer.setFriendlyName("TV " + i);
+                }
+
+                assertThat(snapshot.getFriendlyName()).isEqualTo("Living Room");
+                assertThat(snapshot.toDialServer().getApplicationResourceUrl()).isEqualTo(dialServer.getApplicationResourceUrl());
+            }
+        });
+    }
+
+    @Test
+    void testApplicationSnapshotSerializesAdditionalData() throws Exception {
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element additionalData = document.createElement("additionalData");
+        additionalData.appendChild(document.createElement("key")).setTextContent("value");
+
+        Application application = new Application();
+        application.setName(Application.YOUTUBE);
+        application.setState(State.RUNNING);
+        application.setAdditionalData(additionalData);
+
+        ApplicationSnapshot snapshot = application.snapshot();
+        application.setState(State.STOPPED);
+
+        assertThat(snapshot.getState()).isEqualTo(State.RUNNING);
+        assertThat(snapshot.getAdditionalData()).isEqualTo("<additionalData><key>value</key></additionalData>");
+    }
+
+    private static void runConcurrently(Runnable task) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    task.run();
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+}
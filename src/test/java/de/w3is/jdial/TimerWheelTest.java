@@ -0,0 +1,54 @@
+package de.w3is.jdial;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimerWheelTest {
+
+    @Test
+    void testTimersRunInDeadlineOrder() {
+
+        TimerWheel timerWheel = new TimerWheel(10, 8, 0);
+        List<String> runs = new ArrayList<>();
+
+        timerWheel.schedule(() -> runs.add("late"), 200);
+        timerWheel.schedule(() -> runs.add("early"), 15);
+        timerWheel.schedule(() -> runs.add("cancelled"), 30).cancel();
+
+        timerWheel.advance(19);
+        assertThat(runs).isEmpty();
+
+        timerWheel.advance(20);
+        assertThat(runs).containsExactly("early");
+
+        // 200ms are more than one turn of the wheel
+        timerWheel.advance(190);
+        assertThat(runs).containsExactly("early");
+
+        timerWheel.advance(200);
+        assertThat(runs).containsExactly("early", "late");
+        assertThat(timerWheel.size()).isZero();
+    }
+
+    @Test
+    void testTasksCanScheduleTimers() {
+
+        TimerWheel timerWheel = new TimerWheel(10, 8, 0);
+        List<Long> runs = new ArrayList<>();
+
+        Runnable[] task = new Runnable[1];
+        task[0] = () -> {
+            runs.add((long) runs.size());
+            timerWheel.schedule(task[0], 10);
+        };
+
+        timerWheel.schedule(task[0], 10);
+        timerWheel.advance(50);
+
+        assertThat(runs).hasSize(5);
+    }
+}
@@ -0,0 +1,92 @@
+package de.w3is.jdial.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelEqualityTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final URLStreamHandler countingHandler = new URLStreamHandler() {
+
+        @Override
+        protected URLConnection openConnection(URL u) {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected synchronized InetAddress getHostAddress(URL u) {
+
+            lookups.incrementAndGet();
+            return null;
+        }
+    };
+
+    @Test
+    void testDialServerEqualityDoesNotResolveHosts() throws Exception {
+
+        Set<DialServer> dialServers = new HashSet<>();
+        dialServers.add(dialServer("uuid:1"));
+        dialServers.add(dialServer("uuid:2"));
+
+        assertThat(dialServers).contains(dialServer("uuid:1"));
+        assertThat(dialServers.remove(dialServer("uuid:2"))).isTrue();
+        assertThat(dialServer("uuid:1").snapshot()).isEqualTo(dialServer("uuid:1").snapshot());
+        assertThat(dialServer("uuid:1")).isNotEqualTo(dialServer("uuid:2"));
+        assertThat(lookups).hasValue(0);
+    }
+
+    @Test
+    void testApplicationEqualityDoesNotResolveHosts() throws Exception {
+
+        Application application = application("http://tv.example/apps/YouTube/run");
+        Application other = application("http://tv.example/apps/YouTube/run");
+
+        assertThat(application).isEqualTo(other).hasSameHashCodeAs(other);
+        assertThat(application.snapshot()).isEqualTo(other.snapshot()).hasSameHashCodeAs(other.snapshot());
+        assertThat(application).isNotEqualTo(application("http://tv.example/apps/YouTube/other"));
+        assertThat(lookups).hasValue(0);
+    }
+
+    @Test
+    void testUrlsAreComparedByExternalForm() throws Exception {
+
+        DialServer byName = dialServer("uuid:1");
+        byName.setApplicationResourceUrl(new URL("http://localhost:8080/apps"));
+        DialServer byAddress = dialServer("uuid:1");
+        byAddress.setApplicationResourceUrl(new URL("http://127.0.0.1:8080/apps"));
+
+        assertThat(byName).isNotEqualTo(byAddress);
+    }
+
+    private DialServer dialServer(String uniqueServiceName) throws Exception {
+
+        DialServer dialServer = new DialServer();
+        dialServer.setUniqueServiceName(uniqueServiceName);
+        dialServer.setFriendlyName("Living Room");
+        dialServer.setDeviceDescriptorUrl(new URL(null, "http://tv.example:8008/dd.xml", countingHandler));
+        dialServer.setApplicationResourceUrl(new URL(null, "http://tv.example:8008/apps", countingHandler));
+
+        return dialServer;
+    }
+
+    private Application application(String instanceUrl) throws Exception {
+
+        Application application = new Application();
+        application.setName(Application.YOUTUBE);
+        application.setInstallUrl(new URL(null, "http://tv.example/install", countingHandler));
+        application.setInstanceUrl(new URL(null, instanceUrl, countingHandler));
+
+        return application;
+    }
+}
@@ -0,0 +1,191 @@
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.model.DialServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveDiscoveryTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testResponseDelayFollowsPreviousFleet() {
+
+        AdaptiveDiscovery adaptiveDiscovery = new AdaptiveDiscovery(200, 1500, 1, 5, 100);
+        assertThat(adaptiveDiscovery.responseDelay()).isEqualTo(1);
+
+        adaptiveDiscovery.sweepCompleted(250);
+        assertThat(adaptiveDiscovery.responseDelay()).isEqualTo(3);
+
+        adaptiveDiscovery.sweepCompleted(10_000);
+        assertThat(adaptiveDiscovery.responseDelay()).isEqualTo(5);
+    }
+
+    @Test
+    void testFirstSweepUsesTheConfiguredResponseDelay() {
+
+        AdaptiveDiscovery adaptiveDiscovery = new AdaptiveDiscovery(200, 1500, 3, 5, 100);
+        assertThat(adaptiveDiscovery.responseDelay()).isEqualTo(3);
+
+        adaptiveDiscovery.sweepCompleted(0);
+        assertThat(adaptiveDiscovery.responseDelay()).isEqualTo(3);
+    }
+
+    @Test
+    void testWindowWaitsForTheResponseDelayBeforeTheFirstDevice() {
+
+        AdaptiveDiscovery.Window window = new AdaptiveDiscovery(200, 1500, 1, 5, 100).openWindow(2, 0);
+
+        assertThat(window.remainingMs(0)).isEqualTo(3500);
+        assertThat(window.remainingMs(3500 * MS)).isZero();
+    }
+
+    @Test
+    void testWindowClosesWhenDevicesGoQuiet() {
+
+        AdaptiveDiscovery adaptiveDiscovery = new AdaptiveDiscovery(100, 1500, 1, 5, 100);
+        adaptiveDiscovery.sweepCompleted(3);
+
+        AdaptiveDiscovery.Window window = adaptiveDiscovery.openWindow(1, 0);
+
+        window.deviceFound(10 * MS);
+        window.deviceFound(20 * MS);
+        window.deviceFound(30 * MS);
+
+        // 8 times the mean interval of 10ms
+        assertThat(window.quietMs()).isEqualTo(100);
+        assertThat(window.remainingMs(30 * MS)).isEqualTo(100);
+        assertThat(window.remainingMs(130 * MS)).isZero();
+    }
+
+    @Test
+    void testWindowWithoutHistoryStaysOpenUntilTheResponseDelay() {
+
+        AdaptiveDiscovery.Window window = new AdaptiveDiscovery(100, 1500, 1, 5, 100).openWindow(1, 0);
+
+        window.deviceFound(10 * MS);
+
+        assertThat(window.remainingMs(200 * MS)).isEqualTo(800);
+
+        window.deviceFound(900 * MS);
+
+        // Spread replies lengthen the quiet period to the longest one
+        assertThat(window.remainingMs(1000 * MS)).isEqualTo(1400);
+        assertThat(window.remainingMs(2400 * MS)).isZero();
+    }
+
+    @Test
+    void testWindowWaitsForTheFleetOfThePreviousSweep() {
+
+        AdaptiveDiscovery adaptiveDiscovery = new AdaptiveDiscovery(100, 1500, 1, 5, 100);
+        adaptiveDiscovery.sweepCompleted(3);
+
+        AdaptiveDiscovery.Window window = adaptiveDiscovery.openWindow(1, 0);
+        window.deviceFound(10 * MS);
+        window.deviceFound(20 * MS);
+
+        assertThat(window.quietMs()).isEqualTo(1500);
+
+        window.deviceFound(30 * MS);
+
+        assertThat(window.quietMs()).isEqualTo(100);
+    }
+
+    @Test
+    void testSearchEndsBeforeTheSocketTimeout() throws Exception {
+
+        List<String> requests = new CopyOnWriteArrayList<>();
+
+        try (DatagramSocket responder = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+
+            Thread responderThread = new Thread(() -> respond(responder, 3, requests));
+            responderThread.setDaemon(true);
+            responderThread.start();
+
+            AdaptiveDiscovery adaptiveDiscovery = new AdaptiveDiscovery(100, 5000, 1, 5, 1);
+            MSearchImpl mSearch = new MSearchImpl(ProtocolConfiguration.builder().socketTimeoutMs(5000)
+                    .mSearchAddress("127.0.0.1").mSearchPort(responder.getLocalPort()).build(), adaptiveDiscovery);
+
+            long start = System.nanoTime();
+            List<DialServer> dialServers = mSearch.sendAndReceive();
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertThat(dialServers).hasSize(3);
+            assertThat(elapsedMs).isLessThan(2500);
+            assertThat(adaptiveDiscovery.previousDevices()).isEqualTo(3);
+
+            mSearch.sendAndReceive();
+
+            assertThat(requests).hasSize(2);
+            assertThat(requests.get(0)).contains("MX: 1\r\n");
+            assertThat(requests.get(1)).contains("MX: 3\r\n");
+        }
+    }
+
+    @Test
+    void testFirstSearchReceivesRepliesSpreadOverTheResponseDelay() throws Exception {
+
+        List<String> requests = new CopyOnWriteArrayList<>();
+
+        try (DatagramSocket responder = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+
+            Thread responderThread = new Thread(() -> respond(responder, 5, 450, requests));
+            responderThread.setDaemon(true);
+            responderThread.start();
+
+            ProtocolConfiguration configuration = ProtocolConfiguration.builder().socketTimeoutMs(500)
+                    .mSearchResponseDelay(2).mSearchAddress("127.0.0.1").mSearchPort(responder.getLocalPort())
+                    .build();
+            AdaptiveDiscovery adaptiveDiscovery = new AdaptiveDiscovery(100, 500, 2, 5, 100);
+            MSearchImpl mSearch = new MSearchImpl(configuration, adaptiveDiscovery);
+
+            List<DialServer> dialServers = mSearch.sendAndReceive();
+
+            assertThat(requests).hasSize(1);
+            assertThat(requests.get(0)).contains("MX: 2\r\n");
+            assertThat(dialServers).hasSize(5);
+            assertThat(adaptiveDiscovery.previousDevices()).isEqualTo(5);
+        }
+    }
+
+    private static void respond(DatagramSocket responder, int devices, List<String> requests) {
+        respond(responder, devices, 0, requests);
+    }
+
+    private static void respond(DatagramSocket responder, int devices, long spacingMs, List<String> requests) {
+
+        try {
+            while (true) {
+
+                DatagramPacket request = new DatagramPacket(new byte[1024], 1024);
+                responder.receive(request);
+                requests.add(new String(request.getData(), 0, request.getLength(), StandardCharsets.UTF_8));
+
+                for (int i = 0; i < devices; i++) {
+
+                    byte[] response = ("HTTP/1.1 200 OK\r\n" +
+                            "LOCATION: http://127.0.0.1:8008/dd" + i + ".xml\r\n" +
+                            "ST: urn:dial-multiscreen-org:service:dial:1\r\n" +
+                            "USN: uuid:device-" + i + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+
+                    if (i > 0 && spacingMs > 0) {
+                        Thread.sleep(spacingMs);
+                    }
+
+                    responder.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+                }
+            }
+        } catch (Exception e) {
+            // The socket was closed
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.ResponseTooLargeException;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedInputStreamTest {
+
+    @Test
+    void testBodyWithinLimitIsReadCompletely() throws Exception {
+
+        try (BoundedInputStream inputStream = new BoundedInputStream(new ByteArrayInputStream(new byte[100]), 100)) {
+
+            assertThat(inputStream.read(new byte[1000], 0, 1000)).isEqualTo(100);
+            assertThat(inputStream.read()).isEqualTo(-1);
+            assertThat(inputStream.getCount()).isEqualTo(100);
+        }
+    }
+
+    @Test
+    void testReadingBeyondTheLimitFails() {
+
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(new byte[1_000_000]));
+        BoundedInputStream inputStream = new BoundedInputStream(source, 1000);
+
+        assertThatThrownBy(() -> {
+            byte[] buffer = new byte[8192];
+            while (inputStream.read(buffer, 0, buffer.length) != -1) {
+                // Drain the stream
+            }
+        }).isInstanceOf(ResponseTooLargeException.class);
+
+        assertThat(source.getCount()).isEqualTo(1001);
+    }
+
+    @Test
+    void testDocumentsAboveTheNestingLimitAreRejected() {
+
+        StringBuilder xml = new StringBuilder();
+
+        for (int i = 0; i < 40; i++) {
+            xml.append("<e>");
+        }
+        for (int i = 0; i < 40; i++) {
+            xml.append("</e>");
+        }
+
+        InputStream inputStream = new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> XMLUtil.getDocumentFromStream(inputStream, 32, 256))
+                .isInstanceOf(SAXException.class);
+    }
+}
@@ -0,0 +1,127 @@
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.CommandSupersededException;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeviceMailboxTest {
+
+    private static final String YOUTUBE = "http://tv:8080/apps/YouTube";
+    private static final String YOUTUBE_INSTANCE = YOUTUBE + "/run";
+
+    private final DeviceMailbox deviceMailbox = new DeviceMailbox();
+
+    @Test
+    void testRequestsAreSentOneAfterAnother() throws Exception {
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<CompletableFuture<Integer>> outcomes = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+
+            int request = i;
+            outcomes.add(deviceMailbox.submit(DeviceMailbox.Kind.GET, "http://tv:8080/apps/App" + i, null, () -> {
+
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                await(new CountDownLatch(1), 2);
+                inFlight.decrementAndGet();
+
+                return request;
+            }));
+        }
+
+        for (int i = 0; i < outcomes.size(); i++) {
+            assertThat(outcomes.get(i).get(5, TimeUnit.SECONDS)).isEqualTo(i);
+        }
+
+        assertThat(maxInFlight).hasValue(1);
+        assertThat(deviceMailbox.getQueueLength()).isZero();
+    }
+
+    @Test
+    void testQueuedStartIsSupersededByStop() throws Exception {
+
+        CountDownLatch blocked = blockMailbox();
+        List<String> sent = new ArrayList<>();
+
+        CompletableFuture<String> start = deviceMailbox.submit(DeviceMailbox.Kind.START, YOUTUBE, null,
+                () -> record(sent, "start"));
+        CompletableFuture<String> stop = deviceMailbox.submit(DeviceMailbox.Kind.STOP, YOUTUBE_INSTANCE, null,
+                () -> record(sent, "stop"));
+
+        blocked.countDown();
+
+        assertThat(stop.get(5, TimeUnit.SECONDS)).isEqualTo("stop");
+        assertThatThrownBy(() -> start.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(CommandSupersededException.class);
+        assertThat(sent).containsExactly("stop");
+    }
+
+    @Test
+    void testIdenticalCommandsShareOneRequest() throws Exception {
+
+        CountDownLatch blocked = blockMailbox();
+        List<String> sent = new ArrayList<>();
+
+        CompletableFuture<String> first = deviceMailbox.submit(DeviceMailbox.Kind.HIDE, YOUTUBE_INSTANCE, null,
+                () -> record(sent, "hide"));
+        CompletableFuture<String> second = deviceMailbox.submit(DeviceMailbox.Kind.HIDE, YOUTUBE_INSTANCE, null,
+                () -> record(sent, "hide"));
+        CompletableFuture<String> otherApplication = deviceMailbox.submit(DeviceMailbox.Kind.STOP,
+                "http://tv:8080/apps/Netflix/run", null, () -> record(sent, "stop"));
+
+        blocked.countDown();
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("hide");
+        assertThat(otherApplication.get(5, TimeUnit.SECONDS)).isEqualTo("stop");
+        assertThat(sent).containsExactly("hide", "stop");
+    }
+
+    private CountDownLatch blockMailbox() throws InterruptedException {
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+
+        deviceMailbox.submit(DeviceMailbox.Kind.GET, "http://tv:8080/apps/Blocker", null, () -> {
+
+            started.countDown();
+            return await(blocked, 5000);
+        });
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        return blocked;
+    }
+
+    private static boolean await(CountDownLatch latch, long timeoutMs) throws InterruptedIOException {
+
+        try {
+            return latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static String record(List<String> sent, String request) {
+
+        synchronized (sent) {
+            sent.add(request);
+        }
+
+        return request;
+    }
+}
@@ -0,0 +1,72 @@
+package de.w3is.jdial.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdleEvictingMapTest {
+
+    @Test
+    void testIdleEntriesAreDropped() throws Exception {
+
+        IdleEvictingMap<Object> map = new IdleEvictingMap<>(50, value -> true);
+
+        Object idle = map.get("idle", key -> new Object());
+
+        assertThat(map.get("idle", key -> new Object())).isSameAs(idle);
+
+        Thread.sleep(100);
+        map.get("active", key -> new Object());
+
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.get("idle", key -> new Object())).isNotSameAs(idle);
+    }
+
+    @Test
+    void testBusyEntriesAreKept() throws Exception {
+
+        AtomicBoolean busy = new AtomicBoolean(true);
+        IdleEvictingMap<Object> map = new IdleEvictingMap<>(50, value -> !busy.get());
+
+        Object value = map.get("device", key -> new Object());
+
+        Thread.sleep(100);
+        map.get("other", key -> new Object());
+
+        assertThat(map.size()).isEqualTo(2);
+
+        busy.set(false);
+        Thread.sleep(100);
+        map.get("other", key -> new Object());
+
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(map.get("device", key -> new Object())).isNotSameAs(value);
+    }
+
+    @Test
+    void testFactoryDropsStateOfIdleDevices() throws Exception {
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .adaptiveTimeouts(true)
+                .deviceStateIdleTimeoutMs(50)
+                .build());
+
+        for (int i = 0; i < 100; i++) {
+
+            ApplicationResourceImpl resource = (ApplicationResourceImpl)
+                    protocolFactory.createApplicationResource("jdial", new URL("http://10.0.0." + i + ":8080/apps"));
+            resource.getRttEstimator().get();
+        }
+
+        assertThat(protocolFactory.getDeviceStateCount()).isEqualTo(100);
+
+        Thread.sleep(100);
+        ((ApplicationResourceImpl) protocolFactory.createApplicationResource("jdial", new URL("http://10.0.1.1:8080/apps")))
+                .getRttEstimator().get();
+
+        assertThat(protocolFactory.getDeviceStateCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,69 @@
+package de.w3is.jdial.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testSmallValuesAreExact() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.getCount()).isEqualTo(50);
+        assertThat(snapshot.getMin()).isEqualTo(1);
+        assertThat(snapshot.getMax()).isEqualTo(50);
+        assertThat(snapshot.getMean()).isEqualTo(25.5);
+        assertThat(snapshot.getValueAtPercentile(50)).isEqualTo(25);
+        assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(50);
+    }
+
+    @Test
+    void testLargeValuesAreWithinThreePercent() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 1_000; value <= 1_000_000; value += 1_000) {
+            histogram.record(value * 1_000);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat((double) snapshot.getValueAtPercentile(50)).isCloseTo(500_000_000, within(15_000_000.0));
+        assertThat((double) snapshot.getValueAtPercentile(99)).isCloseTo(990_000_000, within(30_000_000.0));
+        assertThat(snapshot.getValueAtPercentile(100)).isEqualTo(1_000_000_000);
+    }
+
+    @Test
+    void testBucketsCoverAllValues() {
+
+        assertThat(LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+
+        for (long value = 60; value < 100_000; value += 7) {
+
+            int bucket = LatencyHistogram.bucketOf(value);
+
+            assertThat(LatencyHistogram.highestValueOf(bucket)).isGreaterThanOrEqualTo(value);
+            assertThat(LatencyHistogram.highestValueOf(bucket - 1)).isLessThan(value);
+        }
+    }
+
+    @Test
+    void testReset() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+
+        assertThat(histogram.snapshot().getCount()).isZero();
+        assertThat(histogram.snapshot().getValueAtPercentile(99)).isZero();
+    }
+}
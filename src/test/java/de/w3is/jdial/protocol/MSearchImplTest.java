@@ -0,0 +1,212 @@
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.model.DialServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MSearchImplTest {
+
+    private static final String UNRELATED_RESPONSE = "HTTP/1.1 200 OK\r\n" +
+            "LOCATION: http://127.0.0.1:1400/xml/device_description.xml\r\n" +
+            "ST: urn:schemas-upnp-org:device:ZonePlayer:1\r\n" +
+            "USN: uuid:RINCON_000E58A1B2C301400::urn:schemas-upnp-org:device:ZonePlayer:1\r\n\r\n";
+
+    @Test
+    void testSearchTargetIsFoundInRawBytes() {
+
+        byte[] dial = dialResponse(1).getBytes(StandardCharsets.UTF_8);
+        byte[] unrelated = UNRELATED_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+        assertThat(MSearchImpl.containsSearchTarget(dial, 0, dial.length)).isTrue();
+        assertThat(MSearchImpl.containsSearchTarget(unrelated, 0, unrelated.length)).isFalse();
+        assertThat(MSearchImpl.containsSearchTarget(dial, 0, 40)).isFalse();
+    }
+
+    @Test
+    void testUdpStatisticsAreParsed() {
+
+        List<String> snmp = Arrays.asList(
+                "Ip: Forwarding DefaultTTL",
+                "Ip: 1 64",
+                "Udp: InDatagrams NoPorts InErrors OutDatagrams RcvbufErrors SndbufErrors",
+                "Udp: 9889 0 1540 11433 1523 0",
+                "UdpLite: InDatagrams NoPorts InErrors OutDatagrams RcvbufErrors SndbufErrors",
+                "UdpLite: 0 0 0 0 0 0");
+
+        assertThat(UdpStatistics.receiveBufferErrors(snmp)).isEqualTo(1523);
+        assertThat(UdpStatistics.receiveBufferErrors(snmp.subList(0, 2))).isEqualTo(-1);
+    }
+
+    @Test
+    void testDialResponsesSurviveAStormOfUnrelatedResponses() throws Exception {
+
+        AtomicInteger filtered = new AtomicInteger();
+        AtomicInteger devices = new AtomicInteger();
+
+        ProtocolListener listener = new ProtocolListener() {
+
+            @Override
+            public void mSearchPacketsDropped(int filteredPackets, int queueOverflows, long kernelDrops) {
+                filtered.set(filteredPackets);
+            }
+
+            @Override
+            public void mSearchCompleted(long durationNanos, long firstResponseNanos, long lastResponseNanos,
+                                         int responses, int deviceCount) {
+                devices.set(deviceCount);
+            }
+        };
+
+        try (DatagramSocket responder = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+
+            Thread responderThread = new Thread(() -> respond(responder));
+            responderThread.setDaemon(true);
+            responderThread.start();
+
+            MSearchImpl mSearch = new MSearchImpl(ProtocolConfiguration.builder().socketTimeoutMs(500)
+                    .mSearchAddress("127.0.0.1").mSearchPort(responder.getLocalPort()).protocolListener(listener)
+                    .build(), null);
+
+            List<DialServer> dialServers = mSearch.sendAndReceive();
+
+            assertThat(dialServers).extracting(DialServer::getUniqueServiceName)
+                    .containsExactlyInAnyOrder("uuid:device-0", "uuid:device-1", "uuid:device-2");
+            assertThat(devices).hasValue(3);
+            assertThat(filtered.get()).isPositive();
+        }
+    }
+
+    @Test
+    void testIpv4AndIpv6AreSearchedInOneWindow() throws Exception {
+
+        InetAddress ipv6Loopback = InetAddress.getByName("::1");
+        List<String> requests = new CopyOnWriteArrayList<>();
+
+        try (DatagramSocket responder = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("::"), 0))) {
+
+            assumeTrue(ipv6Loopback.isReachable(100), "IPv6 loopback is not available");
+
+            Thread responderThread = new Thread(() -> respondPerFamily(responder, requests));
+            responderThread.setDaemon(true);
+            responderThread.start();
+
+            MSearchImpl mSearch = new MSearchImpl(ProtocolConfiguration.builder().socketTimeoutMs(500)
+                    .mSearchAddress("127.0.0.1").mSearchPort(responder.getLocalPort())
+                    .ipv6Discovery(true).mSearchIpv6Addresses(Collections.singletonList("::1"))
+                    .build(), null);
+
+            List<DialServer> dialServers = mSearch.sendAndReceive();
+
+            assertThat(dialServers).extracting(DialServer::getUniqueServiceName)
+                    .containsExactlyInAnyOrder("uuid:device-0", "uuid:device-1");
+            assertThat(dialServers).extracting(dialServer -> dialServer.getDeviceDescriptorUrl().getHost())
+                    .containsExactlyInAnyOrder("127.0.0.1", "[::1]");
+            assertThat(requests).hasSize(2);
+            assertThat(requests).anyMatch(request -> request.contains("HOST: [::1]:"));
+            assertThat(requests).anyMatch(request -> request.contains("HOST: 127.0.0.1:"));
+        }
+    }
+
+    @Test
+    void testLinkLocalLocationGetsTheScopeOfTheSender() throws Exception {
+
+        InetAddress linkLocal = Inet6Address.getByAddress(null,
+                new byte[]{(byte) 0xfe, (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, 2);
+        InetAddress global = InetAddress.getByName("2001:db8::1");
+
+        assertThat(MSearchImpl.withScope("http://[fe80::1]:8008/dd.xml", linkLocal))
+                .isEqualTo("http://[fe80::1%2]:8008/dd.xml");
+        assertThat(MSearchImpl.withScope("http://[fe80::1%3]:8008/dd.xml", linkLocal))
+                .isEqualTo("http://[fe80::1%3]:8008/dd.xml");
+        assertThat(MSearchImpl.withScope("http://[2001:db8::1]:8008/dd.xml", global))
+                .isEqualTo("http://[2001:db8::1]:8008/dd.xml");
+        assertThat(MSearchImpl.withScope("http://192.168.1.2:8008/dd.xml", linkLocal))
+                .isEqualTo("http://192.168.1.2:8008/dd.xml");
+
+        byte[] response = ("HTTP/1.1 200 OK\r\n" +
+                "LOCATION: http://[fe80::1]:8008/dd.xml\r\n" +
+                "ST: urn:dial-multiscreen-org:service:dial:1\r\n" +
+                "USN: uuid:device-0\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        DialServer dialServer = new MSearchImpl(1, 100, ProtocolListener.NONE)
+                .toServer(new DatagramPacket(response, response.length, linkLocal, 1900));
+
+        assertThat(dialServer.getDeviceDescriptorUrl().getHost()).isEqualTo("[fe80::1%2]");
+    }
+
+    /*
+     * Device 0 answers on both families, device 1 on IPv6 only. Each family announces its own location.
+     */
+    private static void respondPerFamily(DatagramSocket responder, List<String> requests) {
+
+        try {
+            while (true) {
+
+                DatagramPacket request = new DatagramPacket(new byte[1024], 1024);
+                responder.receive(request);
+                requests.add(new String(request.getData(), 0, request.getLength(), StandardCharsets.UTF_8));
+
+                boolean ipv6 = request.getAddress() instanceof Inet6Address;
+                int devices = ipv6 ? 2 : 1;
+
+                for (int i = 0; i < devices; i++) {
+
+                    String response = dialResponse(i);
+
+                    if (ipv6) {
+                        response = response.replace("127.0.0.1", "[::1]");
+                    }
+
+                    byte[] dial = response.getBytes(StandardCharsets.UTF_8);
+                    responder.send(new DatagramPacket(dial, dial.length, request.getSocketAddress()));
+                }
+            }
+        } catch (Exception e) {
+            // The socket was closed
+        }
+    }
+
+    private static void respond(DatagramSocket responder) {
+
+        try {
+            DatagramPacket request = new DatagramPacket(new byte[1024], 1024);
+            responder.receive(request);
+
+            byte[] unrelated = UNRELATED_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+            for (int i = 0; i < 300; i++) {
+
+                if (i % 100 == 50) {
+
+                    byte[] dial = dialResponse(i / 100).getBytes(StandardCharsets.UTF_8);
+                    responder.send(new DatagramPacket(dial, dial.length, request.getSocketAddress()));
+                }
+
+                responder.send(new DatagramPacket(unrelated, unrelated.length, request.getSocketAddress()));
+            }
+        } catch (Exception e) {
+            // The socket was closed
+        }
+    }
+
+    private static String dialResponse(int device) {
+
+        return "HTTP/1.1 200 OK\r\n" +
+                "LOCATION: http://127.0.0.1:8008/dd" + device + ".xml\r\n" +
+                "ST: urn:dial-multiscreen-org:service:dial:1\r\n" +
+                "USN: uuid:device-" + device + "\r\n\r\n";
+    }
+}
@@ -0,0 +1,176 @@
+package de.w3is.jdial.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProtocolFactoryImplTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 10_000;
+
+    @Test
+    void testResourcesSeeConsistentConfiguration() throws Exception {
+
+        ProtocolConfiguration fast = ProtocolConfiguration.builder()
+                .httpClientConnectionTimeoutMs(100).httpClientReadTimeoutMs(100).build();
+        ProtocolConfiguration slow = fast.toBuilder()
+                .httpClientConnectionTimeoutMs(2000).httpClientReadTimeoutMs(2000).build();
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(fast);
+        URL url = new URL("http://localhost:8080/apps");
+
+        runConcurrently(thread -> {
+
+            for (int i = 0; i < ITERATIONS; i++) {
+
+                if (thread == 0) {
+                    protocolFactory.setConfiguration(i % 2 == 0 ? slow : fast);
+                } else {
+
+                    ApplicationResourceImpl resource =
+                            (ApplicationResourceImpl) protocolFactory.createApplicationResource("jdial", url);
+                    assertThat(resource.getConnectionTimeout()).isEqualTo(resource.getReadTimeout());
+                }
+            }
+        });
+    }
+
+    @Test
+    void testConcurrentSettersDontLoseUpdates() throws Exception {
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(false);
+
+        runConcurrently(thread -> {
+
+            for (int i = 1; i <= ITERATIONS; i++) {
+
+                if (thread % 2 == 0) {
+                    protocolFactory.setHttpClientReadTimeoutMs(i);
+                } else {
+                    protocolFactory.setHttpClientConnectionTimeoutMs(i);
+                }
+            }
+        });
+
+        assertThat(protocolFactory.getHttpClientReadTimeoutMs()).isEqualTo(ITERATIONS);
+        assertThat(protocolFactory.getHttpClientConnectionTimeoutMs()).isEqualTo(ITERATIONS);
+    }
+
+    @Test
+    void testConfigurationBuilderKeepsDefaults() {
+
+        ProtocolConfiguration configuration = ProtocolConfiguration.builder().legacyCompatibility(true).build();
+
+        assertThat(configuration.getHttpClientReadTimeoutMs()).isEqualTo(1500);
+        assertThat(configuration.getMSearchAddress()).isEqualTo(MSearchImpl.MULTICAST_IP);
+        assertThat(configuration.getProtocolListener()).isSameAs(ProtocolListener.NONE);
+        assertThat(configuration.toBuilder().legacyCompatibility(false).build()).isEqualTo(ProtocolConfiguration.DEFAULT);
+    }
+
+    @Test
+    void testFactoriesWithEqualConfigurationAreEqual() {
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(false);
+        ProtocolFactoryImpl otherFactory = new ProtocolFactoryImpl(ProtocolConfiguration.DEFAULT);
+
+        assertThat(protocolFactory).isEqualTo(otherFactory).hasSameHashCodeAs(otherFactory);
+
+        otherFactory.updateConfiguration(builder -> builder.adaptiveDiscovery(true));
+
+        assertThat(protocolFactory).isNotEqualTo(otherFactory);
+    }
+
+    @Test
+    void testConnectionsToADeviceShareOneHedger() throws Exception {
+
+        ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                .hedgedRequests(true).build());
+        URL url = new URL("http://localhost:8080/apps");
+
+        ApplicationResourceImpl phone = (ApplicationResourceImpl) protocolFactory.createApplicationResource("Phone", url);
+        ApplicationResourceImpl tablet = (ApplicationResourceImpl) protocolFactory.createApplicationResource("Tablet", url);
+        ApplicationResourceImpl other = (ApplicationResourceImpl) protocolFactory.createApplicationResource("Phone",
+                new URL("http://localhost:8081/apps"));
+
+        assertThat(phone.getRequestHedger().get()).isSameAs(tablet.getRequestHedger().get());
+        assertThat(phone.getRequestHedger().get()).isNotSameAs(other.getRequestHedger().get());
+
+        RequestHedger previous = tablet.getRequestHedger().get();
+        protocolFactory.updateConfiguration(builder -> builder.hedgeBudgetRatio(0.5));
+
+        assertThat(phone.getRequestHedger().get()).isNotSameAs(previous).isSameAs(tablet.getRequestHedger().get());
+    }
+
+    @Test
+    void testConfigurationRejectsInvalidValues() {
+
+        assertThatThrownBy(() -> ProtocolConfiguration.builder().socketTimeoutMs(-1).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ProtocolConfiguration.builder().hedgeDelayPercentile(0).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ProtocolConfiguration.builder().hedgeDelayPercentile(1.5).build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ProtocolConfiguration.builder().hedgeBudgetRatio(-0.1).build())
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(ProtocolConfiguration.builder().hedgeDelayPercentile(1).hedgeBudgetRatio(0).build())
+                .isNotNull();
+    }
+
+    @Test
+    void testConfigurationCopiesTheIpv6Addresses() {
+
+        List<String> addresses = new ArrayList<>(List.of("ff02::c"));
+        ProtocolConfiguration configuration = ProtocolConfiguration.builder().mSearchIpv6Addresses(addresses).build();
+
+        addresses.add("ff05::c");
+
+        assertThat(configuration.getMSearchIpv6Addresses()).containsExactly("ff02::c");
+        assertThatThrownBy(() -> configuration.getMSearchIpv6Addresses().add("ff05::c"))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    private static void runConcurrently(ThreadTask task) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+
+        try {
+
+            for (int i = 0; i < THREADS; i++) {
+
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    task.run(thread);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ThreadTask {
+
+        void run(int thread) throws Exception;
+    }
+}
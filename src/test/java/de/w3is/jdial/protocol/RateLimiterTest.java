@@ -0,0 +1,90 @@
+package de.w3is.jdial.protocol;
+
+import de.w3is.jdial.protocol.model.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RateLimiterTest {
+
+    @Test
+    void testBurstIsAvailableImmediately() throws Exception {
+
+        RateLimiter rateLimiter = new RateLimiter(1, 3);
+
+        rateLimiter.acquire(0);
+        rateLimiter.acquire(0);
+        rateLimiter.acquire(0);
+
+        assertThatThrownBy(() -> rateLimiter.acquire(0)).isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void testQueuedRequestWaitsForTheNextPermit() throws Exception {
+
+        RateLimiter rateLimiter = new RateLimiter(10, 1);
+        rateLimiter.acquire(0);
+
+        long start = System.nanoTime();
+        rateLimiter.acquire(TimeUnit.SECONDS.toNanos(1));
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(80L, 500L);
+        assertThatThrownBy(() -> rateLimiter.acquire(TimeUnit.MILLISECONDS.toNanos(10)))
+                .isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void testInterruptedWaiterGivesItsPermitBack() throws Exception {
+
+        RateLimiter rateLimiter = new RateLimiter(10, 1);
+        rateLimiter.acquire(0);
+
+        Thread.currentThread().interrupt();
+
+        assertThatThrownBy(() -> rateLimiter.acquire(TimeUnit.SECONDS.toNanos(1)))
+                .isInstanceOf(InterruptedIOException.class);
+
+        // Without the returned permit the next one would be two intervals away
+        rateLimiter.acquire(TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    void testConcurrentCallersDontExceedTheRate() throws Exception {
+
+        RateLimiter rateLimiter = new RateLimiter(200, 10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+
+        long start = System.nanoTime();
+
+        try {
+
+            for (int i = 0; i < 110; i++) {
+                futures.add(executor.submit(() -> {
+                    rateLimiter.acquire(TimeUnit.SECONDS.toNanos(5));
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+
+        // The burst of 10 is free, the remaining 100 permits need half a second at 200 per second
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(490);
+    }
+}
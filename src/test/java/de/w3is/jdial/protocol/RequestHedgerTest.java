@@ -0,0 +1,59 @@
+package de.w3is.jdial.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestHedgerTest {
+
+    @Test
+    void testWinningHedgeRecordsItsOwnDuration() throws Exception {
+
+        RequestHedger requestHedger = new RequestHedger(1.0, 50, 1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+
+            String result = requestHedger.execute(() -> {
+
+                if (calls.incrementAndGet() % 2 == 1) {
+                    Thread.sleep(2000);
+                }
+
+                return "hedge";
+            });
+
+            assertThat(result).isEqualTo("hedge");
+        }
+
+        // The hedges answered at once, the 50 ms waited for the first requests are not part of their latency
+        assertThat(requestHedger.latencyPercentileMs()).isBetween(0L, 25L);
+        assertThat(requestHedger.hedgeDelayMs()).isEqualTo(50);
+    }
+
+    @Test
+    void testPercentileFollowsSlidingWindow() throws Exception {
+
+        RequestHedger requestHedger = new RequestHedger(0.5, 0, 0);
+
+        assertThat(requestHedger.latencyPercentileMs()).isEqualTo(-1);
+
+        for (int i = 0; i < 128; i++) {
+
+            requestHedger.execute(() -> {
+                Thread.sleep(30);
+                return null;
+            });
+        }
+
+        assertThat(requestHedger.latencyPercentileMs()).isBetween(30L, 60L);
+
+        for (int i = 0; i < 128; i++) {
+            requestHedger.execute(() -> null);
+        }
+
+        assertThat(requestHedger.latencyPercentileMs()).isBetween(0L, 5L);
+    }
+}
@@ -0,0 +1,53 @@
+package de.w3is.jdial.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RttEstimatorTest {
+
+    @Test
+    void testInitialTimeoutIsClamped() {
+
+        assertThat(new RttEstimator(1500, 100, 1000).timeoutMs()).isEqualTo(1000);
+        assertThat(new RttEstimator(10, 100, 1000).timeoutMs()).isEqualTo(100);
+    }
+
+    @Test
+    void testTimeoutFollowsObservedRoundTrips() {
+
+        RttEstimator fastDevice = new RttEstimator(1500, 20, 5000);
+        RttEstimator slowDevice = new RttEstimator(1500, 20, 5000);
+
+        for (int i = 0; i < 50; i++) {
+            fastDevice.sample(5);
+            slowDevice.sample(800);
+        }
+
+        assertThat(fastDevice.timeoutMs()).isEqualTo(20);
+        assertThat(slowDevice.timeoutMs()).isBetween(800, 1000);
+    }
+
+    @Test
+    void testFirstSampleUsesDeviationOfHalfTheRoundTrip() {
+
+        RttEstimator estimator = new RttEstimator(1500, 1, 5000);
+        estimator.sample(100);
+
+        // srtt + 4 * rttvar = 100 + 4 * 50
+        assertThat(estimator.timeoutMs()).isEqualTo(300);
+    }
+
+    @Test
+    void testTimeoutBacksOffUpToTheCeiling() {
+
+        RttEstimator estimator = new RttEstimator(1500, 1, 1000);
+        estimator.sample(100);
+
+        estimator.timedOut();
+        assertThat(estimator.timeoutMs()).isEqualTo(600);
+
+        estimator.timedOut();
+        assertThat(estimator.timeoutMs()).isEqualTo(1000);
+    }
+}
@@ -0,0 +1,154 @@
+package de.w3is.jdial.protocol;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import de.w3is.jdial.DialClient;
+import de.w3is.jdial.DialClientConnection;
+import de.w3is.jdial.Discovery;
+import de.w3is.jdial.model.Application;
+import de.w3is.jdial.model.DialServer;
+import de.w3is.jdial.model.State;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrafficReplayTest {
+
+    private static final long RESPONSE_DELAY_MS = 150;
+
+    private static final String APPLICATION = "<service xmlns=\"urn:dial-multiscreen-org:schemas:dial\">" +
+            "<name>YouTube</name><options allowStop=\"true\"/><state>running</state>" +
+            "<link rel=\"run\" href=\"run\"/></service>";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRecordedDeviceIsReplayed() throws Exception {
+
+        Path recording = tempDir.resolve("fleet.jdtr");
+        DialServer recordedServer = record(recording);
+
+        AtomicLong firstResponseNanos = new AtomicLong();
+        ProtocolConfiguration configuration = ProtocolConfiguration.builder()
+                .socketTimeoutMs(500)
+                .protocolListener(new ProtocolListener() {
+                    @Override
+                    public void mSearchCompleted(long durationNanos, long firstResponse, long lastResponse,
+                                                 int responses, int devices) {
+                        firstResponseNanos.set(firstResponse);
+                    }
+                })
+                .build();
+
+        try (ReplayProtocolFactory replay = new ReplayProtocolFactory(recording, configuration)) {
+
+            List<DialServer> dialServers = new Discovery(replay).discover();
+
+            assertThat(dialServers).hasSize(1);
+            DialServer dialServer = dialServers.get(0);
+
+            assertThat(dialServer.getUniqueServiceName()).isEqualTo(recordedServer.getUniqueServiceName());
+            assertThat(dialServer.getFriendlyName()).isEqualTo("Living room");
+            assertThat(dialServer.getDeviceDescriptorUrl().toString())
+                    .isEqualTo(replay.toReplayUrl(recordedServer.getDeviceDescriptorUrl().toString()));
+            assertThat(firstResponseNanos.get()).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(RESPONSE_DELAY_MS / 2));
+
+            DialClientConnection connection = new DialClient(replay).connectTo(dialServer);
+            Application application = connection.getApplication("YouTube");
+
+            assertThat(application.getState()).isEqualTo(State.RUNNING);
+
+            URL instanceUrl = connection.startApplication("YouTube");
+
+            assertThat(instanceUrl.getHost()).isEqualTo("127.0.0.1");
+            connection.stopApplication(instanceUrl);
+
+            assertThat(connection.getApplication("Netflix")).isNull();
+        }
+    }
+
+    private static DialServer record(Path recording) throws Exception {
+
+        WireMockServer device = new WireMockServer(wireMockConfig().dynamicPort());
+        device.start();
+
+        try (DatagramSocket responder = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+             TrafficRecorder recorder = TrafficRecorder.open(recording)) {
+
+            String baseUrl = "http://localhost:" + device.port();
+            stubDevice(device, baseUrl);
+
+            Thread responderThread = new Thread(() -> respond(responder, baseUrl + "/dd.xml"));
+            responderThread.setDaemon(true);
+            responderThread.start();
+
+            ProtocolFactoryImpl protocolFactory = new ProtocolFactoryImpl(ProtocolConfiguration.builder()
+                    .socketTimeoutMs(500)
+                    .mSearchAddress("127.0.0.1")
+                    .mSearchPort(responder.getLocalPort())
+                    .trafficRecorder(recorder)
+                    .build());
+
+            List<DialServer> dialServers = new Discovery(protocolFactory).discover();
+            assertThat(dialServers).hasSize(1);
+
+            DialClientConnection connection = new DialClient(protocolFactory).connectTo(dialServers.get(0));
+            assertThat(connection.getApplication("YouTube").getState()).isEqualTo(State.RUNNING);
+            connection.stopApplication(connection.startApplication("YouTube"));
+
+            return dialServers.get(0);
+
+        } finally {
+
+            device.stop();
+        }
+    }
+
+    private static void stubDevice(WireMockServer device, String baseUrl) {
+
+        device.stubFor(get(urlPathEqualTo("/dd.xml"))
+                .willReturn(aResponse().withStatus(200)
+                        .withHeader("Application-URL", baseUrl + "/apps")
+                        .withBody("<root xmlns=\"urn:schemas-upnp-org:device-1-0\"><device>" +
+                                "<friendlyName>Living room</friendlyName></device></root>")));
+        device.stubFor(get(urlPathEqualTo("/apps/YouTube"))
+                .willReturn(aResponse().withStatus(200).withBody(APPLICATION)));
+        device.stubFor(post(urlPathEqualTo("/apps/YouTube"))
+                .willReturn(aResponse().withStatus(201).withHeader("Location", baseUrl + "/apps/YouTube/run")));
+        device.stubFor(delete(urlPathEqualTo("/apps/YouTube/run"))
+                .willReturn(aResponse().withStatus(200)));
+    }
+
+    private static void respond(DatagramSocket responder, String location) {
+
+        try {
+            DatagramPacket request = new DatagramPacket(new byte[1024], 1024);
+            responder.receive(request);
+
+            Thread.sleep(RESPONSE_DELAY_MS);
+
+            byte[] response = ("HTTP/1.1 200 OK\r\n" +
+                    "LOCATION: " + location + "\r\n" +
+                    "ST: urn:dial-multiscreen-org:service:dial:1\r\n" +
+                    "USN: uuid:living-room\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+
+            responder.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+
+        } catch (Exception e) {
+            // The socket was closed
+        }
+    }
+}